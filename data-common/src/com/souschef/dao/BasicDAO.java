@@ -1,19 +1,50 @@
 package com.souschef.dao;
 
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
-import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
 import javax.persistence.TransactionRequiredException;
 
-import org.apache.commons.beanutils.BeanUtils;
+import org.hibernate.Session;
+import org.hibernate.TypeHelper;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.jpa.TypedParameterValue;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.query.NativeQuery;
 
 //http://blog.xebia.com/jpa-implementation-patterns-wrap-up/
 public class BasicDAO<I extends Serializable, E extends EntityBean<I>> extends DAO<I,E>{
+	/**
+	 * Standard JPA hint that restricts eager loading to the attributes of an entity graph.
+	 */
+	public static final String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
+	
+	/**
+	 * Query space of native writes; no entity maps to it, so executing them invalidates no cache region.
+	 */
+	private static final String NATIVE_WRITE_SPACE = "souschef.nativeWrite";
+	
 	private EntityManagerFactory entityManagerFactory;
 	
 	@SuppressWarnings("unchecked")	
@@ -26,35 +57,195 @@ public class BasicDAO<I extends Serializable, E extends EntityBean<I>> extends D
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * <p>Saves <code>entity</code> in a single statement when the subclass provides an {@link #upsertQuery(EntityManager, EntityBean)}, 
+	 * and through <code>EntityManager.merge</code> otherwise.</p>
+	 * <p>Versioned entities are written only if their version matches the stored one; a stale write fails with a 
+	 * <code>DAOException</code> wrapping an <code>OptimisticLockException</code>. On success the entity's version is advanced 
+	 * to the stored one when it's known.</p>
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public void persist(EntityManager entityManager, E entity) throws DAOException {
-		E existing = null;
-		I id = entity.getId();
+		Query upsert;
+		E merged;
 		
+		Deadline.check();
 		try{
-			existing = entityManager.find(entityClass, id);
-			if(existing == null)
-				entityManager.persist(entity);
-			else{
-				BeanUtils.copyProperties(existing, entity);
-				entityManager.merge(existing);
-			}
+			upsert = upsertQuery(entityManager, entity);
 			
-		}catch(EntityExistsException e){
+			if(upsert != null) {
+				Deadline.apply(upsert);
+				if(upsert.executeUpdate() == 0)
+					throw new OptimisticLockException(entity);
+				written(entityManager, entity.getId());
+				if(entity instanceof VersionedEntityBean && ((VersionedEntityBean<I>) entity).getVersion() != null)
+					((VersionedEntityBean<I>) entity).setVersion(((VersionedEntityBean<I>) entity).getVersion() + 1);
+			}else {
+				if(entity instanceof VersionedEntityBean && ((VersionedEntityBean<I>) entity).getVersion() == null) {
+					// Hibernate takes unversioned instances for new ones; an unversioned save of an existing row overwrites it.
+					E existing = entityManager.find(entityClass, entity.getId(), Deadline.hints());
+					if(existing != null)
+						((VersionedEntityBean<I>) entity).setVersion(((VersionedEntityBean<I>) existing).getVersion());
+				}
+				merged = entityManager.merge(entity);
+				entityManager.flush();
+				if(entity instanceof VersionedEntityBean)
+					((VersionedEntityBean<I>) entity).setVersion(((VersionedEntityBean<I>) merged).getVersion());
+			}
+		}catch(PersistenceException e){
 			throw new DAOException(e);
 		}catch(IllegalArgumentException e){
 			throw new DAOException(e);
-		}catch(TransactionRequiredException e){
-			throw new DAOException(e);
-		} catch (IllegalAccessException e) {
-			throw new DAOException(e);
-		} catch (InvocationTargetException e) {
-			throw new DAOException(e);
 		}
 	}
 
+	/**
+	 * <p>Subclasses override this method to save simple entities with one native statement (e.g. Oracle's <code>MERGE</code>) 
+	 * instead of a read followed by a write.</p>
+	 * <p>The statement must update the row only when <code>entity</code>'s version is <code>null</code> or equals the stored one, 
+	 * incrementing it, and insert it only when the version is <code>null</code>; that way zero affected rows means a stale write.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param entity The entity being saved.
+	 * @return A native query built with {@link #nativeUpsert(EntityManager, String, Object[], Class[])}, or <code>null</code> to use <code>merge</code>.
+	 */
+	protected Query upsertQuery(EntityManager entityManager, E entity) {
+		return null;
+	}
+	
+	/**
+	 * <p>Creates a native write statement on this DAO's table. The statement is bound to a query space no entity uses, since 
+	 * Hibernate would otherwise empty this class's whole second-level region, or every region, after each execution; 
+	 * {@link #persist(EntityManager, EntityBean)} evicts the written row instead.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param sql Native SQL statement with positional parameters (<code>?1</code>, <code>?2</code>...).
+	 * @param values Parameter values, in positional order; they may be <code>null</code>.
+	 * @param types Java types of the parameters, needed to bind <code>null</code> values.
+	 * @return The statement ready to be executed.
+	 */
+	protected Query nativeUpsert(EntityManager entityManager, String sql, Object[] values, Class<?>[] types) {
+		NativeQuery<?> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+		TypeHelper typeHelper = entityManager.unwrap(Session.class).getSessionFactory().getTypeHelper();
+		
+		query.addSynchronizedQuerySpace(NATIVE_WRITE_SPACE);
+		for(int index = 0; index < values.length; index++)
+			query.setParameter(index + 1, new TypedParameterValue(typeHelper.basic(types[index]), values[index]));
+		return query;
+	}
+	
+	/**
+	 * <p>Evicts a row written by a native statement from the second-level cache and invalidates the cached queries over this 
+	 * DAO's table when the transaction completes, like Hibernate does for its own updates.</p>
+	 */
+	private void written(EntityManager entityManager, I id) {
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		final Serializable[] spaces = session.getFactory().getMetamodel().entityPersister(entityClass).getQuerySpaces();
+		final UpdateTimestampsCache timestamps;
+		
+		evictWritten(entityManager, entityClass, Collections.singleton(id));
+		if(!session.getFactory().getSessionFactoryOptions().isQueryCacheEnabled())
+			return;
+		timestamps = session.getFactory().getCache().getUpdateTimestampsCache();
+		timestamps.preInvalidate(spaces, session);
+		session.getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+			@Override
+			public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+				timestamps.invalidate(spaces, session);
+			}
+		});
+	}
+	
+	/**
+	 * <p>Evicts rows written behind Hibernate's back from the second-level cache, now and again when the transaction 
+	 * completes: a concurrent reader may cache the old committed row in between, and it would stay there until the region 
+	 * expires.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param type Entity class of the rows.
+	 * @param ids Primary keys of the rows.
+	 */
+	protected static void evictWritten(EntityManager entityManager, final Class<?> type, Collection<?> ids) {
+		final javax.persistence.Cache cache = entityManager.getEntityManagerFactory().getCache();
+		final List<Object> evicted = new ArrayList<Object>(ids);
+		
+		for(Object id: evicted)
+			cache.evict(type, id);
+		entityManager.unwrap(SessionImplementor.class).getActionQueue().registerProcess(new AfterTransactionCompletionProcess() {
+			@Override
+			public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+				for(Object id: evicted)
+					cache.evict(type, id);
+			}
+		});
+	}
+	
+	/**
+	 * <p>Returns a JPA reference to the target of an association, so the owner can be saved without loading the target, 
+	 * merging it, or taking an id-only instance (e.g. one bound from <code>{"id":"..."}</code> or a bare id) for a new 
+	 * entity; only the target's id is read.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param target The associated entity; may be <code>null</code>.
+	 * @param references References already obtained for targets of the same class, keyed by id; new ones are added.
+	 * @return <code>target</code> if it's <code>null</code>, has no id, is managed or is a proxy already; a reference otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <R extends EntityBean<?>> R reference(EntityManager entityManager, R target, Map<Object, R> references) {
+		R reference;
+		
+		if(target == null || target.getId() == null || target instanceof HibernateProxy || entityManager.contains(target))
+			return target;
+		reference = references.get(target.getId());
+		if(reference == null)
+			references.put(target.getId(), reference = (R)entityManager.getReference(target.getClass(), target.getId()));
+		return reference;
+	}
+	
+	/**
+	 * <p>Runs a native write statement once per row through JDBC batches of {@link #BATCH_SIZE}, on the connection of the 
+	 * current transaction.</p>
+	 * <p>The statement bypasses the persistence context, so callers must evict the second-level cache entries of the rows it changes.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param sql Native SQL statement with JDBC parameters (<code>?</code>).
+	 * @param rows Parameter values of every execution, in positional order; they may be <code>null</code>.
+	 * @return The number of rows affected by each execution, in the order of <code>rows</code>.
+	 * @throws DAOException
+	 */
+	protected int[] executeBatch(EntityManager entityManager, final String sql, final List<Object[]> rows) throws DAOException {
+		final int[] counts = new int[rows.size()];
+		
+		Deadline.check();
+		try {
+			entityManager.unwrap(Session.class).doWork(new Work() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					PreparedStatement statement = connection.prepareStatement(sql);
+					int executed = 0;
+					int[] chunk;
+					
+					try {
+						for(int index = 0; index < rows.size(); index++) {
+							Object[] values = rows.get(index);
+							
+							for(int parameter = 0; parameter < values.length; parameter++)
+								if(values[parameter] == null)
+									statement.setNull(parameter + 1, Types.VARCHAR); // Oracle converts a null of any type.
+								else
+									statement.setObject(parameter + 1, values[parameter]);
+							statement.addBatch();
+							if((index + 1) % BATCH_SIZE == 0 || index == rows.size() - 1) {
+								chunk = statement.executeBatch();
+								System.arraycopy(chunk, 0, counts, executed, chunk.length);
+								executed += chunk.length;
+							}
+						}
+					}finally {
+						statement.close();
+					}
+				}
+			});
+			return counts;
+		}catch(PersistenceException e){
+			throw new DAOException(e);
+		}
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -63,8 +254,9 @@ public class BasicDAO<I extends Serializable, E extends EntityBean<I>> extends D
 	public void remove(EntityManager entityManager, E entity) throws DAOException {
 		E existing;
 		
+		Deadline.check();
 		try{
-			existing = entityManager.find(entityClass, entity.getId());
+			existing = entityManager.find(entityClass, entity.getId(), Deadline.hints());
 			
 			if(existing != null)
 				entityManager.remove(existing);
@@ -80,8 +272,28 @@ public class BasicDAO<I extends Serializable, E extends EntityBean<I>> extends D
 	 */	
 	@Override
 	public E findById(EntityManager entityManager, I key) throws DAOException {
+		Deadline.check();
 		try{
-			return entityManager.find(entityClass, key);
+			return entityManager.find(entityClass, key, Deadline.hints());
+		}catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+	}
+	
+	/**
+	 * <p>Looks for an entity loading the associations named by an entity graph in the same statement.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param key A non-null instance of the entity's primary key class
+	 * @param graphName Name of an entity graph declared on the entity class.
+	 * @return The entity whose <code>id</code> property matches <code>key</code> parameter, or <code>null</code> if none is found. 
+	 * @throws DAOException
+	 */
+	public E findById(EntityManager entityManager, I key, String graphName) throws DAOException {
+		Map<String, Object> hints = Deadline.hints();
+		
+		try{
+			hints.put(FETCH_GRAPH_HINT, entityManager.getEntityGraph(graphName));
+			return entityManager.find(entityClass, key, hints);
 		}catch(IllegalArgumentException e){
 			throw new DAOException(e);
 		}
@@ -93,6 +305,118 @@ public class BasicDAO<I extends Serializable, E extends EntityBean<I>> extends D
 	
 
 
+	/**
+	 * <p>Saves <code>entities</code> in chunks of {@link #BATCH_SIZE}: the existing rows of each chunk are read with one query, 
+	 * then new entities are inserted and existing ones updated as JDBC batches, and the chunk's managed instances are detached.</p>
+	 * <p>Detaching only what was written keeps the persistence context from growing with <code>entities</code> without 
+	 * detaching the other entities the caller has loaded in it. The detach cascades like the entities' mappings say.</p>
+	 * <p>Versioned entities follow the same rules as in {@link #persist(EntityManager, EntityBean)}; native upserts aren't used 
+	 * because they can't be batched.</p>
+	 */
+	@Override
+	public void persistAll(EntityManager entityManager, Collection<E> entities) throws DAOException {
+		List<E> chunk = new ArrayList<E>(BATCH_SIZE);
+		
+		try{
+			for(E entity: entities) {
+				chunk.add(entity);
+				if(chunk.size() == BATCH_SIZE) {
+					persistChunk(entityManager, chunk);
+					chunk.clear();
+				}
+			}
+			if(!chunk.isEmpty())
+				persistChunk(entityManager, chunk);
+		}catch(PersistenceException e){
+			throw new DAOException(e);
+		}catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void persistChunk(EntityManager entityManager, List<E> chunk) throws DAOException {
+		Map<I, E> existing = new HashMap<I, E>();
+		List<E> merged = new ArrayList<E>(chunk.size());
+		List<I> ids = new ArrayList<I>(chunk.size());
+		
+		for(E entity: chunk)
+			ids.add(entity.getId());
+		for(E entity: findByIds(entityManager, ids))
+			existing.put(entity.getId(), entity);
+		
+		for(E entity: chunk) {
+			E current = existing.get(entity.getId());
+			
+			if(current == null) {
+				entityManager.persist(entity);
+				merged.add(entity);
+			}else {
+				if(entity instanceof VersionedEntityBean && ((VersionedEntityBean<I>) entity).getVersion() == null)
+					((VersionedEntityBean<I>) entity).setVersion(((VersionedEntityBean<I>) current).getVersion());
+				merged.add(entityManager.merge(entity));
+			}
+		}
+		entityManager.flush();
+		for(int index = 0; index < chunk.size(); index++)
+			if(chunk.get(index) instanceof VersionedEntityBean)
+				((VersionedEntityBean<I>) chunk.get(index)).setVersion(((VersionedEntityBean<I>) merged.get(index)).getVersion());
+		for(E entity: merged)
+			entityManager.detach(entity);
+	}
+	
+	/**
+	 * <p>Removes <code>entities</code> in chunks of {@link #BATCH_SIZE}, reading each chunk with one query so removals cascade, 
+	 * and deleting it as a JDBC batch. Flushing the deletes drops the removed instances from the persistence context; other 
+	 * entities the caller has loaded in it stay managed.</p>
+	 */
+	@Override
+	public void removeAll(EntityManager entityManager, Collection<E> entities) throws DAOException {
+		List<I> ids = new ArrayList<I>(BATCH_SIZE);
+		Iterator<E> iterator = entities.iterator();
+		
+		try{
+			while(iterator.hasNext()) {
+				ids.add(iterator.next().getId());
+				if(ids.size() == BATCH_SIZE || !iterator.hasNext()) {
+					for(E existing: findByIds(entityManager, ids))
+						entityManager.remove(existing);
+					entityManager.flush();
+					ids.clear();
+				}
+			}
+		}catch(PersistenceException e){
+			throw new DAOException(e);
+		}catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+	}
+	
+	/**
+	 * <p>Entities already in the persistence context are taken from it; the rest are fetched with <code>IN</code> lists of up to 
+	 * {@link #IN_LIST_LIMIT} ids.</p>
+	 */
+	@Override
+	public List<E> findByIds(EntityManager entityManager, Collection<I> keys) throws DAOException {
+		List<E> found;
+		
+		Deadline.check();
+		try{
+			found = new ArrayList<E>(
+				entityManager.unwrap(Session.class)
+					.byMultipleIds(entityClass)
+					.withBatchSize(IN_LIST_LIMIT)
+					.multiLoad(new ArrayList<I>(keys))
+			);
+			found.removeAll(Collections.singleton(null));
+			return found;
+		}catch(PersistenceException e){
+			throw new DAOException(e);
+		}catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+	}
+
 	@Override
 	public void persist(E entity) throws DAOException {
 		EntityManager entityManager = null;
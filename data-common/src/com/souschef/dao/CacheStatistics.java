@@ -0,0 +1,51 @@
+package com.souschef.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * <p>Snapshot of Hibernate's second-level and query cache counters; they are only collected when 
+ * <code>hibernate.generate_statistics</code> is enabled.</p>
+ * @author rsolano
+ *
+ */
+public class CacheStatistics {
+	
+	/**
+	 * 
+	 * @param entityManagerFactory A Hibernate backed factory.
+	 * @return Hit, miss, put and size counters of each cache region, plus the query cache totals under <code>"queries"</code>.
+	 */
+	public static Map<String, Map<String, Long>> of(EntityManagerFactory entityManagerFactory) {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		Map<String, Map<String, Long>> regions = new LinkedHashMap<String, Map<String, Long>>();
+		Map<String, Long> counters;
+		
+		for(String region: statistics.getSecondLevelCacheRegionNames()) {
+			SecondLevelCacheStatistics cache = statistics.getSecondLevelCacheStatistics(region);
+			
+			if(cache == null)
+				continue;
+			counters = new LinkedHashMap<String, Long>();
+			counters.put("hits", cache.getHitCount());
+			counters.put("misses", cache.getMissCount());
+			counters.put("puts", cache.getPutCount());
+			counters.put("size", cache.getElementCountInMemory());
+			regions.put(region, counters);
+		}
+		
+		counters = new LinkedHashMap<String, Long>();
+		counters.put("hits", statistics.getQueryCacheHitCount());
+		counters.put("misses", statistics.getQueryCacheMissCount());
+		counters.put("puts", statistics.getQueryCachePutCount());
+		counters.put("executions", statistics.getQueryExecutionCount());
+		regions.put("queries", counters);
+		return regions;
+	}
+}
@@ -1,6 +1,8 @@
 package com.souschef.dao;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -9,12 +11,18 @@ import javax.persistence.EntityManager;
 import javax.persistence.LockTimeoutException;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.PessimisticLockException;
 import javax.persistence.Query;
 import javax.persistence.QueryTimeoutException;
 import javax.persistence.TransactionRequiredException;
+import javax.persistence.TypedQuery;
 
 import org.apache.openjpa.persistence.ArgumentException;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 
 /**
  * <p>This is a blueprint for all classes that might be deemed as DAO objects.</p>
@@ -24,6 +32,43 @@ import org.apache.openjpa.persistence.ArgumentException;
  * @param <E> The entity class handled by this DAO.
  */
 public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
+	/**
+	 * Name of the parameter that keyset queries must compare against the entity's primary key.
+	 */
+	public static final String AFTER_PARAMETER = "after";
+	
+	/**
+	 * Upper bound for the <code>limit</code> argument of {@link #page(EntityManager, String, Map, Serializable, int)}.
+	 */
+	public static final int MAX_PAGE_LIMIT = 500;
+	
+	/**
+	 * Entities written between flushes by bulk operations; it must match <code>hibernate.jdbc.batch_size</code>.
+	 */
+	public static final int BATCH_SIZE = 50;
+	
+	/**
+	 * Largest number of ids sent in a single <code>IN</code> list; Oracle rejects lists longer than this.
+	 */
+	public static final int IN_LIST_LIMIT = 1000;
+	
+	/**
+	 * <p>Switches an entity manager to read-only mode: every entity it loads, whether by query, by id or lazily, is read-only, 
+	 * so Hibernate keeps no snapshot of its state for dirty checking, and queries don't trigger automatic flushes. 
+	 * {@link #all(EntityManager, String, Map)}, {@link #exists(EntityManager, String, Map)}, {@link #findById(EntityManager, Serializable)} 
+	 * and the other reads of every DAO honour it.</p>
+	 * <p>Changes to entities loaded this way are never written, so the entity manager must only be used for reads.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @return <code>entityManager</code>.
+	 */
+	public static EntityManager readOnly(EntityManager entityManager) {
+		Session session = entityManager.unwrap(Session.class);
+		
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+		return entityManager;
+	}
+	
 	/**
 	 * The entity class handled by this DAO.
 	 */
@@ -58,6 +103,33 @@ public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
 	 * @throws DAOException
 	 */
 	public abstract E findById(EntityManager entityManager, I key) throws DAOException;
+	
+	/**
+	 * <p>Persists many entities with batched statements.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller. Transaction handling is also caller's responsability.
+	 * @param entities Non-null instances of the entity class. They, and the managed instances merged from them, are detached 
+	 * once written; other entities in the persistence context are left alone.
+	 * @throws DAOException If JPA frameworks could not persist any of the objects.
+	 */
+	public abstract void persistAll(EntityManager entityManager, Collection<E> entities) throws DAOException;
+	
+	/**
+	 * <p>Removes many entities with batched statements.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller. Transaction handling is also caller's responsability.
+	 * @param entities Non-null instances of the entity class; only their ids are used. Other entities in the persistence 
+	 * context are left alone.
+	 * @throws DAOException
+	 */
+	public abstract void removeAll(EntityManager entityManager, Collection<E> entities) throws DAOException;
+	
+	/**
+	 * <p>Looks for the entities whose <code>id</code> property matches any of <code>keys</code>, in as few queries as possible.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller. Transaction handling is also caller's responsability.
+	 * @param keys Non-null instances of the entity's primary key class.
+	 * @return The entities found, in <code>keys</code> order; ids with no matching entity are skipped.
+	 * @throws DAOException
+	 */
+	public abstract List<E> findByIds(EntityManager entityManager, Collection<I> keys) throws DAOException;
 		
 	/**
 	 * <p>Persist an entity.</p>
@@ -103,6 +175,7 @@ public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
 					query.setParameter(entry.getKey(), entry.getValue());
 				}
 			}
+			Deadline.apply(query);
 			list = query.getResultList();
 			return list;
 		}catch(IllegalStateException  e) {
@@ -125,6 +198,38 @@ public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
 		}
 	}	
 	
+	/**
+	 * <p>Runs a projection query, typically one using a constructor expression (<code>SELECT NEW ...</code>) so list views 
+	 * get lightweight objects instead of entity graphs.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param queryName A JPA query defined via annotations or XML.
+	 * @param resultClass Class of the query's results.
+	 * @param parameters A map containing values for query's parameters. May be <code>null</code>.
+	 * @return All results of the query.
+	 * @throws DAOException
+	 */
+	public <T> List<T> select(EntityManager entityManager, String queryName, Class<T> resultClass, Map<String, Object> parameters) throws DAOException{
+		try{ 
+			TypedQuery<T> query = entityManager.createNamedQuery(queryName, resultClass);
+			
+			if(parameters != null ){
+				for(Entry<String,Object> entry: parameters.entrySet()){
+					query.setParameter(entry.getKey(), entry.getValue());
+				}
+			}
+			Deadline.apply(query);
+			return query.getResultList();
+		}catch(IllegalStateException  e) {
+			throw new DAOException(e);
+		}
+		catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+		catch(PersistenceException e){
+			throw new DAOException(e);
+		}
+	}
+	
 	/**
 	 * <p>Shorthand for <b><code>all(entityManager, queryName, null)</code></b>.</p>
 	 * @param entityManager  An entity manager that must be instantiated by the caller.
@@ -136,6 +241,144 @@ public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
 		return all(entityManager, queryName, null);
 	}
 	
+	/**
+	 * <p>Retrieves a slice of the records matching a keyset JPA query.</p>
+	 * <p>The query must be ordered by the entity's primary key and filter it with <code>(:after IS NULL OR e.id &gt; :after)</code>, so 
+	 * the database seeks directly to the first row of the slice instead of skipping over the previous ones.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param queryName A JPA query defined via annotations or XML that declares the {@link #AFTER_PARAMETER} parameter.
+	 * @param parameters A map containing values for the remaining query's parameters. May be <code>null</code>.
+	 * @param after Continuation token returned by a previous call, or <code>null</code> to get the first slice.
+	 * @param limit Maximum number of records in the slice; it must be between 1 and {@link #MAX_PAGE_LIMIT}.
+	 * @return A page whose continuation token is <code>null</code> when no records follow it.
+	 * @throws DAOException
+	 */
+	@SuppressWarnings("unchecked")
+	public Page<I,E> page(EntityManager entityManager, String queryName, Map<String, Object> parameters, I after, int limit) throws DAOException{
+		if(limit < 1 || limit > MAX_PAGE_LIMIT)
+			throw new DAOException(new IllegalArgumentException(String.format("Page limit must be between 1 and %d", MAX_PAGE_LIMIT)));
+		
+		try{ 
+			Query query = entityManager.createNamedQuery(queryName);
+			List<E> list;
+			I next = null;
+			
+			if(parameters != null ){
+				for(Entry<String,Object> entry: parameters.entrySet()){
+					query.setParameter(entry.getKey(), entry.getValue());
+				}
+			}
+			query.setParameter(AFTER_PARAMETER, after);
+			query.setMaxResults(limit + 1); // One extra row tells whether another page follows.
+			Deadline.apply(query);
+			list = query.getResultList();
+			
+			if(list.size() > limit) {
+				list = new ArrayList<E>(list.subList(0, limit));
+				next = list.get(limit - 1).getId();
+			}
+			
+			return new Page<I,E>(list, next, limit);
+		}catch(IllegalStateException  e) {
+			throw new DAOException(e);
+		}
+		catch(IllegalArgumentException e){
+			throw new DAOException(e);
+		}
+		catch(QueryTimeoutException e){
+			throw new DAOException(e);
+		}
+		catch(TransactionRequiredException e) {
+			throw new DAOException(e);
+		}
+		catch(PessimisticLockException e){
+			throw new DAOException(e);
+		}
+		catch(LockTimeoutException e){
+			throw new DAOException(e);
+		}
+	}
+	
+	/**
+	 * <p>Walks all records matching a JPA query through a forward-only database cursor, handing them to <code>handler</code> as they are read.</p>
+	 * <p>Entities are read in chunks of <code>fetchSize</code>; each chunk goes through {@link #prepare(EntityManager, List)}, is handed 
+	 * out, and then the persistence context is cleared so memory use doesn't grow with the result's size; therefore <code>handler</code> 
+	 * must be done with each entity before returning. The query mustn't fetch-join collections: a forward-only cursor can't step back 
+	 * across the rows of a collection, and a clear could detach an entity whose collection is half-assembled.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param queryName A JPA query defined via annotations or XML.
+	 * @param parameters A map containing values for query's parameters. May be <code>null</code>.
+	 * @param fetchSize Number of rows the JDBC driver fetches per round trip; it's also the persistence context clearing interval.
+	 * @param handler A non null object that receives every entity.
+	 * @return Number of entities passed to <code>handler</code>.
+	 * @throws DAOException If the query fails or <code>handler</code> aborts the iteration.
+	 */
+	@SuppressWarnings("unchecked")
+	public int scroll(EntityManager entityManager, String queryName, Map<String, Object> parameters, int fetchSize, ResultHandler<? super E> handler) throws DAOException{
+		ScrollableResults results = null;
+		List<E> chunk = new ArrayList<E>(fetchSize);
+		int count = 0;
+		
+		try{ 
+			org.hibernate.query.Query<?> query = entityManager.createNamedQuery(queryName).unwrap(org.hibernate.query.Query.class);
+			
+			if(parameters != null ){
+				for(Entry<String,Object> entry: parameters.entrySet()){
+					query.setParameter(entry.getKey(), entry.getValue());
+				}
+			}
+			query.setFetchSize(fetchSize);
+			query.setReadOnly(true);
+			Deadline.apply(query);
+			results = query.scroll(ScrollMode.FORWARD_ONLY);
+			
+			while(results.next()) {
+				chunk.add((E) results.get(0));
+				if(chunk.size() == fetchSize)
+					count += handle(entityManager, chunk, handler);
+			}
+			if(!chunk.isEmpty())
+				count += handle(entityManager, chunk, handler);
+			
+			return count;
+		}catch(IllegalStateException  e) {
+			throw new DAOException(e);
+		}
+		catch(PersistenceException e){
+			throw new DAOException(e);
+		}finally {
+			if(results != null)
+				try {
+					results.close();
+				}catch(Throwable t){
+					
+				}
+		}
+	}
+	
+	private int handle(EntityManager entityManager, List<E> chunk, ResultHandler<? super E> handler) throws DAOException {
+		int count = chunk.size();
+		
+		prepare(entityManager, chunk);
+		for(E entity: chunk)
+			handler.handle(entity);
+		chunk.clear();
+		entityManager.clear();
+		Deadline.check(); // The query timeout covers each fetch, not the whole walk.
+		return count;
+	}
+	
+	/**
+	 * <p>Loads what a chunk of scrolled entities needs before it's handed out, e.g. their collections with one query; it does 
+	 * nothing by default.</p>
+	 * @param entityManager The entity manager of the scroll.
+	 * @param chunk Entities read since the last chunk, all of them managed.
+	 * @throws DAOException
+	 */
+	protected void prepare(EntityManager entityManager, List<E> chunk) throws DAOException {
+		
+	}
+	
 	/**
 	 *<p>Retrieves the first record matching a filtering criteria defined in a JPA query.</p>
 	 * @param entityManager
@@ -154,6 +397,7 @@ public abstract class DAO<I extends Serializable, E extends EntityBean<I>>  {
 					query.setParameter(entry.getKey(), entry.getValue());
 				}
 			}
+			Deadline.apply(query);
 			return (E) query.getSingleResult();
 		}
 		catch(NoResultException  e) {
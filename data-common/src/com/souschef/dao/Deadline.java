@@ -0,0 +1,110 @@
+package com.souschef.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.Query;
+import javax.persistence.QueryTimeoutException;
+
+/**
+ * <p>Time budget of the request being served by the current thread.</p>
+ * <p>The web tier sets it before calling the domain managers; local EJB calls run on the caller's thread, so every DAO invoked 
+ * on behalf of the request sees it. DAOs apply the remaining budget as the JPA query timeout and refuse to start new work 
+ * once it's spent, which frees database capacity for requests that can still succeed.</p>
+ * @author rsolano
+ *
+ */
+public class Deadline {
+	/**
+	 * Standard JPA hint, in milliseconds.
+	 */
+	public static final String QUERY_TIMEOUT_HINT = "javax.persistence.query.timeout";
+	
+	private static final ThreadLocal<Long> deadline = new ThreadLocal<Long>();
+	
+	/**
+	 * <p>Starts a budget for the current thread.</p>
+	 * @param timeoutMillis Time, from now, after which the work must be abandoned.
+	 */
+	public static void set(long timeoutMillis) {
+		deadline.set(System.nanoTime() + timeoutMillis * 1000000L);
+	}
+	
+	/**
+	 * <p>Removes the budget bound to the current thread; it must be called when the request ends because threads are pooled.</p>
+	 */
+	public static void clear() {
+		deadline.remove();
+	}
+	
+	public static boolean isSet() {
+		return deadline.get() != null;
+	}
+	
+	/**
+	 * 
+	 * @return Milliseconds left before the deadline (negative once it has passed), or <code>Long.MAX_VALUE</code> if no deadline is set.
+	 */
+	public static long remainingMillis() {
+		Long value = deadline.get();
+		
+		if(value == null)
+			return Long.MAX_VALUE;
+		return (value - System.nanoTime()) / 1000000L;
+	}
+	
+	public static boolean isExpired() {
+		return remainingMillis() <= 0;
+	}
+	
+	/**
+	 * 
+	 * @throws DAOException Wrapping a <code>QueryTimeoutException</code> if the deadline has passed.
+	 */
+	public static void check() throws DAOException {
+		if(isExpired())
+			throw new DAOException(new QueryTimeoutException("Request deadline exceeded"));
+	}
+	
+	/**
+	 * <p>Sets the remaining budget as <code>query</code>'s timeout, rounded up to whole seconds: Hibernate rounds the hint to 
+	 * the nearest second and a JDBC timeout of zero means no limit, so less than half a second left would disable it.</p>
+	 * @param query A query about to be executed.
+	 * @throws DAOException If the deadline has already passed.
+	 */
+	public static void apply(Query query) throws DAOException {
+		Integer timeout = timeout();
+		
+		if(timeout != null)
+			query.setHint(QUERY_TIMEOUT_HINT, timeout);
+	}
+	
+	/**
+	 * <p>Builds the hints that give an <code>EntityManager.find</code> the remaining budget, rounded up like {@link #apply(Query)}.</p>
+	 * @return A modifiable map, empty if no deadline is set, to which callers may add their own hints.
+	 * @throws DAOException If the deadline has already passed.
+	 */
+	public static Map<String, Object> hints() throws DAOException {
+		Map<String, Object> hints = new HashMap<String, Object>();
+		Integer timeout = timeout();
+		
+		if(timeout != null)
+			hints.put(QUERY_TIMEOUT_HINT, timeout);
+		return hints;
+	}
+	
+	/**
+	 * 
+	 * @return The timeout hint value, in milliseconds, or <code>null</code> if no deadline is set.
+	 * @throws DAOException If the deadline has already passed.
+	 */
+	private static Integer timeout() throws DAOException {
+		long remaining = remainingMillis();
+		
+		if(remaining == Long.MAX_VALUE)
+			return null;
+		if(remaining <= 0)
+			throw new DAOException(new QueryTimeoutException("Request deadline exceeded"));
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1000, ((remaining + 999) / 1000) * 1000));
+	}
+}
@@ -0,0 +1,77 @@
+package com.souschef.dao;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * <p>A slice of a keyset-paginated result set.</p>
+ * <p>The continuation token is the primary key of the last entity in the slice; callers pass it back as the <code>after</code>
+ * argument to get the next slice. A <code>null</code> token means there is nothing left to read.</p>
+ * @author rsolano
+ *
+ * @param <I> The entity's primary key class.
+ * @param <E> The entity class contained in this page.
+ */
+public class Page<I extends Serializable, E extends Serializable> implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 4962177412519043183L;
+
+	private List<E> items;
+
+	private I next;
+
+	private int limit;
+
+	public Page() {
+
+	}
+
+	public Page(List<E> items, I next, int limit) {
+		this.items = items;
+		this.next = next;
+		this.limit = limit;
+	}
+
+	/**
+	 *
+	 * @return Entities in this slice, ordered by primary key.
+	 */
+	public List<E> getItems() {
+		return items;
+	}
+
+	public void setItems(List<E> items) {
+		this.items = items;
+	}
+
+	/**
+	 *
+	 * @return The continuation token for the next slice or <code>null</code> if this is the last one.
+	 */
+	public I getNext() {
+		return next;
+	}
+
+	public void setNext(I next) {
+		this.next = next;
+	}
+
+	/**
+	 *
+	 * @return The page size requested by the caller.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	public boolean isLast() {
+		return next == null;
+	}
+}
@@ -0,0 +1,18 @@
+package com.souschef.dao;
+
+/**
+ * <p>Receives, one at a time, the entities read from a database cursor by {@link DAO#scroll(javax.persistence.EntityManager, String, java.util.Map, int, ResultHandler)}.</p>
+ * <p>Implementations must not keep references to the entities they receive, otherwise the persistence context can't release them.</p>
+ * @author rsolano
+ *
+ * @param <E> The entity class handled by this object.
+ */
+public interface ResultHandler<E> {
+	
+	/**
+	 * 
+	 * @param entity A managed entity that is detached as soon as the fetch window it belongs to is consumed.
+	 * @throws DAOException If the handler wants to abort the iteration.
+	 */
+	void handle(E entity) throws DAOException;
+}
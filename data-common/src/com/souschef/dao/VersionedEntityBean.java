@@ -0,0 +1,41 @@
+package com.souschef.dao;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.Version;
+
+/**
+ * <p>Entity beans protected by optimistic locking.</p>
+ * <p>The version is incremented by every update; a save carrying an older version than the stored one is rejected instead of 
+ * overwriting somebody else's changes. A <code>null</code> version means the caller never read the entity, so its save is 
+ * either an insert or an unconditional overwrite. Owned entities, like ingredients, are covered by their owner's version.</p>
+ * @author rsolano
+ *
+ * @param <I> The Id (aka primary) key for this class.
+ */
+@MappedSuperclass
+public abstract class VersionedEntityBean<I extends Serializable> extends EntityBean<I> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -2093372146906582766L;
+	
+	@Version
+	@Column(name="VERSION")
+	private Long version;
+
+	/**
+	 * 
+	 * @return The version this instance was read at, or <code>null</code> if it wasn't read from the database.
+	 */
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+}
@@ -2,6 +2,7 @@ package com.souschef.json.parser.bean;
 
 import static com.souschef.json.JSONUtils.isIncluded;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -14,6 +15,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
 
+import com.souschef.dao.EntityBean;
 import com.souschef.json.JSONUtils;
 import com.souschef.json.parser.JSONParser;
 import com.souschef.json.parser.JSONParserContext;
@@ -505,11 +507,17 @@ public class JSON2BeanParserContext extends JSONParserContext{
 		    		}else{
 		    			setter.invoke(top, new BigDecimal(value.toString()));
 		    		}
+		    	}else if(EntityBean.class.isAssignableFrom(parameterType) && value != null && !parameterType.isInstance(value)){
+		    		setter.invoke(top, createReference(parameterType, value));
 		    	}else{
 		    		setter.invoke(top, value);
 		    	}
 	    	}catch(NullPointerException e){	    		
 	    		throwAssignmentException(name, value, setter, metaInfo);
+	    	}catch(InstantiationException e){	    		
+	    		throwAssignmentException(name, value, setter, metaInfo);
+	    	}catch(NoSuchMethodException e){	    		
+	    		throwAssignmentException(name, value, setter, metaInfo);
 	    	} catch (IllegalArgumentException e) {
 	    		throwAssignmentException(name, value, setter, metaInfo);
 			} catch (IllegalAccessException e) {
@@ -523,6 +531,22 @@ public class JSON2BeanParserContext extends JSONParserContext{
     
     Stack<Object> structureStack = new Stack<Object>();
     
+    /**
+     * <p>Creates an entity holding only its id, so associations can be sent as a bare id (<code>"component":"1a2b"</code>) 
+     * instead of a nested object. DAOs bind such instances to JPA references when saving.</p>
+     * @param entityClass Class of the associated entity.
+     * @param id The id sent by the client.
+     * @return A new instance whose only property set is its id.
+     */
+    @SuppressWarnings("unchecked")
+	private Object createReference(Class<?> entityClass, Object id) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException{
+    	EntityBean<Serializable> entity = (EntityBean<Serializable>) entityClass.getConstructor().newInstance();
+    	Class<?> idClass = entityClass.getMethod("getId").getReturnType();
+    	
+    	entity.setId(String.class.equals(idClass) ? id.toString() : (Serializable) id);
+    	return entity;
+    }
+    
     private Object createInstance(Class<?> parameterType) throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException{
     	return getObjectClass() == null ? parameterType.getConstructor().newInstance() : getObjectClass().newInstance();
     }
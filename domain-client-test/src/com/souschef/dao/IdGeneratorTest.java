@@ -0,0 +1,219 @@
+package com.souschef.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.Test;
+
+/**
+ * <p>Checks the layout and ordering of generated ids; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class IdGeneratorTest {
+
+	private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+	/**
+	 *
+	 * @return The milliseconds encoded in the first 10 characters of <code>id</code>.
+	 */
+	private static long time(String id) {
+		long time = 0;
+
+		for(int index = 0; index < 10; index++)
+			time = (time << 5) | ALPHABET.indexOf(id.charAt(index));
+		return time;
+	}
+
+	/**
+	 * <p>Runs <code>task</code> on a new thread, whose generator state no earlier test has moved.</p>
+	 */
+	private static <T> T onNewThread(Callable<T> task) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			return executor.submit(task).get();
+		}finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 *
+	 * @return A session whose persister reports <code>id</code> as the identifier of every entity.
+	 */
+	private static SharedSessionContractImplementor session(final Object id) {
+		final EntityPersister persister = (EntityPersister) Proxy.newProxyInstance(
+			EntityPersister.class.getClassLoader(), new Class<?>[] {EntityPersister.class}, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if(method.getName().equals("getIdentifier"))
+						return id;
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		);
+
+		return (SharedSessionContractImplementor) Proxy.newProxyInstance(
+			SharedSessionContractImplementor.class.getClassLoader(), new Class<?>[] {SharedSessionContractImplementor.class}, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if(method.getName().equals("getEntityPersister"))
+						return persister;
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		);
+	}
+
+	@Test
+	public void idsUseTheCrockfordAlphabet() {
+		for(int count = 0; count < 1000; count++) {
+			String id = IdGenerator.next();
+
+			assertEquals(IdGenerator.LENGTH, id.length());
+			for(char character: id.toCharArray())
+				assertTrue(id, ALPHABET.indexOf(character) >= 0);
+		}
+	}
+
+	@Test
+	public void idsStartWithTheirMillisecond() throws Exception {
+		final long before = System.currentTimeMillis();
+		String id = onNewThread(new Callable<String>() {
+			@Override
+			public String call() {
+				return IdGenerator.next();
+			}
+		});
+		long after = System.currentTimeMillis();
+
+		assertTrue(time(id) >= before && time(id) <= after);
+		assertEquals(1500000000000L, time(onNewThread(new Callable<String>() {
+			@Override
+			public String call() {
+				return IdGenerator.next(1500000000000L);
+			}
+		})));
+	}
+
+	@Test
+	public void idsOfAThreadIncreaseStrictly() {
+		String previous = IdGenerator.next();
+
+		for(int count = 0; count < 100000; count++) {
+			String id = IdGenerator.next();
+
+			assertTrue(previous + " then " + id, id.compareTo(previous) > 0);
+			previous = id;
+		}
+	}
+
+	@Test
+	public void repeatedClockReadingsStillIncrease() throws Exception {
+		onNewThread(new Callable<Void>() {
+			@Override
+			public Void call() {
+				repeatedClockReadings(System.currentTimeMillis());
+				return null;
+			}
+		});
+	}
+
+	private static void repeatedClockReadings(long now) {
+		String first = IdGenerator.next(now);
+		String second = IdGenerator.next(now);
+		String third = IdGenerator.next(now);
+
+		assertTrue(second.compareTo(first) > 0);
+		assertTrue(third.compareTo(second) > 0);
+		assertEquals(first.substring(0, 20), third.substring(0, 20)); // Only the low random bits moved.
+	}
+
+	@Test
+	public void clockGoingBackStillIncreases() throws Exception {
+		onNewThread(new Callable<Void>() {
+			@Override
+			public Void call() {
+				clockGoingBack(System.currentTimeMillis());
+				return null;
+			}
+		});
+	}
+
+	private static void clockGoingBack(long now) {
+		String first = IdGenerator.next(now);
+		String second = IdGenerator.next(now - 5000);
+		String third = IdGenerator.next(now - 10000);
+
+		assertTrue(second.compareTo(first) > 0);
+		assertTrue(third.compareTo(second) > 0);
+		assertEquals("The id keeps the latest millisecond seen", now, time(third));
+
+		assertTrue(IdGenerator.next(now + 1).compareTo(third) > 0);
+	}
+
+	@Test
+	public void threadsDontCollide() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<String>>> batches = new ArrayList<Future<List<String>>>();
+		Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+		int total = 0;
+
+		try {
+			for(int thread = 0; thread < 8; thread++)
+				batches.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						List<String> batch = new ArrayList<String>(10000);
+
+						for(int count = 0; count < 10000; count++)
+							batch.add(IdGenerator.next());
+						return batch;
+					}
+				}));
+			for(Future<List<String>> batch: batches) {
+				ids.addAll(batch.get());
+				total += batch.get().size();
+			}
+		}finally {
+			executor.shutdownNow();
+		}
+		assertEquals(total, ids.size());
+	}
+
+	@Test
+	public void generateKeepsAnAssignedId() {
+		IdGenerator generator = new IdGenerator();
+		String assigned = "01ARZ3NDEKTSV4RRFFQ69G5FAV";
+
+		assertSame(assigned, generator.generate(session(assigned), new Object()));
+	}
+
+	@Test
+	public void generateFillsInAMissingId() {
+		IdGenerator generator = new IdGenerator();
+		String id = (String) generator.generate(session(null), new Object());
+
+		assertEquals(IdGenerator.LENGTH, id.length());
+		assertNotEquals(id, generator.generate(session(null), new Object()));
+	}
+}
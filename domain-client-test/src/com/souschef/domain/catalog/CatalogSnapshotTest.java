@@ -0,0 +1,167 @@
+package com.souschef.domain.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.souschef.dao.Page;
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Checks the in-memory catalogue's copy-on-write updates and category pages; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class CatalogSnapshotTest {
+
+	private static final ComponentCategory DAIRY = new ComponentCategory("dairy", "Dairy");
+
+	private static final ComponentCategory SPICES = new ComponentCategory("spices", "Spices");
+
+	private static Component component(String id, ComponentCategory category, String name) {
+		return new Component(id, category, name, Unit.KILOGRAM, 1, 1);
+	}
+
+	private static CatalogSnapshot snapshot() {
+		return CatalogSnapshot.build(
+			Arrays.asList(DAIRY, SPICES),
+			Arrays.asList(component("c", DAIRY, "Cream"), component("a", DAIRY, "Butter"), component("b", SPICES, "Pepper"))
+		);
+	}
+
+	private static List<String> ids(List<Component> components) {
+		List<String> ids = new ArrayList<String>(components.size());
+
+		for(Component component: components)
+			ids.add(component.getId());
+		return ids;
+	}
+
+	@Test
+	public void buildIndexesByIdNameAndCategory() {
+		CatalogSnapshot snapshot = snapshot();
+
+		assertEquals(3, snapshot.size());
+		assertEquals("Butter", snapshot.findComponentById("a").getName());
+		assertEquals("dairy", snapshot.findComponentById("a").getCategory().getId());
+		assertEquals("b", snapshot.findComponentByName("Pepper").getId());
+		assertEquals(Arrays.asList("a", "c"), ids(snapshot.componentsByCategory("dairy")));
+		assertNull(snapshot.componentsByCategory("missing"));
+	}
+
+	@Test
+	public void withComponentLeavesTheSourceAlone() {
+		CatalogSnapshot source = snapshot();
+		CatalogSnapshot added = source.withComponent(component("b2", DAIRY, "Milk"));
+		CatalogSnapshot renamed = added.withComponent(component("a", DAIRY, "Salted butter"));
+
+		assertEquals(3, source.size());
+		assertFalse(source.contains("b2"));
+		assertEquals(4, added.size());
+		assertEquals(Arrays.asList("a", "b2", "c"), ids(added.componentsByCategory("dairy")));
+
+		assertEquals("Salted butter", renamed.findComponentById("a").getName());
+		assertEquals("a", renamed.findComponentByName("Salted butter").getId());
+		assertNull(renamed.findComponentByName("Butter"));
+		assertEquals("a", added.findComponentByName("Butter").getId());
+	}
+
+	@Test
+	public void withComponentMovesItBetweenCategories() {
+		CatalogSnapshot moved = snapshot().withComponent(component("c", SPICES, "Cream"));
+		CatalogSnapshot uncategorized = moved.withComponent(component("b", null, "Pepper"));
+
+		assertEquals(Arrays.asList("a"), ids(moved.componentsByCategory("dairy")));
+		assertEquals(Arrays.asList("b", "c"), ids(moved.componentsByCategory("spices")));
+		assertEquals(Arrays.asList("c"), ids(uncategorized.componentsByCategory("spices")));
+		assertNull(uncategorized.findComponentById("b").getCategory());
+	}
+
+	@Test
+	public void withComponentAddsAnUnknownCategory() {
+		CatalogSnapshot snapshot = snapshot().withComponent(component("d", new ComponentCategory("herbs", "Herbs"), "Basil"));
+
+		assertEquals("Herbs", snapshot.findCategoryById("herbs").getName());
+		assertEquals(Arrays.asList("d"), ids(snapshot.componentsByCategory("herbs")));
+	}
+
+	@Test
+	public void withoutComponentRemovesEveryIndexEntry() {
+		CatalogSnapshot source = snapshot();
+		CatalogSnapshot snapshot = source.withoutComponent("a");
+
+		assertEquals(2, snapshot.size());
+		assertFalse(snapshot.contains("a"));
+		assertNull(snapshot.findComponentById("a"));
+		assertNull(snapshot.findComponentByName("Butter"));
+		assertEquals(Arrays.asList("c"), ids(snapshot.componentsByCategory("dairy")));
+		assertTrue(source.contains("a"));
+		assertSame(snapshot, snapshot.withoutComponent("missing"));
+	}
+
+	@Test
+	public void withoutComponentCompactsEmptySlots() {
+		List<Component> components = new ArrayList<Component>();
+		CatalogSnapshot snapshot;
+
+		for(int index = 0; index < 200; index++)
+			components.add(component(String.format("%03d", index), DAIRY, "Component " + index));
+		snapshot = CatalogSnapshot.build(Collections.singletonList(DAIRY), components);
+		for(int index = 0; index < 199; index++)
+			snapshot = snapshot.withoutComponent(String.format("%03d", index));
+
+		assertEquals(1, snapshot.size());
+		assertEquals("199", snapshot.findComponentByName("Component 199").getId());
+		assertEquals(Arrays.asList("199"), ids(snapshot.componentsByCategory("dairy")));
+	}
+
+	@Test
+	public void categoryPagesFollowIdOrder() {
+		List<Component> components = new ArrayList<Component>();
+		List<String> seen = new ArrayList<String>();
+		CatalogSnapshot snapshot;
+		Page<String, Component> page;
+		String after = null;
+
+		for(int index = 9; index >= 0; index--)
+			components.add(component("d" + index, index % 2 == 0 ? DAIRY : SPICES, "Component " + index));
+		snapshot = CatalogSnapshot.build(Arrays.asList(DAIRY, SPICES), components);
+
+		do {
+			page = snapshot.componentsByCategory("dairy", after, 2);
+			assertTrue(page.getItems().size() <= 2);
+			seen.addAll(ids(page.getItems()));
+			after = page.getNext();
+		}while(after != null);
+
+		assertEquals(Arrays.asList("d0", "d2", "d4", "d6", "d8"), seen);
+		assertNull(snapshot.componentsByCategory("missing", null, 2));
+	}
+
+	@Test
+	public void categoryPagesSkipRemovedComponents() {
+		CatalogSnapshot snapshot = snapshot().withComponent(component("b2", DAIRY, "Milk")).withoutComponent("a");
+		Page<String, Component> page = snapshot.componentsByCategory("dairy", null, 1);
+
+		assertEquals(Arrays.asList("b2"), ids(page.getItems()));
+		page = snapshot.componentsByCategory("dairy", page.getNext(), 1);
+		assertEquals(Arrays.asList("c"), ids(page.getItems()));
+		assertNull(page.getNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void categoryPageLimitIsChecked() {
+		snapshot().componentsByCategory("dairy", null, 0);
+	}
+}
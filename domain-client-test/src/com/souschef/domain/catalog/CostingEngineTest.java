@@ -0,0 +1,118 @@
+package com.souschef.domain.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.IngredientLine;
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Checks recipe costing and how price changes reach the recipes using a component; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class CostingEngineTest {
+
+	private static final double DELTA = 1e-9;
+
+	private CostingEngine engine;
+
+	/**
+	 *
+	 * @return A component sold in packages of <code>packageSize</code> <code>packageUnit</code>s for <code>price</code>.
+	 */
+	private static Component component(String id, Unit packageUnit, int packageSize, double price) {
+		Component component = new Component(id, null, id, packageUnit, packageSize, 0);
+
+		component.setPrice(price);
+		return component;
+	}
+
+	/**
+	 * <p>Flour at 2 a kilogram, butter at 8 a kilogram sold by the 250 g, milk at 1 a litre; bread uses flour, cake uses all three.</p>
+	 */
+	@Before
+	public void loadEngine() {
+		engine = CostingEngine.getInstance();
+		engine.load(
+			Arrays.asList(
+				component("flour", Unit.KILOGRAM, 1, 2),
+				component("butter", Unit.GRAM, 250, 2),
+				component("milk", Unit.LITRE, 1, 1)
+			),
+			Arrays.asList(
+				new IngredientLine("bread", "flour", 500, Unit.GRAM),
+				new IngredientLine("cake", "flour", 0.25, Unit.KILOGRAM),
+				new IngredientLine("cake", "butter", 1, Unit.POUND),
+				new IngredientLine("cake", "milk", 0.5, Unit.LITRE)
+			)
+		);
+	}
+
+	@Test
+	public void loadCostsEveryRecipe() {
+		assertEquals(1, engine.cost("bread"), DELTA);
+		assertEquals(0.5 + 453.59237 * 2 / 250 + 0.5, engine.cost("cake"), DELTA);
+		assertEquals(2, engine.costs().size());
+		assertNull(engine.cost("missing"));
+	}
+
+	@Test
+	public void priceChangeRecostsTheRecipesUsingIt() {
+		double cake = engine.cost("cake");
+
+		engine.putComponent(component("flour", Unit.KILOGRAM, 1, 4));
+		assertEquals(2, engine.cost("bread"), DELTA);
+		assertEquals(cake + 0.5, engine.cost("cake"), DELTA);
+
+		engine.putComponent(component("milk", Unit.LITRE, 1, 3));
+		assertEquals(2, engine.cost("bread"), DELTA);
+		assertEquals(cake + 0.5 + 1, engine.cost("cake"), DELTA);
+	}
+
+	@Test
+	public void packageChangeIsAPriceChange() {
+		engine.putComponent(component("flour", Unit.POUND, 1, 2)); // Same price for a smaller package.
+		assertEquals(Unit.GRAM.convert(500, Unit.POUND) * 2, engine.cost("bread"), DELTA);
+	}
+
+	@Test
+	public void removedComponentLeavesItsRecipesWithoutCost() {
+		engine.removeComponent("milk");
+		assertEquals(1, engine.cost("bread"), DELTA);
+		assertNull(engine.cost("cake"));
+		assertFalse(engine.costs().containsKey("cake"));
+
+		engine.putComponent(component("milk", Unit.LITRE, 1, 1));
+		assertEquals(0.5 + 453.59237 * 2 / 250 + 0.5, engine.cost("cake"), DELTA);
+	}
+
+	@Test
+	public void incompatibleUnitsLeaveTheRecipeWithoutCost() {
+		engine.putComponent(component("milk", Unit.KILOGRAM, 1, 1));
+		assertNull(engine.cost("cake"));
+		assertEquals(1, engine.cost("bread"), DELTA);
+	}
+
+	@Test
+	public void editedRecipeFollowsItsNewComponents() {
+		engine.putRecipe("bread", Arrays.asList(new Ingredient(1, component("milk", Unit.LITRE, 1, 1), Unit.LITRE)));
+		assertEquals(1, engine.cost("bread"), DELTA);
+
+		engine.putComponent(component("flour", Unit.KILOGRAM, 1, 10)); // No longer used by the bread.
+		assertEquals(1, engine.cost("bread"), DELTA);
+		engine.putComponent(component("milk", Unit.LITRE, 1, 2));
+		assertEquals(2, engine.cost("bread"), DELTA);
+
+		engine.removeRecipe("bread");
+		assertNull(engine.cost("bread"));
+	}
+}
@@ -0,0 +1,106 @@
+package com.souschef.domain.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.souschef.domain.data.model.SearchResult;
+
+/**
+ * <p>Checks name folding, prefix ranking and fuzzy matching of the type-ahead index; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class SearchIndexTest {
+
+	private SearchIndex index;
+
+	@Before
+	public void loadIndex() {
+		Map<String, String> names = new HashMap<String, String>();
+
+		names.put("1", "Jalapeño pepper");
+		names.put("2", "Black pepper");
+		names.put("3", "Pepperoni");
+		names.put("4", "Crème fraîche");
+		names.put("5", "Sweet red pepper");
+		names.put("6", "Parmesan");
+		index = SearchIndex.getInstance(SearchResult.COMPONENT);
+		index.load(names);
+	}
+
+	private static List<String> ids(List<SearchResult> results) {
+		List<String> ids = new ArrayList<String>(results.size());
+
+		for(SearchResult result: results)
+			ids.add(result.getId());
+		return ids;
+	}
+
+	@Test
+	public void foldStripsAccentsCaseAndPunctuation() {
+		assertEquals("jalapeno", SearchIndex.fold("Jalapeño"));
+		assertEquals("creme fraiche", SearchIndex.fold("  Crème-FRAÎCHE! "));
+		assertEquals("", SearchIndex.fold(null));
+	}
+
+	@Test
+	public void accentsDontMatter() {
+		assertEquals(Arrays.asList("1"), ids(index.search("jalapeno", 10)));
+		assertEquals(Arrays.asList("4"), ids(index.search("CREME", 10)));
+		assertEquals(Arrays.asList("4"), ids(index.search("fraîch", 10)));
+	}
+
+	@Test
+	public void nameStartBeatsWordStart() {
+		List<SearchResult> results = index.search("pep", 10);
+
+		assertEquals("3", results.get(0).getId());
+		assertEquals(3, results.get(0).getScore(), 0);
+		assertEquals(Arrays.asList("3", "2", "1", "5"), ids(results));
+		for(SearchResult result: results.subList(1, results.size()))
+			assertEquals(2, result.getScore(), 0);
+	}
+
+	@Test
+	public void everyWordMustMatch() {
+		assertEquals(Arrays.asList("5"), ids(index.search("red pep", 10)));
+		assertEquals(Arrays.asList("5"), ids(index.search("pep swe", 10)));
+	}
+
+	@Test
+	public void limitKeepsTheBest() {
+		assertEquals(Arrays.asList("3", "2"), ids(index.search("pep", 2)));
+		assertTrue(index.search("pep", 0).isEmpty());
+		assertTrue(index.search("  ", 10).isEmpty());
+	}
+
+	@Test
+	public void typosMatchByTrigrams() {
+		List<SearchResult> results = index.search("parmezan", 10);
+
+		assertEquals(Arrays.asList("6"), ids(results));
+		assertTrue(results.get(0).getScore() >= SearchIndex.FUZZY_THRESHOLD && results.get(0).getScore() < 1);
+		assertTrue(index.search("xyzzy", 10).isEmpty());
+	}
+
+	@Test
+	public void updatesAreSearchable() {
+		index.put("6", "Parmigiano");
+		index.put("7", "Peppercorn");
+		index.delete("3");
+
+		assertEquals(Arrays.asList("7", "2", "1", "5"), ids(index.search("pepper", 10)));
+		assertEquals(Arrays.asList("6"), ids(index.search("parmig", 10)));
+		assertFalse(ids(index.search("pepperoni", 10)).contains("3"));
+	}
+}
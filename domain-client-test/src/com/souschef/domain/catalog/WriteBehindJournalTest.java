@@ -0,0 +1,203 @@
+package com.souschef.domain.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Checks the write-behind journal's durability on a temporary directory; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class WriteBehindJournalTest {
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("journal").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for(File file: directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	/**
+	 *
+	 * @return A journal over the test directory, replaying whatever earlier journals left there.
+	 */
+	private WriteBehindJournal<Component> journal() {
+		return new WriteBehindJournal<Component>(Component.class, true, directory.getPath());
+	}
+
+	private File file() {
+		return new File(directory, "Component.journal");
+	}
+
+	private static Component component(String id, String name) {
+		return new Component(id, null, name, Unit.KILOGRAM, 1, 1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void directoryIsRequired() {
+		new WriteBehindJournal<Component>(Component.class, true, null);
+	}
+
+	@Test
+	public void savesOfOneEntityCoalesce() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+
+		journal.append(component("a", "first"));
+		journal.append(component("a", "second"));
+		journal.append(component("b", "other"));
+		assertEquals(2, journal.size());
+		assertEquals("second", journal.find("a").getName());
+
+		journal = journal();
+		assertEquals(2, journal.size());
+		assertEquals("second", journal.find("a").getName());
+		assertEquals(Arrays.asList("a", "b"), Arrays.asList(journal.drain().keySet().toArray()));
+	}
+
+	@Test
+	public void tornTailIsDropped() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+		long valid;
+		RandomAccessFile file;
+
+		journal.append(component("a", "first"));
+		valid = file().length();
+		file = new RandomAccessFile(file(), "rw");
+		try {
+			file.seek(valid);
+			file.writeUTF("b");
+			file.writeInt(1000); // Announces more bytes than the crash left behind.
+			file.write(new byte[10]);
+		}finally {
+			file.close();
+		}
+
+		journal = journal();
+		assertEquals(1, journal.size());
+		assertNotNull(journal.find("a"));
+		assertNull(journal.find("b"));
+		assertEquals(valid, file().length());
+
+		journal.append(component("c", "after"));
+		assertEquals(2, journal().size());
+	}
+
+	@Test
+	public void appendAllRecordsAllOrNone() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+
+		try {
+			journal.appendAll(Arrays.asList(component("a", "first"), component(null, "no id")));
+			fail("An entity without id was accepted");
+		}catch(IllegalArgumentException e) {
+			// Expected.
+		}
+		assertEquals(0, journal.size());
+		assertEquals(0, file().length());
+
+		journal.appendAll(Arrays.asList(component("a", "first"), component("b", "second")));
+		assertEquals(2, journal().size());
+	}
+
+	@Test
+	public void tornBatchIsDroppedWhole() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+		RandomAccessFile file;
+
+		journal.append(component("a", "first"));
+		journal.appendAll(Arrays.asList(component("b", "second"), component("c", "third")));
+		file = new RandomAccessFile(file(), "rw");
+		try {
+			file.setLength(file.length() - 1);
+		}finally {
+			file.close();
+		}
+
+		journal = journal();
+		assertEquals(1, journal.size());
+		assertNotNull(journal.find("a"));
+		assertNull(journal.find("b"));
+		assertNull(journal.find("c"));
+	}
+
+	@Test
+	public void committedSavesAreNotReplayed() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+		Map<String, Component> drained;
+
+		journal.append(component("a", "first"));
+		journal.append(component("b", "second"));
+		drained = journal.drain();
+		journal.append(component("b", "again")); // Saved again while the first save is being written.
+		journal.commit(drained.keySet());
+
+		assertEquals(1, journal.size());
+		journal = journal();
+		assertEquals(1, journal.size());
+		assertEquals("again", journal.find("b").getName());
+	}
+
+	@Test
+	public void failingSaveIsRejectedAfterMaxAttempts() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+		List<String> rejected = Collections.emptyList();
+
+		journal.append(component("a", "poison"));
+		for(int attempt = 1; attempt <= WriteBehindJournal.MAX_ATTEMPTS; attempt++) {
+			Map<String, Component> drained = journal.drain();
+
+			assertEquals(Collections.singleton("a"), drained.keySet());
+			rejected = journal.restore(drained.keySet());
+			if(attempt < WriteBehindJournal.MAX_ATTEMPTS) {
+				assertTrue(rejected.isEmpty());
+				assertEquals(1, journal.size());
+			}
+		}
+		assertEquals(Collections.singletonList("a"), rejected);
+		assertEquals(0, journal.size());
+		assertTrue(new File(directory, "Component.rejected").length() > 0);
+		assertEquals(0, journal().size());
+	}
+
+	@Test
+	public void failuresInABatchDontCount() throws IOException {
+		WriteBehindJournal<Component> journal = journal();
+
+		journal.append(component("a", "first"));
+		journal.append(component("b", "second"));
+		for(int attempt = 0; attempt < WriteBehindJournal.MAX_ATTEMPTS + 1; attempt++) {
+			Map<String, Component> drained = journal.drain();
+
+			if(drained.size() < 2)
+				break; // The batch limit halves after each failure, down to single entities.
+			assertTrue(journal.restore(drained.keySet()).isEmpty());
+		}
+		assertEquals(2, journal.size());
+	}
+}
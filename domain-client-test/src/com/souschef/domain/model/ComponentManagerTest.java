@@ -8,6 +8,15 @@ Copy the thin client into local machine if you want to invoke session beans and
 	https://sys101.doloveyou.com/year/2015/articles/jar_files_needed_to_use_WebSphere_JMS_clent.html	
 /* */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
 import javax.naming.NamingException;
 
@@ -17,9 +26,12 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import com.souschef.dao.DAO;
+import com.souschef.dao.IdGenerator;
 import com.souschef.domain.client.ComponentManager;
 import com.souschef.domain.data.model.Component;
 import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.Unit;
 import com.souschef.ejb.client.DomainClientFactory;
 
 @FixMethodOrder(MethodSorters.JVM)
@@ -92,6 +104,119 @@ public class ComponentManagerTest {
 		logger.debug("createComponents END");
 	}
 	
-
+	/**
+	 * 
+	 * @return The stock stored in the database, read without going through the managers.
+	 */
+	private double storedStock(String id) throws Exception {
+		Connection connection = DomainModelTestSuite.connect();
+		
+		try {
+			PreparedStatement statement = connection.prepareStatement("SELECT STOCK FROM COMPONENT WHERE ID = ?");
+			ResultSet result;
+			
+			statement.setString(1, id);
+			result = statement.executeQuery();
+			assertTrue(id, result.next());
+			return result.getDouble(1);
+		}finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void adjustStock() throws Exception {
+		Component component = componentManager.componentsByCategoryId(componentManager.allComponentCategories().get(0).getId()).get(0);
+		double stored = storedStock(component.getId());
+		
+		logger.debug("adjustStock START");
+		componentManager.adjustStock(component.getId(), 1.5);
+		componentManager.adjustStock(component.getId(), 2.25);
+		componentManager.adjustStock(component.getId(), -0.75);
+		try {
+			componentManager.flushStock();
+			assertEquals(stored + 3, storedStock(component.getId()), 1e-6);
+			assertEquals(stored + 3, componentManager.findComponentByName(component.getName()).getStock(), 1e-6);
+		}finally {
+			componentManager.adjustStock(component.getId(), -3);
+			componentManager.flushStock();
+		}
+		assertEquals(stored, storedStock(component.getId()), 1e-6);
+		logger.debug("adjustStock END");
+	}
+	/**
+	 * 
+	 * @return How many of <code>ids</code> have a row in the database, read without going through the managers.
+	 */
+	private int storedCount(List<String> ids) throws Exception {
+		Connection connection = DomainModelTestSuite.connect();
+		int count = 0;
+		
+		try {
+			PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM COMPONENT WHERE ID = ?");
+			
+			for(String id: ids) {
+				ResultSet result;
+				
+				statement.setString(1, id);
+				result = statement.executeQuery();
+				result.next();
+				count += result.getInt(1);
+				result.close();
+			}
+			return count;
+		}finally {
+			connection.close();
+		}
+	}
+	
+	/**
+	 * <p>Saves, reads and removes more components than fit in one JDBC batch or one <code>IN</code> list.</p>
+	 */
+	@Test
+	public void batchesSpanChunks() throws Exception {
+		ComponentCategory category = componentManager.allComponentCategories().get(0);
+		List<Component> components = new ArrayList<Component>();
+		List<String> ids = new ArrayList<String>();
+		List<Component> found;
+		
+		logger.debug("batchesSpanChunks START");
+		for(int index = 0; index < DAO.IN_LIST_LIMIT + DAO.BATCH_SIZE + 1; index++) {
+			Component component = new Component(IdGenerator.next(), category, "Batch component " + index, Unit.GRAM, 100, 1);
+			
+			components.add(component);
+			ids.add(component.getId());
+		}
+		try {
+			componentManager.saveComponents(components);
+			while(componentManager.flushSaves() > 0);
+			assertEquals(ids.size(), storedCount(ids));
+			
+			ids.add("unknown");
+			found = componentManager.findComponentsByIds(ids);
+			ids.remove(ids.size() - 1);
+			assertEquals(ids.size() + 1, found.size());
+			for(int index = 0; index < ids.size(); index++) {
+				assertNotNull(ids.get(index), found.get(index));
+				assertEquals(ids.get(index), found.get(index).getId());
+			}
+			assertNull(found.get(ids.size()));
+			
+			for(Component component: found.subList(0, ids.size())) {
+				component.setCategory(category);
+				component.setStock(2);
+			}
+			componentManager.saveComponents(found.subList(0, ids.size())); // Every row exists now, so they are all updated.
+			while(componentManager.flushSaves() > 0);
+			for(Component component: componentManager.findComponentsByIds(ids))
+				assertEquals(2, component.getStock(), 0);
+		}finally {
+			componentManager.removeComponents(ids);
+		}
+		assertEquals(0, storedCount(ids));
+		for(Component component: componentManager.findComponentsByIds(ids))
+			assertNull(component);
+		logger.debug("batchesSpanChunks END");
+	}
 	
 }
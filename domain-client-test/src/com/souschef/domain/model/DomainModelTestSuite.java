@@ -24,6 +24,7 @@ import com.souschef.domain.data.model.Unit;
 @RunWith(Suite.class) //718-065-089
 @SuiteClasses(
 	{		
+		EntityEnhancementTest.class,
 		ComponentManagerTest.class,
 		RecipeManagerTest.class
 	}
@@ -197,16 +198,25 @@ public class DomainModelTestSuite  {
     }
 	
     
-	public static void clearDatabase() throws ClassNotFoundException, SQLException {
-		Connection connection;
-		Statement statement;
+	/**
+	 * 
+	 * @return A JDBC connection to the test database, for checks that must bypass the managers' caches.
+	 */
+	public static Connection connect() throws ClassNotFoundException, SQLException {
 		Class.forName(System.getProperty("database.driver"));
 		
-		connection = DriverManager.getConnection(
+		return DriverManager.getConnection(
 			System.getProperty("database.url"),
 			System.getProperty("database.user"),
 			System.getProperty("database.password")
 		);
+	}
+	
+	public static void clearDatabase() throws ClassNotFoundException, SQLException {
+		Connection connection;
+		Statement statement;
+		
+		connection = connect();
 		statement = connection.createStatement();
 		statement.addBatch("DELETE FROM COMPONENT");
 		statement.addBatch("DELETE FROM COMPONENT_CATEGORY");
@@ -0,0 +1,72 @@
+package com.souschef.domain.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.engine.spi.ManagedEntity;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.engine.spi.PersistentAttributeInterceptor;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.Test;
+
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.Photo;
+import com.souschef.domain.data.model.Recipe;
+
+/**
+ * <p>Checks that the domain model's output, which is what the EAR packages, holds the entities rewritten by the
+ * <code>enhance.xml</code> builder rather than the plain compiled classes.</p>
+ * @author rsolano
+ *
+ */
+public class EntityEnhancementTest {
+
+	private static final Class<?>[] entities = {Component.class, ComponentCategory.class, Ingredient.class, Photo.class, Recipe.class};
+
+	@Test
+	public void entitiesTrackTheirChanges() {
+		for(Class<?> entity: entities)
+			assertTrue(entity.getName() + " isn't enhanced", 
+				ManagedEntity.class.isAssignableFrom(entity) && SelfDirtinessTracker.class.isAssignableFrom(entity));
+	}
+
+	/**
+	 * <p>Reading <code>Photo.content</code>, a lazy <code>@Lob</code>, must go through the interceptor Hibernate uses to 
+	 * load it on first access.</p>
+	 */
+	@Test
+	public void lazyBasicsAreIntercepted() {
+		final List<String> reads = new ArrayList<String>();
+		Photo photo = new Photo("0", "image/png", 0);
+		
+		((PersistentAttributeInterceptable)photo).$$_hibernate_setInterceptor((PersistentAttributeInterceptor)Proxy.newProxyInstance(
+			getClass().getClassLoader(), 
+			new Class<?>[] {PersistentAttributeInterceptor.class}, 
+			new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if(method.getName().startsWith("read")) {
+						reads.add((String)args[1]);
+						return args[2];
+					}
+					if(method.getName().startsWith("write"))
+						return args[3];
+					if(method.getName().equals("getInitializedLazyAttributeNames"))
+						return Collections.emptySet();
+					return null;
+				}
+			}
+		));
+		photo.getContent();
+		assertEquals(Collections.singletonList("content"), reads);
+	}
+}
@@ -1,37 +1,74 @@
 package com.souschef.domain.model;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
+import javax.imageio.ImageIO;
 import javax.naming.NamingException;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import com.souschef.dao.IdGenerator;
+import com.souschef.dao.Page;
 import com.souschef.domain.client.ComponentManager;
+import com.souschef.domain.client.PhotoManager;
 import com.souschef.domain.client.RecipeManager;
 import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentCategory;
 import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.Photo;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeDetail;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.ShoppingListItem;
+import com.souschef.domain.data.model.Unit;
+import com.souschef.ejb.client.BatchingDomainClient;
 import com.souschef.ejb.client.DomainClientFactory;
 
 
 
 @FixMethodOrder(MethodSorters.JVM)
 public class RecipeManagerTest {
+	/**
+	 * Where the photo servlet answers; override with <code>-Dsouschef.photo.url</code>.
+	 */
+	public static final String PHOTO_URL = System.getProperty("souschef.photo.url", "http://localhost:9080/domain-web/photo/");
+	
 	Logger logger = LogManager.getLogger(RecipeManagerTest.class);
 	
 	DomainClientFactory domainClientFactory;
 	RecipeManager recipeManager;
 	ComponentManager componentManager;
+	PhotoManager photoManager;
 	
 	public RecipeManagerTest() throws NamingException {
 		domainClientFactory = new DomainClientFactory();
 		recipeManager = domainClientFactory.getRecipeManager();
 		componentManager = domainClientFactory.getComponentManager();
+		photoManager = domainClientFactory.getPhotoManager();
 	}
 	
 	@Test
@@ -78,6 +115,124 @@ public class RecipeManagerTest {
 		logger.debug("testFetchAllRecypes END");
 	}
 	
+	@Test
+	public void testFetchRecipePages() {
+		int expected = recipeManager.allRecipes().size();
+		int fetched = 0;
+		String after = null;
+		Page<String, Recipe> page;
+		
+		logger.debug("testFetchRecipePages START");
+		
+		do {
+			page = recipeManager.recipes(after, 1);
+			fetched += page.getItems().size();
+			after = page.getNext();
+		}while(!page.isLast());
+		
+		assertEquals(expected, fetched);
+		logger.debug("testFetchRecipePages END");
+	}
+	
+	/**
+	 * 
+	 * @return The bytes of a small PNG.
+	 */
+	private byte[] png() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+		
+		image.setRGB(0, 0, 0xff0000);
+		ImageIO.write(image, "png", output);
+		return output.toByteArray();
+	}
+	
+	private byte[] read(HttpURLConnection connection) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		InputStream input = connection.getInputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		
+		try {
+			while((count = input.read(buffer)) > 0)
+				output.write(buffer, 0, count);
+		}finally {
+			input.close();
+		}
+		return output.toByteArray();
+	}
+	
+	@Test
+	public void testFetchRecipePhotos() throws Exception {
+		byte[] content = png();
+		byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><script>alert(1)</script></svg>".getBytes("UTF-8");
+		StringBuilder digest = new StringBuilder();
+		Photo seeded, script;
+		HttpURLConnection connection;
+		
+		logger.debug("testFetchRecipePhotos START");
+		
+		for(byte octet: MessageDigest.getInstance("SHA-256").digest(content))
+			digest.append(String.format("%02x", octet & 0xff));
+		seeded = photoManager.savePhoto(content);
+		assertEquals(digest.toString(), seeded.getId());
+		assertEquals(content.length, photoManager.findPhotoById(seeded.getId()).getLength());
+		
+		connection = (HttpURLConnection) new URL(PHOTO_URL + seeded.getId()).openConnection();
+		assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+		assertEquals('"' + seeded.getId() + '"', connection.getHeaderField("ETag"));
+		assertEquals("image/png", connection.getContentType());
+		assertEquals("nosniff", connection.getHeaderField("X-Content-Type-Options"));
+		assertArrayEquals(content, read(connection));
+		
+		script = photoManager.savePhoto(svg);
+		connection = (HttpURLConnection) new URL(PHOTO_URL + script.getId()).openConnection();
+		assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+		assertEquals("application/octet-stream", connection.getContentType());
+		assertEquals("attachment", connection.getHeaderField("Content-Disposition"));
+		assertArrayEquals(svg, read(connection));
+		
+		for(Recipe recipe: recipeManager.allRecipes()) {
+			if(recipe.getPhotoId() != null) {
+				Photo photo = photoManager.findPhotoById(recipe.getPhotoId());
+				assertNotNull(photo);
+				assertTrue(photo.getLength() > 0);
+			}
+		}
+		
+		logger.debug("testFetchRecipePhotos END");
+	}
+	
+	@Test
+	public void testFetchRecipeSummaries() {
+		logger.debug("testFetchRecipeSummaries START");
+		assertEquals(recipeManager.allRecipes().size(), recipeManager.recipeSummaries().size());
+		logger.debug("testFetchRecipeSummaries END");
+	}
+	
+	@Test
+	public void testFetchBatchedRecipeDetails() throws Exception {
+		BatchingDomainClient batchingClient = domainClientFactory.getBatchingClient();
+		List<RecipeSummary> summaries = recipeManager.recipeSummaries();
+		List<Future<RecipeDetail>> details = new ArrayList<Future<RecipeDetail>>();
+		Future<RecipeDetail> unknown;
+		
+		logger.debug("testFetchBatchedRecipeDetails START");
+		for(RecipeSummary summary: summaries)
+			details.add(batchingClient.findRecipeDetail(summary.getId()));
+		unknown = batchingClient.findRecipeDetail("unknown");
+		
+		for(int index = 0; index < summaries.size(); index++) {
+			RecipeDetail detail = details.get(index).get();
+			
+			assertEquals(summaries.get(index).getId(), detail.getRecipe().getId());
+			assertEquals(recipeManager.findIngredientsForRecype(detail.getRecipe().getId()).size(), detail.getRecipe().getIngredients().size());
+			assertTrue(detail.getComponents().size() > 0);
+		}
+		assertNull(unknown.get());
+		logger.debug("testFetchBatchedRecipeDetails END");
+	}
+	
 	@Test
 	public void testModifyIngredients() {
 		List<Recipe> recipes = recipeManager.allRecipes();
@@ -131,4 +286,99 @@ public class RecipeManagerTest {
 		logger.debug("testRemoveIngredients END");
 	}
 	
+	private boolean isFeasible(String recipeId) {
+		for(RecipeSummary summary: recipeManager.feasibleRecipes())
+			if(summary.getId().equals(recipeId))
+				return true;
+		return false;
+	}
+	
+	@Test
+	public void testFeasibilityFollowsStock() {
+		ComponentCategory category = componentManager.allComponentCategories().get(0);
+		Component component = new Component(IdGenerator.next(), category, "Feasibility Flour", Unit.KILOGRAM, 1, 5);
+		Recipe recipe = new Recipe(IdGenerator.next(), "Feasibility Bread", 1);
+		
+		logger.debug("testFeasibilityFollowsStock START");
+		
+		componentManager.saveComponent(component);
+		recipe.setIngredients(new ArrayList<Ingredient>(Arrays.asList(new Ingredient(3, component, Unit.KILOGRAM))));
+		recipeManager.saveRecipe(recipe);
+		try {
+			assertTrue("5 packages cover 3", isFeasible(recipe.getId()));
+			
+			componentManager.adjustStock(component.getId(), -4);
+			componentManager.flushStock();
+			assertFalse("1 package doesn't cover 3", isFeasible(recipe.getId()));
+			
+			componentManager.adjustStock(component.getId(), 4);
+			componentManager.flushStock();
+			assertTrue("5 packages cover 3 again", isFeasible(recipe.getId()));
+		}finally {
+			recipeManager.removeRecipe(recipe.getId());
+			componentManager.removeComponent(component.getId());
+		}
+		
+		logger.debug("testFeasibilityFollowsStock END");
+	}
+	
+	private ShoppingListItem shoppingListItem(List<ShoppingListItem> items, String componentId) {
+		for(ShoppingListItem item: items)
+			if(item.getComponentId().equals(componentId))
+				return item;
+		return null;
+	}
+	
+	@Test
+	public void testShoppingListConvertsUnits() {
+		ComponentCategory category = componentManager.allComponentCategories().get(0);
+		Component packaged = new Component(IdGenerator.next(), category, "Shopping Flour", Unit.KILOGRAM, 1, 1);
+		Component loose = new Component(IdGenerator.next(), category, "Shopping Salt", null, 0, 0);
+		Recipe recipe = new Recipe(IdGenerator.next(), "Shopping Bread", 1);
+		Map<String, Double> servings = new HashMap<String, Double>();
+		List<ShoppingListItem> items;
+		ShoppingListItem flour, salt;
+		
+		logger.debug("testShoppingListConvertsUnits START");
+		
+		componentManager.saveComponent(packaged);
+		componentManager.saveComponent(loose);
+		recipe.setIngredients(new ArrayList<Ingredient>(Arrays.asList(
+			new Ingredient(500, packaged, Unit.GRAM),
+			new Ingredient(1, packaged, Unit.POUND),
+			new Ingredient(200, loose, Unit.GRAM),
+			new Ingredient(0.3, loose, Unit.KILOGRAM)
+		)));
+		recipeManager.saveRecipe(recipe);
+		try {
+			servings.put(recipe.getId(), 2.0);
+			items = recipeManager.shoppingList(servings);
+			flour = shoppingListItem(items, packaged.getId());
+			salt = shoppingListItem(items, loose.getId());
+			
+			assertEquals(Unit.KILOGRAM, flour.getUnit());
+			assertEquals(2 * (0.5 + 0.45359237), flour.getRequired(), 1e-9);
+			assertEquals(2 * (0.5 + 0.45359237) - 1, flour.getShortfall(), 1e-9);
+			assertEquals(1, flour.getPackages());
+			assertTrue(flour.isConvertible());
+			
+			assertEquals("An ingredient's unit stands in for the missing package unit", Unit.Dimension.MASS, salt.getUnit().getDimension());
+			assertEquals(Unit.GRAM.convert(1000, salt.getUnit()), salt.getRequired(), 1e-9);
+			assertTrue(salt.isConvertible());
+			
+			recipe.getIngredients().add(new Ingredient(1, loose, Unit.LITRE));
+			recipeManager.saveRecipe(recipe);
+			salt = shoppingListItem(recipeManager.shoppingList(servings), loose.getId());
+			assertFalse("Litres can't be added to a mass", salt.isConvertible());
+			
+			assertTrue(recipeManager.shoppingList(Collections.<String, Double>emptyMap()).isEmpty());
+		}finally {
+			recipeManager.removeRecipe(recipe.getId());
+			componentManager.removeComponent(packaged.getId());
+			componentManager.removeComponent(loose.getId());
+		}
+		
+		logger.debug("testShoppingListConvertsUnits END");
+	}
+	
 }
@@ -0,0 +1,60 @@
+package com.souschef.domain.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Checks the unit conversion matrix; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class UnitTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void sameUnitIsIdentity() {
+		for(Unit unit: Unit.values()) {
+			assertEquals(1, unit.factor(unit), DELTA);
+			assertEquals(2.5, unit.convert(2.5, unit), DELTA);
+		}
+	}
+
+	@Test
+	public void massUnitsConvert() {
+		assertEquals(1000, Unit.KILOGRAM.convert(1, Unit.GRAM), DELTA);
+		assertEquals(0.25, Unit.GRAM.convert(250, Unit.KILOGRAM), DELTA);
+		assertEquals(453.59237, Unit.POUND.convert(1, Unit.GRAM), DELTA);
+		assertEquals(2.20462262, Unit.KILOGRAM.convert(1, Unit.POUND), 1e-8);
+	}
+
+	@Test
+	public void factorsAreReciprocal() {
+		for(Unit from: Unit.values())
+			for(Unit to: Unit.values())
+				if(from.getDimension() == to.getDimension())
+					assertEquals(from + " to " + to, 1, from.factor(to) * to.factor(from), DELTA);
+	}
+
+	@Test
+	public void conversionsCompose() {
+		assertEquals(Unit.POUND.convert(3, Unit.KILOGRAM), Unit.GRAM.convert(Unit.POUND.convert(3, Unit.GRAM), Unit.KILOGRAM), DELTA);
+	}
+
+	@Test
+	public void differentDimensionsDontConvert() {
+		for(Unit from: Unit.values()) {
+			for(Unit to: Unit.values()) {
+				if(from.getDimension() == to.getDimension())
+					continue;
+				assertTrue(from + " to " + to, Double.isNaN(from.factor(to)));
+				assertTrue(from + " to " + to, Double.isNaN(from.convert(1, to)));
+			}
+		}
+		assertTrue(Double.isNaN(Unit.LITRE.convert(1, Unit.GRAM)));
+	}
+}
@@ -0,0 +1,194 @@
+package com.souschef.ejb.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.souschef.client.ClientException;
+
+/**
+ * <p>Checks how {@link CallBatcher} groups requests into batches and completes their futures; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class CallBatcherTest {
+
+	/**
+	 * <p>Upper-cases its requests and records every batch; requests starting with "bad" make the batch fail.</p>
+	 */
+	private static class Recorder extends CallBatcher<String, String> {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+
+		Recorder(long window, int limit) {
+			super(window, limit);
+		}
+
+		@Override
+		protected List<String> execute(List<String> requests) throws ClientException {
+			List<String> results = new ArrayList<String>(requests.size());
+
+			batches.add(new ArrayList<String>(requests));
+			for(String request: requests) {
+				if(request.startsWith("bad"))
+					throw new ClientException(new IllegalArgumentException(request));
+				results.add(request.toUpperCase());
+			}
+			return results;
+		}
+	}
+
+	@Test
+	public void windowSendsOneBatch() throws Exception {
+		Recorder batcher = new Recorder(50, 100);
+		Future<String> first = batcher.submit("a");
+		Future<String> second = batcher.submit("b");
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while(!second.isDone() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertTrue("The window never closed", first.isDone() && second.isDone());
+		assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batcher.batches);
+		assertEquals("A", first.get());
+		assertEquals("B", second.get());
+	}
+
+	@Test
+	public void limitSendsFullBatch() throws Exception {
+		Recorder batcher = new Recorder(60000, 2);
+		Future<String> first = batcher.submit("a");
+
+		assertFalse(first.isDone());
+		batcher.submit("b");
+		assertTrue("A full batch is sent by the submitting thread", first.isDone());
+		assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batcher.batches);
+	}
+
+	@Test
+	public void getSendsPendingBatch() throws Exception {
+		Recorder batcher = new Recorder(60000, 100);
+		Future<String> call = batcher.submit("a");
+
+		assertEquals("A", call.get(1, TimeUnit.SECONDS));
+		assertEquals(1, batcher.batches.size());
+	}
+
+	@Test
+	public void failureStaysWithItsRequest() throws Exception {
+		Recorder batcher = new Recorder(60000, 100);
+		Future<String> first = batcher.submit("a");
+		Future<String> bad = batcher.submit("bad");
+		Future<String> last = batcher.submit("b");
+
+		batcher.flush();
+		assertEquals("A", first.get());
+		assertEquals("B", last.get());
+		try {
+			bad.get();
+			fail("The bad request succeeded");
+		}catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof ClientException);
+		}
+		assertEquals(
+			Arrays.asList(Arrays.asList("a", "bad", "b"), Arrays.asList("a"), Arrays.asList("bad"), Arrays.asList("b")),
+			batcher.batches
+		);
+	}
+
+	@Test
+	public void errorCompletesEveryCall() throws Exception {
+		CallBatcher<String, String> batcher = new CallBatcher<String, String>(60000, 100) {
+			@Override
+			protected List<String> execute(List<String> requests) throws ClientException {
+				throw new Error("boom");
+			}
+		};
+		Future<String> first = batcher.submit("a");
+		Future<String> second = batcher.submit("b");
+
+		try {
+			batcher.flush();
+			fail("The error was swallowed");
+		}catch(Error e) {
+			assertEquals("boom", e.getMessage());
+		}
+		for(Future<String> call: Arrays.asList(first, second)) {
+			try {
+				call.get(1, TimeUnit.SECONDS);
+				fail("A call of the failed batch succeeded");
+			}catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof ClientException);
+			}
+		}
+	}
+
+	@Test
+	public void sameKeyIsSentOnce() throws Exception {
+		Recorder batcher = new Recorder(60000, 100) {
+			@Override
+			protected Object key(String request) {
+				return request.substring(0, 1);
+			}
+		};
+		Future<String> first = batcher.submit("a1");
+		Future<String> second = batcher.submit("a2");
+
+		assertSame(first, second);
+		batcher.submit("b1");
+		batcher.flush();
+		assertEquals("A2", first.get());
+		assertEquals(Collections.singletonList(Arrays.asList("a2", "b1")), batcher.batches);
+	}
+
+	@Test
+	public void flushWaitsForBatchesBeingSent() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch flushed = new CountDownLatch(1);
+		final CallBatcher<String, String> batcher = new CallBatcher<String, String>(60000, 1) {
+			@Override
+			protected List<String> execute(List<String> requests) throws ClientException {
+				started.countDown();
+				try {
+					release.await();
+				}catch(InterruptedException e) {
+					throw new ClientException(e);
+				}
+				return requests;
+			}
+		};
+		Thread sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				batcher.submit("a"); // Reaches the limit, so this thread sends it.
+			}
+		});
+		Thread flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				batcher.flush();
+				flushed.countDown();
+			}
+		});
+
+		sender.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		flusher.start();
+		assertFalse("flush() returned while a batch was being sent", flushed.await(200, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(flushed.await(5, TimeUnit.SECONDS));
+		sender.join();
+	}
+}
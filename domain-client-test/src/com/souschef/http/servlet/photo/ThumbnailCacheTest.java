@@ -0,0 +1,175 @@
+package com.souschef.http.servlet.photo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Checks both tiers of the thumbnail cache on a temporary directory; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class ThumbnailCacheTest {
+
+	private File directory;
+
+	/**
+	 * <p>Counts its calls and returns a copy of <code>value</code>.</p>
+	 */
+	private static class Generator implements Callable<byte[]> {
+		final AtomicInteger calls = new AtomicInteger();
+		final byte[] value;
+
+		Generator(byte[] value) {
+			this.value = value;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			calls.incrementAndGet();
+			return value == null ? null : value.clone();
+		}
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("thumbnails").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for(File file: directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void generatesOnce() throws IOException {
+		ThumbnailCache cache = new ThumbnailCache(1000, null);
+		Generator generator = new Generator(new byte[] {1, 2, 3});
+
+		assertArrayEquals(new byte[] {1, 2, 3}, cache.get("a-100", generator));
+		assertArrayEquals(new byte[] {1, 2, 3}, cache.get("a-100", generator));
+		assertEquals(1, generator.calls.get());
+		assertEquals(3, cache.getSize());
+	}
+
+	@Test
+	public void memoryEvictsLeastRecentlyUsed() throws IOException {
+		ThumbnailCache cache = new ThumbnailCache(10, null);
+		Generator first = new Generator(new byte[4]);
+		Generator second = new Generator(new byte[4]);
+		Generator third = new Generator(new byte[4]);
+
+		cache.get("first", first);
+		cache.get("second", second);
+		cache.get("first", first); // Now the second is the eldest.
+		cache.get("third", third);
+		assertEquals(8, cache.getSize());
+
+		cache.get("first", first);
+		cache.get("second", second);
+		assertEquals(1, first.calls.get());
+		assertEquals(2, second.calls.get());
+
+		cache.get("huge", new Generator(new byte[11])); // Larger than the whole tier, so not kept.
+		assertTrue(cache.getSize() <= 10);
+	}
+
+	@Test
+	public void diskSurvivesRestarts() throws IOException {
+		Generator generator = new Generator(new byte[] {7});
+
+		new ThumbnailCache(1000, directory).get("a-100", generator);
+		assertArrayEquals(new byte[] {7}, new ThumbnailCache(1000, directory).get("a-100", generator));
+		assertEquals(1, generator.calls.get());
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void failuresAreCachedToo() throws IOException {
+		Generator generator = new Generator(null);
+		ThumbnailCache cache = new ThumbnailCache(1000, directory);
+
+		assertNull(cache.get("svg-100", generator));
+		assertNull(cache.get("svg-100", generator));
+		assertEquals(1, generator.calls.get());
+		assertEquals("svg-100".length(), cache.getSize());
+
+		assertNull(new ThumbnailCache(1000, directory).get("svg-100", generator));
+		assertEquals(1, generator.calls.get());
+	}
+
+	@Test
+	public void generationErrorsAreNotCached() throws IOException {
+		ThumbnailCache cache = new ThumbnailCache(1000, directory);
+		Generator generator = new Generator(new byte[] {1});
+
+		try {
+			cache.get("a-100", new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					throw new IOException("photo unavailable");
+				}
+			});
+			fail("The generation error was swallowed");
+		}catch(IOException e) {
+			assertEquals("photo unavailable", e.getMessage());
+		}
+		assertArrayEquals(new byte[] {1}, cache.get("a-100", generator));
+		assertEquals(1, generator.calls.get());
+	}
+
+	@Test
+	public void concurrentRequestsShareOneGeneration() throws Exception {
+		final ThumbnailCache cache = new ThumbnailCache(1000, null);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<byte[]> slow = new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				calls.incrementAndGet();
+				release.await();
+				return new byte[] {5};
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+
+		try {
+			for(int index = 0; index < 4; index++)
+				results.add(executor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						return cache.get("a-100", slow);
+					}
+				}));
+			Thread.sleep(200);
+			release.countDown();
+			for(Future<byte[]> result: results)
+				assertArrayEquals(new byte[] {5}, result.get(5, TimeUnit.SECONDS));
+			assertEquals(1, calls.get());
+		}finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.souschef.http.servlet.photo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * <p>Checks thumbnail sizes and formats on images drawn in memory; no server is needed.</p>
+ * @author rsolano
+ *
+ */
+public class ThumbnailerTest {
+
+	static {
+		System.setProperty("java.awt.headless", "true");
+	}
+
+	private final Thumbnailer thumbnailer = new Thumbnailer(0.8f);
+
+	static byte[] image(int width, int height, int type, String format) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		ImageIO.write(new BufferedImage(width, height, type), format, output);
+		return output.toByteArray();
+	}
+
+	private static BufferedImage read(byte[] encoded) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(encoded));
+	}
+
+	@Test
+	public void largeImageFitsTheBox() throws IOException {
+		BufferedImage thumbnail = read(thumbnailer.scale(image(1000, 500, BufferedImage.TYPE_INT_RGB, "png"), 100));
+
+		assertEquals(100, thumbnail.getWidth());
+		assertEquals(50, thumbnail.getHeight());
+	}
+
+	@Test
+	public void tallImageFitsTheBox() throws IOException {
+		BufferedImage thumbnail = read(thumbnailer.scale(image(30, 900, BufferedImage.TYPE_INT_RGB, "png"), 90));
+
+		assertEquals(3, thumbnail.getWidth());
+		assertEquals(90, thumbnail.getHeight());
+	}
+
+	@Test
+	public void smallImageIsNotEnlarged() throws IOException {
+		BufferedImage thumbnail = read(thumbnailer.scale(image(40, 20, BufferedImage.TYPE_INT_RGB, "png"), 100));
+
+		assertEquals(40, thumbnail.getWidth());
+		assertEquals(20, thumbnail.getHeight());
+	}
+
+	@Test
+	public void opaqueImagesBecomeJPEG() throws IOException {
+		byte[] thumbnail = thumbnailer.scale(image(200, 200, BufferedImage.TYPE_INT_RGB, "png"), 50);
+
+		assertEquals(Thumbnailer.JPEG_CONTENT_TYPE, Thumbnailer.contentType(thumbnail));
+		assertEquals(0xff, thumbnail[0] & 0xff);
+		assertEquals(0xd8, thumbnail[1] & 0xff);
+	}
+
+	@Test
+	public void translucentImagesStayPNG() throws IOException {
+		byte[] thumbnail = thumbnailer.scale(image(200, 200, BufferedImage.TYPE_INT_ARGB, "png"), 50);
+
+		assertEquals(Thumbnailer.PNG_CONTENT_TYPE, Thumbnailer.contentType(thumbnail));
+		assertTrue(read(thumbnail).getColorModel().hasAlpha());
+	}
+
+	@Test
+	public void unreadableFormatsAreNotScaled() throws IOException {
+		assertNull(thumbnailer.scale("<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes("UTF-8"), 50));
+		assertNull(thumbnailer.scale(new byte[0], 50));
+	}
+}
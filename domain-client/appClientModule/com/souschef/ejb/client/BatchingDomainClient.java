@@ -0,0 +1,159 @@
+package com.souschef.ejb.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.souschef.client.ClientException;
+import com.souschef.domain.client.ComponentManager;
+import com.souschef.domain.client.RecipeManager;
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeDetail;
+
+/**
+ * <p>Front end to the remote managers that turns the fine-grained calls a screen makes while it's built into one batch
+ * call per kind of operation, see {@link CallBatcher}. Each operation returns a future; waiting on any of them sends
+ * its batch immediately.</p>
+ * <p>Every batch sends the pending saves it may depend on first, components before recipes, so lookups see the saves
+ * submitted earlier through the same client. Saves of the same entity within a window are sent once, with its latest state, 
+ * and lookups of the same id once.</p>
+ * @author rsolano
+ *
+ */
+public class BatchingDomainClient {
+
+	/**
+	 * Milliseconds a batch waits for more calls by default.
+	 */
+	public static final long DEFAULT_WINDOW = 10;
+
+	/**
+	 * Maximum number of calls per batch.
+	 */
+	public static final int BATCH_LIMIT = 500;
+
+	private final CallBatcher<Component, Void> componentSaves;
+
+	private final CallBatcher<Recipe, Void> recipeSaves;
+
+	private final CallBatcher<String, Component> components;
+
+	private final CallBatcher<String, Recipe> recipes;
+
+	private final CallBatcher<String, RecipeDetail> recipeDetails;
+
+	public BatchingDomainClient(ComponentManager componentManager, RecipeManager recipeManager) {
+		this(componentManager, recipeManager, DEFAULT_WINDOW);
+	}
+
+	public BatchingDomainClient(final ComponentManager componentManager, final RecipeManager recipeManager, long window) {
+		componentSaves = new CallBatcher<Component, Void>(window, BATCH_LIMIT) {
+			@Override
+			protected Object key(Component request) {
+				return request.getId();
+			}
+
+			@Override
+			protected List<Void> execute(List<Component> requests) throws ClientException {
+				componentManager.saveComponents(requests);
+				return Collections.<Void>nCopies(requests.size(), null);
+			}
+		};
+		recipeSaves = new CallBatcher<Recipe, Void>(window, BATCH_LIMIT) {
+			@Override
+			protected Object key(Recipe request) {
+				return request.getId();
+			}
+
+			@Override
+			protected List<Void> execute(List<Recipe> requests) throws ClientException {
+				componentSaves.flush(); // Recipes may use components saved in the same window.
+				recipeManager.saveRecipes(requests);
+				return Collections.<Void>nCopies(requests.size(), null);
+			}
+		};
+		components = new CallBatcher<String, Component>(window, BATCH_LIMIT) {
+			@Override
+			protected Object key(String request) {
+				return request;
+			}
+
+			@Override
+			protected List<Component> execute(List<String> requests) throws ClientException {
+				componentSaves.flush();
+				return componentManager.findComponentsByIds(requests);
+			}
+		};
+		recipes = new CallBatcher<String, Recipe>(window, BATCH_LIMIT) {
+			@Override
+			protected Object key(String request) {
+				return request;
+			}
+
+			@Override
+			protected List<Recipe> execute(List<String> requests) throws ClientException {
+				recipeSaves.flush();
+				return recipeManager.findRecipesByIds(requests);
+			}
+		};
+		recipeDetails = new CallBatcher<String, RecipeDetail>(window, BATCH_LIMIT) {
+			@Override
+			protected Object key(String request) {
+				return request;
+			}
+
+			@Override
+			protected List<RecipeDetail> execute(List<String> requests) throws ClientException {
+				recipeSaves.flush();
+				return recipeManager.findRecipeDetailsByIds(requests);
+			}
+		};
+	}
+
+	public Future<Void> saveComponent(Component component) {
+		return componentSaves.submit(component);
+	}
+
+	public Future<Void> saveRecipe(Recipe recipe) {
+		return recipeSaves.submit(recipe);
+	}
+
+	/**
+	 *
+	 * @param id A component's primary key.
+	 * @return The component, or <code>null</code> if there's no such component.
+	 */
+	public Future<Component> findComponentById(String id) {
+		return components.submit(id);
+	}
+
+	/**
+	 *
+	 * @param id A recipe's primary key.
+	 * @return The recipe with its ingredients, or <code>null</code> if there's no such recipe.
+	 */
+	public Future<Recipe> findRecipeById(String id) {
+		return recipes.submit(id);
+	}
+
+	/**
+	 *
+	 * @param id A recipe's primary key.
+	 * @return The recipe with its components, their categories and its cost, or <code>null</code> if there's no such recipe.
+	 */
+	public Future<RecipeDetail> findRecipeDetail(String id) {
+		return recipeDetails.submit(id);
+	}
+
+	/**
+	 * <p>Sends every pending call from the calling thread, saves first.</p>
+	 */
+	public void flush() {
+		componentSaves.flush();
+		recipeSaves.flush();
+		components.flush();
+		recipes.flush();
+		recipeDetails.flush();
+	}
+}
@@ -0,0 +1,279 @@
+package com.souschef.ejb.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.souschef.client.ClientException;
+
+/**
+ * <p>Collects the requests made within a short window and sends them to the server as a single batch call.</p>
+ * <p>The first request of a batch schedules it to be sent after <code>window</code> milliseconds; a batch is sent earlier
+ * when it reaches <code>limit</code> requests, when {@link #flush()} is called, or when a caller waits on one of its
+ * results. Results come back as futures whose <code>get</code> throws an <code>ExecutionException</code> wrapping the
+ * {@link ClientException} of a failed request.</p>
+ * <p>Requests with the same {@link #key(Object)} within one batch are sent once: the last one submitted replaces the 
+ * earlier ones, and every caller gets the same future. When a batch fails it's sent again one request at a time, so a bad 
+ * request fails only its own callers; if the server itself is failing, each request of the batch is thus tried once more.</p>
+ * <p>{@link #flush()} returns only after the batches other threads are already sending complete, so a caller that flushes a 
+ * batcher of writes before reading sees them. {@link #execute(List)} must not flush the batcher it belongs to.</p>
+ * @author rsolano
+ *
+ * @param <T> Request type, e.g. a primary key.
+ * @param <R> Result type.
+ */
+public abstract class CallBatcher<T, R> {
+
+	private static final ThreadFactory threads = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "souschef-call-batcher");
+
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/**
+	 * Only closes windows; the batches are sent by {@link #senders}, so a slow remote call doesn't delay other batches.
+	 */
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(threads);
+
+	private static final ExecutorService senders = Executors.newCachedThreadPool(threads);
+
+	private final long window;
+
+	private final int limit;
+
+	private List<Call> pending = new ArrayList<Call>();
+
+	private Map<Object, Call> pendingKeys = new HashMap<Object, Call>();
+
+	/**
+	 * Batches taken from <code>pending</code> whose calls haven't completed yet.
+	 */
+	private final List<List<Call>> sending = new ArrayList<List<Call>>();
+
+	/**
+	 *
+	 * @param window Milliseconds a batch waits for more requests.
+	 * @param limit Maximum number of requests per batch.
+	 */
+	public CallBatcher(long window, int limit) {
+		this.window = window;
+		this.limit = limit;
+	}
+
+	/**
+	 * <p>Sends a batch to the server.</p>
+	 * @param requests The batch's requests, in submission order.
+	 * @return One result per request, in the same order.
+	 * @throws ClientException If the remote call fails; the requests are then sent again one at a time.
+	 */
+	protected abstract List<R> execute(List<T> requests) throws ClientException;
+
+	/**
+	 *
+	 * @param request A submitted request.
+	 * @return The identity of the request within a batch, e.g. the id of the entity it saves, or <code>null</code> if it 
+	 * must be sent even if an equal one is pending. This implementation returns <code>null</code>.
+	 */
+	protected Object key(T request) {
+		return null;
+	}
+
+	/**
+	 *
+	 * @param request A request to add to the current batch.
+	 * @return The request's result, available once its batch has been sent.
+	 */
+	public Future<R> submit(T request) {
+		Object key = key(request);
+		Call call;
+		List<Call> full = null;
+
+		synchronized(this) {
+			call = key == null ? null : pendingKeys.get(key);
+			if(call != null) {
+				call.request = request; // The latest state wins; the earlier callers share its result.
+				return call;
+			}
+			call = new Call(request);
+			pending.add(call);
+			if(key != null)
+				pendingKeys.put(key, call);
+			if(pending.size() >= limit)
+				full = take();
+			else if(pending.size() == 1)
+				timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						senders.execute(new Runnable() {
+							@Override
+							public void run() {
+								flush();
+							}
+						});
+					}
+				}, window, TimeUnit.MILLISECONDS);
+		}
+		if(full != null)
+			send(full);
+		return call;
+	}
+
+	/**
+	 * <p>Sends the current batch, if any, from the calling thread, then waits for the batches other threads are sending.</p>
+	 */
+	public void flush() {
+		List<Call> batch;
+		List<List<Call>> others;
+
+		synchronized(this) {
+			others = new ArrayList<List<Call>>(sending);
+			batch = take();
+		}
+		if(!batch.isEmpty())
+			send(batch);
+		try {
+			for(List<Call> other: others)
+				for(Call call: other)
+					call.done.await();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * <p>Takes the pending batch and records it as being sent; callers must hold this object's monitor.</p>
+	 */
+	private List<Call> take() {
+		List<Call> batch = pending;
+
+		pending = new ArrayList<Call>();
+		pendingKeys = new HashMap<Object, Call>();
+		if(!batch.isEmpty())
+			sending.add(batch);
+		return batch;
+	}
+
+	private void send(List<Call> batch) {
+		try {
+			if(!sendAll(batch))
+				for(Call call: batch)
+					sendAll(Collections.singletonList(call));
+		}catch(Error e) {
+			for(Call call: batch)
+				if(!call.isDone())
+					call.complete(null, new ClientException(e)); // Nobody may be left waiting on a batch that will never complete.
+			throw e;
+		}finally {
+			synchronized(this) {
+				sending.remove(batch);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return <code>false</code>, leaving the calls open, if the batch failed and has more than one call to retry alone.
+	 */
+	private boolean sendAll(List<Call> batch) {
+		List<T> requests = new ArrayList<T>(batch.size());
+		List<R> results;
+
+		for(Call call: batch)
+			requests.add(call.request);
+		try {
+			results = execute(requests);
+			if(results == null || results.size() != batch.size())
+				throw new ClientException(new IllegalStateException(String.format("%d results for %d requests", results == null ? 0 : results.size(), batch.size())));
+		}catch(ClientException e) {
+			return fail(batch, e);
+		}catch(RuntimeException e) {
+			return fail(batch, new ClientException(e));
+		}
+		for(int index = 0; index < batch.size(); index++)
+			batch.get(index).complete(results.get(index), null);
+		return true;
+	}
+
+	private boolean fail(List<Call> batch, ClientException failure) {
+		if(batch.size() > 1)
+			return false;
+		batch.get(0).complete(null, failure);
+		return true;
+	}
+
+	/**
+	 * <p>A request waiting for its batch.</p>
+	 */
+	private class Call implements Future<R> {
+		T request;
+		final CountDownLatch done = new CountDownLatch(1);
+		R result;
+		ClientException failure;
+
+		Call(T request) {
+			this.request = request;
+		}
+
+		void complete(R result, ClientException failure) {
+			this.result = result;
+			this.failure = failure;
+			done.countDown();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		/**
+		 * <p>Sends the pending batch right away instead of waiting for the window to close.</p>
+		 */
+		@Override
+		public R get() throws InterruptedException, ExecutionException {
+			if(!isDone())
+				flush(); // Another thread may already be sending this call's batch.
+			done.await();
+			return outcome();
+		}
+
+		@Override
+		public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(!isDone())
+				flush();
+			if(!done.await(timeout, unit))
+				throw new TimeoutException();
+			return outcome();
+		}
+
+		private R outcome() throws ExecutionException {
+			if(failure != null)
+				throw new ExecutionException(failure);
+			return result;
+		}
+	}
+}
@@ -8,12 +8,16 @@ import javax.naming.NamingException;
 import com.ibm.rmi.javax.rmi.PortableRemoteObject;
 import com.souschef.domain.client.ComponentManager;
 import com.souschef.domain.client.ComponentManagerRemote;
+import com.souschef.domain.client.PhotoManager;
+import com.souschef.domain.client.PhotoManagerRemote;
 import com.souschef.domain.client.RecipeManager;
 import com.souschef.domain.client.RecipeManagerRemote;
 
 public class DomainClientFactory {
 	private ComponentManager componentManager;
 	private RecipeManager recipeManager;
+	private PhotoManager photoManager;
+	private BatchingDomainClient batchingClient;
 	InitialContext context ;
 	
 	public DomainClientFactory() throws NamingException {
@@ -77,4 +81,26 @@ public class DomainClientFactory {
 		
 		return recipeManager;
 	}	
+	
+	public PhotoManager getPhotoManager() throws ClassCastException, NamingException {
+		if (photoManager == null) {
+			PortableRemoteObject portableRemoteObject = new PortableRemoteObject();
+			
+			photoManager  = (PhotoManagerRemote) portableRemoteObject.narrow(context.lookup("com.souschef.domain.client.PhotoManagerRemote"), PhotoManagerRemote.class);
+		}
+		
+		return photoManager;
+	}
+	
+	/**
+	 * <p>Client that batches the component and recipe calls made within {@link BatchingDomainClient#DEFAULT_WINDOW} 
+	 * milliseconds into one remote call per kind of operation.</p>
+	 */
+	public BatchingDomainClient getBatchingClient() throws ClassCastException, NamingException {
+		if (batchingClient == null) {
+			batchingClient = new BatchingDomainClient(getComponentManager(), getRecipeManager());
+		}
+		
+		return batchingClient;
+	}
 }
@@ -3,11 +3,19 @@ import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
 
 import com.souschef.dao.*;
 import com.souschef.domain.data.model.ComponentCategory;
 
 public class ComponentCategoryDAO extends BasicDAO<String, ComponentCategory> {	
+	private static final String UPSERT = 
+		"MERGE INTO COMPONENT_CATEGORY t " +
+		"USING (SELECT ?1 ID, ?2 NAME, ?3 VERSION FROM DUAL) s ON (t.ID = s.ID) " +
+		"WHEN MATCHED THEN UPDATE SET t.NAME = s.NAME, t.VERSION = t.VERSION + 1 WHERE s.VERSION IS NULL OR t.VERSION = s.VERSION " +
+		"WHEN NOT MATCHED THEN INSERT (ID, NAME, VERSION) VALUES (s.ID, s.NAME, 0) WHERE s.VERSION IS NULL";
+	
+	private static final Class<?>[] UPSERT_TYPES = {String.class, String.class, Long.class};
 	
 	public ComponentCategoryDAO(EntityManagerFactory entityManagerFactory) {
 		super(entityManagerFactory);
@@ -17,4 +25,14 @@ public class ComponentCategoryDAO extends BasicDAO<String, ComponentCategory> {
 	public List<ComponentCategory> allComponentCategories(EntityManager entityManager) throws DAOException {
 		return (List<ComponentCategory>)all(entityManager, "ComponentCategory.all");
 	}
+	
+	@Override
+	protected Query upsertQuery(EntityManager entityManager, ComponentCategory category) {
+		return nativeUpsert(
+			entityManager, 
+			UPSERT, 
+			new Object[]{category.getId(), category.getName(), category.getVersion()},
+			UPSERT_TYPES
+		);
+	}
 }
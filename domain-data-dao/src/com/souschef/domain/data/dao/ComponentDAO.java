@@ -1,22 +1,120 @@
 package com.souschef.domain.data.dao;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
 
 import com.souschef.dao.*;
 import com.souschef.domain.data.model.Component;
 import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.ComponentSummary;
 import com.souschef.util.ParameterMap;
 
 public class ComponentDAO extends BasicDAO<String, Component>{
+	private static final String UPSERT = 
+		"MERGE INTO COMPONENT t " +
+		"USING (SELECT ?1 ID, ?2 COMPONENT_CATEGORY_ID, ?3 NAME, ?4 UNIT, ?5 PACKAGE_SIZE, ?6 STOCK, ?7 PHOTO_ID, ?8 PRICE, ?9 VERSION FROM DUAL) s ON (t.ID = s.ID) " +
+		"WHEN MATCHED THEN UPDATE SET t.COMPONENT_CATEGORY_ID = s.COMPONENT_CATEGORY_ID, t.NAME = s.NAME, t.UNIT = s.UNIT, t.PACKAGE_SIZE = s.PACKAGE_SIZE, " +
+			"t.STOCK = s.STOCK, t.PHOTO_ID = s.PHOTO_ID, t.PRICE = s.PRICE, t.VERSION = t.VERSION + 1 WHERE s.VERSION IS NULL OR t.VERSION = s.VERSION " +
+		"WHEN NOT MATCHED THEN INSERT (ID, COMPONENT_CATEGORY_ID, NAME, UNIT, PACKAGE_SIZE, STOCK, PHOTO_ID, PRICE, VERSION) " +
+			"VALUES (s.ID, s.COMPONENT_CATEGORY_ID, s.NAME, s.UNIT, s.PACKAGE_SIZE, s.STOCK, s.PHOTO_ID, s.PRICE, 0) WHERE s.VERSION IS NULL";
+	
+	private static final String ADJUST_STOCK = "UPDATE COMPONENT SET STOCK = STOCK + ?, VERSION = VERSION + 1 WHERE ID = ?";
+	
+	private static final Class<?>[] UPSERT_TYPES = {
+		String.class, String.class, String.class, String.class, Integer.class, Double.class, String.class, Double.class, Long.class
+	};
 	
 	public ComponentDAO(EntityManagerFactory entityManagerFactory) {
 		super(entityManagerFactory);
 	}
 
+	@Override
+	protected Query upsertQuery(EntityManager entityManager, Component component) {
+		return nativeUpsert(
+			entityManager, 
+			UPSERT, 
+			new Object[]{
+				component.getId(), 
+				component.getCategory() == null ? null : component.getCategory().getId(), 
+				component.getName(),
+				component.getPackageUnit() == null ? null : component.getPackageUnit().name(),
+				component.getPackageSize(),
+				component.getStock(),
+				component.getPhotoId(),
+				component.getPrice(),
+				component.getVersion()
+			},
+			UPSERT_TYPES
+		);
+	}
+
+	/**
+	 * <p>Points the components at category references for the duration of the save, so the merge doesn't cascade into their 
+	 * categories, which may be id-only instances, and overwrite them.</p>
+	 */
+	@Override
+	public void persistAll(EntityManager entityManager, Collection<Component> entities) throws DAOException {
+		Map<Object, ComponentCategory> references = new HashMap<Object, ComponentCategory>();
+		List<ComponentCategory> categories = new ArrayList<ComponentCategory>(entities.size());
+		int index = 0;
+		
+		for(Component entity: entities) {
+			categories.add(entity.getCategory());
+			entity.setCategory(reference(entityManager, entity.getCategory(), references));
+		}
+		try {
+			super.persistAll(entityManager, entities);
+		}finally {
+			for(Component entity: entities)
+				entity.setCategory(categories.get(index++));
+		}
+	}
+
+	/**
+	 * <p>Adds amounts to the stock of several components with batched relative updates, so they can't overwrite each other 
+	 * or a concurrent save; each change also bumps the component's version, making clients holding the old stock fail 
+	 * their next save instead of writing it back.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param deltas Amounts keyed by component id.
+	 * @return Id-only components with the stock and version the adjustments left; components that no longer exist are left 
+	 * out. They're read while the updates hold the rows' locks, so no other writer can have changed them in between.
+	 * @throws DAOException
+	 */
+	public List<Component> adjustStock(EntityManager entityManager, Map<String, Double> deltas) throws DAOException {
+		List<Object[]> rows = new ArrayList<Object[]>(deltas.size());
+		List<String> ids = new ArrayList<String>(deltas.keySet());
+		List<Component> levels = new ArrayList<Component>(deltas.size());
+		
+		for(String id: ids)
+			rows.add(new Object[] {deltas.get(id), id});
+		executeBatch(entityManager, ADJUST_STOCK, rows);
+		evictWritten(entityManager, Component.class, ids);
+		
+		for(int start = 0; start < ids.size(); start += IN_LIST_LIMIT) {
+			List<Object[]> stored = select(
+				entityManager, 
+				"Component.stock", 
+				Object[].class, 
+				(new ParameterMap()).append("ids", ids.subList(start, Math.min(ids.size(), start + IN_LIST_LIMIT)))
+			);
+			
+			for(Object[] row: stored) {
+				Component level = new Component((String)row[0], null);
+				
+				level.setStock(((Number)row[1]).doubleValue());
+				level.setVersion(row[2] == null ? null : ((Number)row[2]).longValue());
+				levels.add(level);
+			}
+		}
+		return levels;
+	}
+
 	public Component findComponentByName(EntityManager entityManager, String name) {
 		return exists(
 			entityManager, 
@@ -25,10 +123,39 @@ public class ComponentDAO extends BasicDAO<String, Component>{
 		);
 	}
 
+	/**
+	 * 
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @return Every component with its category, ordered by primary key.
+	 * @throws DAOException
+	 */
+	public List<Component> allComponents(EntityManager entityManager) throws DAOException{
+		return all(entityManager, "Component.all");
+	}
+
 	public List<Component> componentsByCategory(EntityManager entityManager, ComponentCategory category) throws DAOException{
 		Map<String, Object> parameters = new HashMap<String,Object>();
 		parameters.put("category", category);
 		return all(entityManager, "Component.byCategory", parameters);
 	}
 	
+	public List<ComponentSummary> componentSummariesByCategory(EntityManager entityManager, String categoryId) throws DAOException{
+		return select(
+			entityManager, 
+			"Component.summariesByCategory", 
+			ComponentSummary.class, 
+			(new ParameterMap()).append("category", categoryId)
+		);
+	}
+	
+	public Page<String, Component> componentsByCategory(EntityManager entityManager, ComponentCategory category, String after, int limit) throws DAOException{
+		return page(
+			entityManager, 
+			"Component.byCategory.page", 
+			(new ParameterMap()).append("category", category),
+			after,
+			limit
+		);
+	}
+	
 }
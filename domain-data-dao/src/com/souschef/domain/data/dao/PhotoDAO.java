@@ -0,0 +1,146 @@
+package com.souschef.domain.data.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.sql.rowset.serial.SerialBlob;
+
+import com.souschef.dao.BasicDAO;
+import com.souschef.dao.DAOException;
+import com.souschef.domain.data.model.Photo;
+
+public class PhotoDAO extends BasicDAO<String, Photo> {
+	/**
+	 * Algorithm of the digest used as photo id.
+	 */
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+	
+	public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public PhotoDAO(EntityManagerFactory entityManagerFactory) {
+		super(entityManagerFactory);
+	}
+	
+	/**
+	 * <p>Stores an image unless an identical one is already stored.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller. Transaction handling is also caller's responsability.
+	 * @param content Image bytes.
+	 * @return The stored photo; its id is the digest of <code>content</code>.
+	 * @throws DAOException
+	 */
+	public Photo store(EntityManager entityManager, byte[] content) throws DAOException {
+		String id = digest(content);
+		Photo photo = findById(entityManager, id);
+		
+		if(photo != null)
+			return photo;
+		
+		try {
+			photo = new Photo(id, contentType(content), content.length, new SerialBlob(content));
+			entityManager.persist(photo);
+			return photo;
+		}catch(SQLException e) {
+			throw new DAOException(e);
+		}catch(PersistenceException e) {
+			throw new DAOException(e);
+		}
+	}
+	
+	/**
+	 * <p>Copies a range of a photo's bytes straight from the database to <code>output</code>, without materializing the image.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller; its transaction must be active.
+	 * @param id Photo id.
+	 * @param offset Zero based position of the first byte to copy.
+	 * @param length Number of bytes to copy.
+	 * @param output Destination of the bytes; it's not closed.
+	 * @return Number of bytes copied, or <code>-1</code> if there is no such photo.
+	 * @throws DAOException If the photo can't be read or <code>output</code> can't be written.
+	 */
+	public long copy(EntityManager entityManager, String id, long offset, long length, OutputStream output) throws DAOException {
+		Photo photo = findById(entityManager, id);
+		InputStream input = null;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long copied = 0;
+		int read;
+		
+		if(photo == null)
+			return -1;
+		
+		try {
+			input = photo.getContent().getBinaryStream(offset + 1, length);
+			while(copied < length && (read = input.read(buffer, 0, (int) Math.min(buffer.length, length - copied))) != -1) {
+				output.write(buffer, 0, read);
+				copied += read;
+			}
+			return copied;
+		}catch(SQLException e) {
+			throw new DAOException(e);
+		}catch(IOException e) {
+			throw new DAOException(e);
+		}finally {
+			if(input != null)
+				try {input.close(); } catch(IOException e) {}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param content Image bytes.
+	 * @return Hexadecimal {@link #DIGEST_ALGORITHM} digest of <code>content</code>.
+	 */
+	public static String digest(byte[] content) {
+		byte[] digest;
+		char[] text;
+		
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new DAOException(e);
+		}
+		
+		text = new char[digest.length * 2];
+		for(int index = 0; index < digest.length; index++) {
+			text[index * 2] = HEX[(digest[index] >> 4) & 0x0f];
+			text[index * 2 + 1] = HEX[digest[index] & 0x0f];
+		}
+		return new String(text);
+	}
+	
+	/**
+	 * 
+	 * @param content Image bytes.
+	 * @return The image's MIME type according to its signature, or {@link #DEFAULT_CONTENT_TYPE} if it isn't a recognized 
+	 * raster format. SVG gets the default type too: it may carry scripts, so it must never be labelled as an image.
+	 */
+	public static String contentType(byte[] content) {
+		if(startsWith(content, 0xff, 0xd8, 0xff))
+			return "image/jpeg";
+		if(startsWith(content, 0x89, 'P', 'N', 'G'))
+			return "image/png";
+		if(startsWith(content, 'G', 'I', 'F', '8'))
+			return "image/gif";
+		if(content.length > 12 && startsWith(content, 'R', 'I', 'F', 'F') && content[8] == 'W' && content[9] == 'E' && content[10] == 'B' && content[11] == 'P')
+			return "image/webp";
+		return DEFAULT_CONTENT_TYPE;
+	}
+	
+	private static boolean startsWith(byte[] content, int... signature) {
+		if(content.length < signature.length)
+			return false;
+		for(int index = 0; index < signature.length; index++)
+			if((content[index] & 0xff) != signature[index])
+				return false;
+		return true;
+	}
+}
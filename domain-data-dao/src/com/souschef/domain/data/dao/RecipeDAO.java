@@ -1,22 +1,50 @@
 package com.souschef.domain.data.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
 
 import com.souschef.dao.BasicDAO;
 import com.souschef.dao.DAOException;
+import com.souschef.dao.IdGenerator;
+import com.souschef.dao.Page;
+import com.souschef.dao.ResultHandler;
+import com.souschef.domain.data.model.Component;
 import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.IngredientLine;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.Unit;
+import com.souschef.util.ParameterMap;
 
 
 public class RecipeDAO extends BasicDAO<String, Recipe> {
+	private static final String UPDATE = 
+		"UPDATE RECYPE SET NAME = ?, PRICE = ?, PHOTO_ID = ?, VERSION = VERSION + 1 WHERE ID = ? AND VERSION = ?";
+	
+	private static final String INSERT_INGREDIENT = "INSERT INTO INGREDIENT (ID, AMOUNT, COMPONENT_ID, RECYPE_ID, UNIT) VALUES (?, ?, ?, ?, ?)";
+	
+	private static final String UPDATE_INGREDIENT = "UPDATE INGREDIENT SET AMOUNT = ?, COMPONENT_ID = ?, UNIT = ? WHERE ID = ?";
+	
+	private static final String DELETE_INGREDIENT = "DELETE FROM INGREDIENT WHERE ID = ?";
 
 	public RecipeDAO(EntityManagerFactory entityManagerFactory) {
 		super(entityManagerFactory);
 	}
 
+	/**
+	 * <p>New recipes are merged with their ingredients; existing ones only write what changed, see 
+	 * {@link #update(EntityManager, Recipe)}. Either way ingredient components are only read for their id, so they may be 
+	 * id-only instances.</p>
+	 */
 	@Override
 	public void persist(EntityManager entityManager, Recipe entity) throws DAOException {
 		List<Ingredient> ingredients = entity.getIngredients();
@@ -27,12 +55,239 @@ public class RecipeDAO extends BasicDAO<String, Recipe> {
 		
 		for(Ingredient ingredient: ingredients) {
 			ingredient.setRecipe(entity);
+			if(ingredient.getId() == null) // Posted without one; Ingredient ids are assigned, not generated.
+				ingredient.setId(IdGenerator.next());
+		}
+		if(!update(entityManager, entity)) {
+			List<Component> components = bindComponents(entityManager, Collections.singletonList(entity));
+			try {
+				super.persist(entityManager, entity);
+			}finally {
+				unbindComponents(Collections.singletonList(entity), components);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Binds ingredient components to references like {@link #persist(EntityManager, Recipe)} does.</p>
+	 */
+	@Override
+	public void persistAll(EntityManager entityManager, Collection<Recipe> entities) throws DAOException {
+		List<Component> components;
+		
+		for(Recipe entity: entities)
+			if(entity.getIngredients() != null)
+				for(Ingredient ingredient: entity.getIngredients())
+					ingredient.setRecipe(entity);
+		
+		components = bindComponents(entityManager, entities);
+		try {
+			super.persistAll(entityManager, entities);
+		}finally {
+			unbindComponents(entities, components);
 		}
-		super.persist(entityManager, entity);
+	}
+	
+	/**
+	 * <p>Points the ingredients at component references for the duration of a save, so neither merging nor persisting them 
+	 * loads or checks their components.</p>
+	 * @return The original components, in ingredient order, for {@link #unbindComponents(Collection, List)}.
+	 */
+	private List<Component> bindComponents(EntityManager entityManager, Collection<Recipe> entities) {
+		Map<Object, Component> references = new HashMap<Object, Component>();
+		List<Component> components = new ArrayList<Component>();
+		
+		for(Recipe entity: entities)
+			if(entity.getIngredients() != null)
+				for(Ingredient ingredient: entity.getIngredients()) {
+					components.add(ingredient.getComponent());
+					ingredient.setComponent(reference(entityManager, ingredient.getComponent(), references));
+				}
+		return components;
+	}
+	
+	/**
+	 * <p>Gives the caller's ingredients their components back, since references can't be read once the entity manager is closed.</p>
+	 */
+	private void unbindComponents(Collection<Recipe> entities, List<Component> components) {
+		int index = 0;
+		
+		for(Recipe entity: entities)
+			if(entity.getIngredients() != null)
+				for(Ingredient ingredient: entity.getIngredients())
+					ingredient.setComponent(components.get(index++));
+	}
+	
+	/**
+	 * <p>Saves an existing recipe comparing its ingredients with the stored ones by id, so only the ingredients that were 
+	 * added, changed or dropped are written, each kind as one JDBC batch, after a single update of the recipe row that 
+	 * checks and bumps its version, so a stale save fails before touching any ingredient. Unchanged ingredients cost 
+	 * nothing.</p>
+	 * @return <code>false</code> if the recipe doesn't exist; it must be merged instead.
+	 */
+	private boolean update(EntityManager entityManager, Recipe entity) throws DAOException {
+		Map<String, Object[]> stored = new HashMap<String, Object[]>();
+		List<Object[]> inserts = new ArrayList<Object[]>(), updates = new ArrayList<Object[]>(), deletes = new ArrayList<Object[]>();
+		List<Object[]> rows;
+		Long version = null;
+		
+		try{
+			entityManager.flush(); // The statements below bypass the persistence context.
+		}catch(PersistenceException e){
+			throw new DAOException(e);
+		}
+		
+		rows = select(entityManager, "Ingredient.stored", Object[].class, (new ParameterMap()).append("recipe", entity.getId()));
+		if(rows.isEmpty())
+			return false;
+		for(Object[] row: rows) { // version, ingredient id, component id, amount, unit
+			version = (Long)row[0];
+			if(row[1] != null)
+				stored.put((String)row[1], row);
+		}
+		if(entity.getVersion() != null && !entity.getVersion().equals(version))
+			throw new DAOException(new OptimisticLockException(entity));
+		
+		for(Ingredient ingredient: entity.getIngredients()) {
+			Object[] row = stored.remove(ingredient.getId());
+			String componentId = ingredient.getComponent() == null ? null : ingredient.getComponent().getId();
+			String unit = ingredient.getUnit() == null ? null : ingredient.getUnit().name();
+			
+			if(row == null)
+				inserts.add(new Object[] {ingredient.getId(), ingredient.getAmount(), componentId, entity.getId(), unit});
+			else if(!equals(componentId, row[2]) || Double.compare(ingredient.getAmount(), (Double)row[3]) != 0 || ingredient.getUnit() != (Unit)row[4])
+				updates.add(new Object[] {ingredient.getAmount(), componentId, unit, ingredient.getId()});
+		}
+		for(String id: stored.keySet())
+			deletes.add(new Object[] {id});
+		
+		rows = new ArrayList<Object[]>(1);
+		rows.add(new Object[] {entity.getName(), entity.getPrice(), entity.getPhotoId(), entity.getId(), version});
+		if(executeBatch(entityManager, UPDATE, rows)[0] == 0) // Also locks the row, so no other writer can interleave below.
+			throw new DAOException(new OptimisticLockException(entity)); // Changed since it was read above.
+		
+		if(!deletes.isEmpty())
+			executeBatch(entityManager, DELETE_INGREDIENT, deletes);
+		if(!updates.isEmpty())
+			executeBatch(entityManager, UPDATE_INGREDIENT, updates);
+		if(!inserts.isEmpty())
+			executeBatch(entityManager, INSERT_INGREDIENT, inserts);
+		
+		evict(entityManager, entity, deletes, updates);
+		entity.setVersion(version + 1);
+		return true;
+	}
+	
+	private static void evict(EntityManager entityManager, Recipe entity, List<Object[]> deletes, List<Object[]> updates) {
+		List<Object> ids = new ArrayList<Object>(deletes.size() + updates.size());
+		
+		for(Object[] row: deletes)
+			ids.add(row[row.length - 1]); // The id is the last parameter.
+		for(Object[] row: updates)
+			ids.add(row[row.length - 1]);
+		evictWritten(entityManager, Recipe.class, Collections.singleton(entity.getId()));
+		evictWritten(entityManager, Ingredient.class, ids);
+	}
+	
+	private static boolean equals(Object left, Object right) {
+		return left == null ? right == null : left.equals(right);
+	}
+	
+	/**
+	 * <p>Loads the recipe with its ingredients and their components in a single statement.</p>
+	 */
+	@Override
+	public Recipe findById(EntityManager entityManager, String key) throws DAOException {
+		return findById(entityManager, key, Recipe.DETAIL_GRAPH);
 	}
 	
 	public List<Recipe> allRecipes(EntityManager entityManager) throws DAOException {
 		return (List<Recipe>)all(entityManager, "Recype.all");
 	}	
+	
+	public List<RecipeSummary> recipeSummaries(EntityManager entityManager) throws DAOException {
+		return select(entityManager, "Recype.summaries", RecipeSummary.class, null);
+	}
+	
+	/**
+	 * 
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @return The ingredients of every recipe as id-only projections.
+	 * @throws DAOException
+	 */
+	public List<IngredientLine> ingredientLines(EntityManager entityManager) throws DAOException {
+		return select(entityManager, "Ingredient.lines", IngredientLine.class, null);
+	}
+	
+	/**
+	 * <p>Reads the ingredients of several recipes with one statement per {@link #IN_LIST_LIMIT} ids.</p>
+	 * @param entityManager An entity manager that must be instantiated by the caller.
+	 * @param recipeIds Primary keys of the recipes.
+	 * @return Their ingredients as id-only projections.
+	 * @throws DAOException
+	 */
+	public List<IngredientLine> ingredientLines(EntityManager entityManager, Collection<String> recipeIds) throws DAOException {
+		List<String> ids = new ArrayList<String>(recipeIds);
+		List<IngredientLine> lines = new ArrayList<IngredientLine>();
+		
+		for(int start = 0; start < ids.size(); start += IN_LIST_LIMIT)
+			lines.addAll(select(
+				entityManager, 
+				"Ingredient.linesByRecipes", 
+				IngredientLine.class, 
+				(new ParameterMap()).append("recipes", ids.subList(start, Math.min(ids.size(), start + IN_LIST_LIMIT)))
+			));
+		return lines;
+	}
+	
+	/**
+	 * <p>Scrolls recipe rows only; the ingredients of each chunk are read by {@link #prepare(EntityManager, List)}.</p>
+	 */
+	public int scrollRecipes(EntityManager entityManager, int fetchSize, ResultHandler<? super Recipe> handler) throws DAOException {
+		return scroll(entityManager, "Recype.stream", null, fetchSize, handler);
+	}
+	
+	/**
+	 * <p>Loads the ingredients, and their components, of a chunk of scrolled recipes with one statement per 
+	 * {@link #IN_LIST_LIMIT} recipes.</p>
+	 */
+	@Override
+	protected void prepare(EntityManager entityManager, List<Recipe> chunk) throws DAOException {
+		for(int start = 0; start < chunk.size(); start += IN_LIST_LIMIT)
+			all(
+				entityManager,
+				"Recype.fetchIngredients",
+				(new ParameterMap()).append("recipes", chunk.subList(start, Math.min(chunk.size(), start + IN_LIST_LIMIT)))
+			);
+	}
+	
+	/**
+	 * <p>Reads a page of recipes and then the ingredients of all of them with a second statement; fetch joins can't be 
+	 * combined with row limits without Hibernate paginating in memory.</p>
+	 */
+	public Page<String, Recipe> recipes(EntityManager entityManager, String after, int limit) throws DAOException {
+		Page<String, Recipe> page = page(entityManager, "Recype.page", null, after, limit);
+		
+		if(!page.getItems().isEmpty())
+			all(entityManager, "Recype.fetchIngredients", (new ParameterMap()).append("recipes", page.getItems()));
+		return page;
+	}
+
+	/**
+	 * <p>Reads several recipes with {@link #findByIds(EntityManager, Collection)} and then the ingredients of all of them with
+	 * a second statement per {@link #IN_LIST_LIMIT} recipes.</p>
+	 * @return The recipes found, in no particular order.
+	 */
+	public List<Recipe> recipesByIds(EntityManager entityManager, Collection<String> ids) throws DAOException {
+		List<Recipe> recipes = findByIds(entityManager, ids);
+
+		for(int start = 0; start < recipes.size(); start += IN_LIST_LIMIT)
+			all(
+				entityManager,
+				"Recype.fetchIngredients",
+				(new ParameterMap()).append("recipes", recipes.subList(start, Math.min(recipes.size(), start + IN_LIST_LIMIT)))
+			);
+		return recipes;
+	}
 
 }
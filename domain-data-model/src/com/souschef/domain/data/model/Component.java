@@ -1,39 +1,64 @@
 package com.souschef.domain.data.model;
 
 
-import java.util.Arrays;
-import java.util.UUID;
-
 import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 
-import com.souschef.dao.EntityBean;
+import com.souschef.dao.IdGenerator;
+import com.souschef.dao.VersionedEntityBean;
+import com.souschef.json.JSONPolicy;
 
 @Entity
+@Cacheable
 @Table(name = "COMPONENT")
 @NamedQueries(value={
+	@NamedQuery(
+	      name = "Component.all",
+	      query="SELECT c from Component c LEFT JOIN FETCH c.category ORDER BY c.id"),
 	@NamedQuery(
 	      name = "Component.byCategory",
-	      query="SELECT c from Component c WHERE c.category = :category"),
+	      query="SELECT c from Component c WHERE c.category = :category",
+	      hints={
+	    	  @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+	    	  @QueryHint(name = "org.hibernate.cacheRegion", value = Constants.CATALOG_QUERY_REGION)
+	      }),
+	@NamedQuery(
+	      name = "Component.byCategory.page",
+	      query="SELECT c from Component c WHERE c.category = :category AND (:after IS NULL OR c.id > :after) ORDER BY c.id"),
+	@NamedQuery(
+	      name = "Component.summariesByCategory",
+	      query="SELECT NEW com.souschef.domain.data.model.ComponentSummary(c.id, c.name, c.packageUnit, c.packageSize, c.stock, c.price) " + 
+	      		"from Component c WHERE c.category.id = :category ORDER BY c.name"),
+	@NamedQuery(
+	      name = "Component.stock",
+	      query="SELECT c.id, c.stock, c.version from Component c WHERE c.id IN :ids"),
 	@NamedQuery(
 		      name = "Component.byName",
-		      query="SELECT c from Component c WHERE c.name = :name")		
+		      query="SELECT c from Component c WHERE c.name = :name",
+		      hints={
+		    	  @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+		    	  @QueryHint(name = "org.hibernate.cacheRegion", value = Constants.CATALOG_QUERY_REGION)
+		      })		
 	}
 )
-@JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "category"})
-public class Component extends EntityBean<String> {
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "category", "photo"})
+public class Component extends VersionedEntityBean<String> {
 
 	/**
 	 * 
@@ -42,7 +67,8 @@ public class Component extends EntityBean<String> {
 	
 	
 	@Id
-	@Column(name="ID")		
+	@GeneratedValue(generator = IdGenerator.NAME)
+	@Column(name="ID")
 	private String id;
 	
 	
@@ -63,8 +89,11 @@ public class Component extends EntityBean<String> {
 	@Column(name="STOCK")
 	private double stock; //Actually, this field contains a packed decimal. 
 	
-	@Column(name="PHOTO")
-	private byte[] photo;
+	@Column(name="PHOTO_ID")
+	private String photoId;
+	
+	@Transient
+	private byte[] photo; // Upload only; managers store it as a Photo and set photoId.
 	
 	@Column(name="PRICE")
 	private double price;
@@ -84,7 +113,7 @@ public class Component extends EntityBean<String> {
 	
 	
 	public Component(String name, Unit packageUnit, int packageSize, int stock) {
-		this(UUID.randomUUID().toString().replace(Constants.DASH, Constants.EMPTY_STRING), null, name, packageUnit, packageSize, stock);
+		this(IdGenerator.next(), null, name, packageUnit, packageSize, stock);
 	}
 	
 	public Component(String id, ComponentCategory category, String name, Unit packageUnit, int packageSize, int stock) {
@@ -102,6 +131,7 @@ public class Component extends EntityBean<String> {
 	public void setId(String id) {
 		this.id = id;
 	}
+	@JSONPolicy
 	public ComponentCategory getCategory() {
 		return category;
 	}
@@ -133,6 +163,23 @@ public class Component extends EntityBean<String> {
 		this.stock = stock;
 	}
 
+	/**
+	 * 
+	 * @return Id of this entity's {@link Photo}, or <code>null</code> if it has none.
+	 */
+	public String getPhotoId() {
+		return photoId;
+	}
+
+	public void setPhotoId(String photoId) {
+		this.photoId = photoId;
+	}
+
+	/**
+	 * 
+	 * @return Image bytes being uploaded with this entity; they are never loaded from the database.
+	 */
+	@JSONPolicy
 	public byte[] getPhoto() {
 		return photo;
 	}
@@ -158,7 +205,7 @@ public class Component extends EntityBean<String> {
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
 		result = prime * result + packageSize;
 		result = prime * result + ((packageUnit == null) ? 0 : packageUnit.hashCode());
-		result = prime * result + Arrays.hashCode(photo);
+		result = prime * result + ((photoId == null) ? 0 : photoId.hashCode());
 		long temp;
 		temp = Double.doubleToLongBits(price);
 		result = prime * result + (int) (temp ^ (temp >>> 32));
@@ -195,7 +242,10 @@ public class Component extends EntityBean<String> {
 			return false;
 		if (packageUnit != other.packageUnit)
 			return false;
-		if (!Arrays.equals(photo, other.photo))
+		if (photoId == null) {
+			if (other.photoId != null)
+				return false;
+		} else if (!photoId.equals(other.photoId))
 			return false;
 		if (Double.doubleToLongBits(price) != Double.doubleToLongBits(other.price))
 			return false;
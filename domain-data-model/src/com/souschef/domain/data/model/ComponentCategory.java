@@ -1,28 +1,37 @@
 package com.souschef.domain.data.model;
 
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
 
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 
-import com.souschef.dao.EntityBean;
+import com.souschef.dao.IdGenerator;
+import com.souschef.dao.VersionedEntityBean;
 
 
 @Entity
+@Cacheable
 @Table(name = "COMPONENT_CATEGORY")
 @NamedQueries({
 	@NamedQuery(
 	      name = "ComponentCategory.all",
-	      query="SELECT c from ComponentCategory c")
+	      query="SELECT c from ComponentCategory c",
+	      hints={
+	    	  @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+	    	  @QueryHint(name = "org.hibernate.cacheRegion", value = Constants.CATALOG_QUERY_REGION)
+	      })
 	}
 )
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
-public class ComponentCategory extends EntityBean<String>{
+public class ComponentCategory extends VersionedEntityBean<String>{
 	
 	/**
 	 * 
@@ -30,7 +39,8 @@ public class ComponentCategory extends EntityBean<String>{
 	private static final long serialVersionUID = -3434852295164916809L;
 	
 	@Id
-	@Column(name="ID")	
+	@GeneratedValue(generator = IdGenerator.NAME)
+	@Column(name="ID")
 	private String id;
 		
 	@Column(name="NAME")
@@ -47,7 +57,7 @@ public class ComponentCategory extends EntityBean<String>{
 	}
 	
 	public ComponentCategory(String name) {
-		this(java.util.UUID.randomUUID().toString().replace(Constants.DASH, Constants.EMPTY_STRING), name);
+		this(IdGenerator.next(), name);
 	}
 	
 	public String getId() {
@@ -0,0 +1,90 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+
+/**
+ * <p>Read-only projection of a {@link Component} for list views; it's built by the database through a constructor expression, 
+ * so neither the category nor the photo is loaded.</p>
+ * @author rsolano
+ *
+ */
+public class ComponentSummary implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -4520318307460652263L;
+
+	private String id;
+	
+	private String name;
+	
+	private Unit packageUnit;
+	
+	private int packageSize;
+	
+	private double stock;
+	
+	private double price;
+	
+	public ComponentSummary() {
+		
+	}
+	
+	public ComponentSummary(String id, String name, Unit packageUnit, int packageSize, double stock, double price) {
+		this.id = id;
+		this.name = name;
+		this.packageUnit = packageUnit;
+		this.packageSize = packageSize;
+		this.stock = stock;
+		this.price = price;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Unit getPackageUnit() {
+		return packageUnit;
+	}
+
+	public void setPackageUnit(Unit packageUnit) {
+		this.packageUnit = packageUnit;
+	}
+
+	public int getPackageSize() {
+		return packageSize;
+	}
+
+	public void setPackageSize(int packageSize) {
+		this.packageSize = packageSize;
+	}
+
+	public double getStock() {
+		return stock;
+	}
+
+	public void setStock(double stock) {
+		this.stock = stock;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public void setPrice(double price) {
+		this.price = price;
+	}
+}
@@ -3,4 +3,8 @@ package com.souschef.domain.data.model;
 public class Constants {
 	public static String EMPTY_STRING="";
 	public static String DASH="-";
+	/**
+	 * Second-level cache region of the catalog's cacheable queries; it's sized in ehcache.xml.
+	 */
+	public static final String CATALOG_QUERY_REGION="souschef.catalog.queries";
 }
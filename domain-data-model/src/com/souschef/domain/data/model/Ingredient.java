@@ -1,8 +1,8 @@
 package com.souschef.domain.data.model;
 
-import java.util.UUID;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -11,14 +11,32 @@ import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 
 import com.souschef.dao.EntityBean;
+import com.souschef.dao.IdGenerator;
+import com.souschef.json.JSONPolicy;
 
 @Entity
+@Cacheable
 @Table(name = "INGREDIENT")
+@NamedQueries({
+	@NamedQuery(
+	      name = "Ingredient.lines",
+	      query="SELECT NEW com.souschef.domain.data.model.IngredientLine(i.recipe.id, i.component.id, i.amount, i.unit) from Ingredient i"),
+	@NamedQuery(
+	      name = "Ingredient.linesByRecipes",
+	      query="SELECT NEW com.souschef.domain.data.model.IngredientLine(i.recipe.id, i.component.id, i.amount, i.unit) " + 
+	      		"from Ingredient i WHERE i.recipe.id IN :recipes"),
+	@NamedQuery(
+	      name = "Ingredient.stored",
+	      query="SELECT r.version, i.id, c.id, i.amount, i.unit from Recipe r LEFT JOIN r.ingredients i LEFT JOIN i.component c WHERE r.id = :recipe")
+	}
+)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "recipe"})
 public class Ingredient extends EntityBean<String>{
 	/**
@@ -33,7 +51,7 @@ public class Ingredient extends EntityBean<String>{
 	@Column(name="AMOUNT")
 	double amount;
 	
-	@ManyToOne(cascade={CascadeType.MERGE, CascadeType.REFRESH}, fetch=FetchType.EAGER)
+	@ManyToOne(cascade={CascadeType.REFRESH}, fetch=FetchType.LAZY) // Saving a recipe only references components; they have their own version.
 	@JoinColumn(name="COMPONENT_ID")		
 	Component component;
 
@@ -58,7 +76,7 @@ public class Ingredient extends EntityBean<String>{
 	}
 	
 	public Ingredient(double amount, Component component, Unit unit) {
-		this(UUID.randomUUID().toString().replace(Constants.DASH, Constants.EMPTY_STRING), amount, component, unit);
+		this(IdGenerator.next(), amount, component, unit);
 
 	}
 
@@ -92,6 +110,7 @@ public class Ingredient extends EntityBean<String>{
 		this.unit = unit;
 	}
 	
+	@JSONPolicy
 	public Recipe getRecipe() {
 		return recipe;
 	}
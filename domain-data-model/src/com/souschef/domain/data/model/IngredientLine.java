@@ -0,0 +1,68 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+
+/**
+ * <p>Read-only projection of an {@link Ingredient} that references its recipe and component by id; it's built by the 
+ * database through a constructor expression, so in-memory engines can load every recipe's bill of materials in one query.</p>
+ * @author rsolano
+ *
+ */
+public class IngredientLine implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 7782460364153361842L;
+
+	private String recipeId;
+	
+	private String componentId;
+	
+	private double amount;
+	
+	private Unit unit;
+	
+	public IngredientLine() {
+		
+	}
+	
+	public IngredientLine(String recipeId, String componentId, double amount, Unit unit) {
+		this.recipeId = recipeId;
+		this.componentId = componentId;
+		this.amount = amount;
+		this.unit = unit;
+	}
+
+	public String getRecipeId() {
+		return recipeId;
+	}
+
+	public void setRecipeId(String recipeId) {
+		this.recipeId = recipeId;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public void setComponentId(String componentId) {
+		this.componentId = componentId;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(double amount) {
+		this.amount = amount;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public void setUnit(Unit unit) {
+		this.unit = unit;
+	}
+}
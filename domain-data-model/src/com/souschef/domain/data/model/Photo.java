@@ -0,0 +1,114 @@
+package com.souschef.domain.data.model;
+
+import java.sql.Blob;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+
+import com.souschef.dao.EntityBean;
+import com.souschef.json.JSONPolicy;
+
+/**
+ * <p>Image of a recipe or a component, stored apart from them so loading or encoding those entities never carries image bytes.</p>
+ * <p>Photos are content addressed: the id is the SHA-256 digest of the bytes in hexadecimal, so they are immutable, identical 
+ * uploads are stored once and the id doubles as HTTP entity tag. The bytes are kept in a <code>BLOB</code> that is read as a 
+ * stream while the transaction that loaded the photo is active.</p>
+ * @author rsolano
+ *
+ */
+@Entity
+@Table(name = "PHOTO")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "content"})
+public class Photo extends EntityBean<String> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 8158040993125000377L;
+
+	@Id
+	@Column(name="ID")
+	private String id;
+	
+	@Column(name="CONTENT_TYPE")
+	private String contentType;
+	
+	@Column(name="LENGTH")
+	private long length;
+	
+	@Lob
+	@Basic(fetch=FetchType.LAZY)
+	@Column(name="CONTENT")
+	private Blob content;
+	
+	public Photo() {
+		
+	}
+	
+	public Photo(String id, String contentType, long length) {
+		this.id = id;
+		this.contentType = contentType;
+		this.length = length;
+	}
+	
+	public Photo(String id, String contentType, long length, Blob content) {
+		this(id, contentType, length);
+		this.content = content;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/**
+	 * 
+	 * @return Size of the image in bytes.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
+	/**
+	 * 
+	 * @return A locator that's only valid within the transaction that loaded this photo.
+	 */
+	@JSONPolicy
+	public Blob getContent() {
+		return content;
+	}
+
+	public void setContent(Blob content) {
+		this.content = content;
+	}
+	
+	/**
+	 * 
+	 * @return A copy of this photo without content, safe to hand over to other tiers or serialize.
+	 */
+	public Photo describe() {
+		return new Photo(id, contentType, length);
+	}
+}
@@ -4,55 +4,98 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
-import com.souschef.dao.EntityBean;
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+
+import com.souschef.dao.IdGenerator;
+import com.souschef.dao.VersionedEntityBean;
+import com.souschef.json.JSONPolicy;
 
 @Entity
+@Cacheable
 @Table(name = "RECYPE")
 @NamedQueries(value={
 		@NamedQuery(
 		      name = "Recype.all",
-		      query="SELECT r from Recipe r"
-		)		
+		      query="SELECT DISTINCT r from Recipe r LEFT JOIN FETCH r.ingredients i LEFT JOIN FETCH i.component ORDER BY r.id",
+		      hints = @QueryHint(name = "hibernate.query.passDistinctThrough", value = "false")
+		),
+		@NamedQuery(
+		      name = "Recype.stream",
+		      query="SELECT r from Recipe r ORDER BY r.id"
+		),
+		@NamedQuery(
+		      name = "Recype.page",
+		      query="SELECT r from Recipe r WHERE (:after IS NULL OR r.id > :after) ORDER BY r.id"
+		),
+		@NamedQuery(
+		      name = "Recype.fetchIngredients",
+		      query="SELECT DISTINCT r from Recipe r LEFT JOIN FETCH r.ingredients i LEFT JOIN FETCH i.component WHERE r IN :recipes",
+		      hints = @QueryHint(name = "hibernate.query.passDistinctThrough", value = "false")
+		),
+		@NamedQuery(
+		      name = "Recype.summaries",
+		      query="SELECT NEW com.souschef.domain.data.model.RecipeSummary(r.id, r.name, r.price) from Recipe r ORDER BY r.id"
+		)
 	}
 )
-public class Recipe  extends EntityBean<String>{
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "photo"})
+@NamedEntityGraph(
+	name = Recipe.DETAIL_GRAPH,
+	attributeNodes = @NamedAttributeNode(value = "ingredients", subgraph = "ingredients"),
+	subgraphs = @NamedSubgraph(name = "ingredients", attributeNodes = @NamedAttributeNode("component"))
+)
+public class Recipe  extends VersionedEntityBean<String>{
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 5739588212741820240L;
+	
+	/**
+	 * Entity graph that loads a recipe with its ingredients and their components in one statement.
+	 */
+	public static final String DETAIL_GRAPH = "Recipe.detail";
 
 	@Id
-	@Column(name="ID")		
+	@GeneratedValue(generator = IdGenerator.NAME)
+	@Column(name="ID")
 	private String id;
 	
 	@Column(name="NAME")
 	private String name;
 	
-	@OneToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval=true)
+	@OneToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval=true)
 	@JoinColumn(name="RECYPE_ID", referencedColumnName="ID")
 	private List<Ingredient> ingredients;
 	
 	@Column(name="PRICE")
 	private double price;
 	
-	@Column(name="PHOTO")
-	private byte[] photo;
+	@Column(name="PHOTO_ID")
+	private String photoId;
+	
+	@Transient
+	private byte[] photo; // Upload only; managers store it as a Photo and set photoId.
 	
 	public Recipe() {	
 		
@@ -70,7 +113,7 @@ public class Recipe  extends EntityBean<String>{
 	}
 	
 	private void init(String name, double price, byte[] photo, List<Ingredient> ingredients) {
-		init(UUID.randomUUID().toString().replace(Constants.DASH, Constants.EMPTY_STRING),
+		init(IdGenerator.next(),
 		name,
 		price,
 		photo,
@@ -144,6 +187,23 @@ public class Recipe  extends EntityBean<String>{
 		this.price = price;
 	}
 
+	/**
+	 * 
+	 * @return Id of this entity's {@link Photo}, or <code>null</code> if it has none.
+	 */
+	public String getPhotoId() {
+		return photoId;
+	}
+
+	public void setPhotoId(String photoId) {
+		this.photoId = photoId;
+	}
+
+	/**
+	 * 
+	 * @return Image bytes being uploaded with this entity; they are never loaded from the database.
+	 */
+	@JSONPolicy
 	public byte[] getPhoto() {
 		return photo;
 	}
@@ -160,7 +220,7 @@ public class Recipe  extends EntityBean<String>{
 		result = prime * result + ((id == null) ? 0 : id.hashCode());
 		result = prime * result + ((ingredients == null) ? 0 : ingredients.hashCode());
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
-		result = prime * result + Arrays.hashCode(photo);
+		result = prime * result + ((photoId == null) ? 0 : photoId.hashCode());
 		long temp;
 		temp = Double.doubleToLongBits(price);
 		result = prime * result + (int) (temp ^ (temp >>> 32));
@@ -192,7 +252,10 @@ public class Recipe  extends EntityBean<String>{
 				return false;
 		} else if (!name.equals(other.name))
 			return false;
-		if (!Arrays.equals(photo, other.photo))
+		if (photoId == null) {
+			if (other.photoId != null)
+				return false;
+		} else if (!photoId.equals(other.photoId))
 			return false;
 		if (Double.doubleToLongBits(price) != Double.doubleToLongBits(other.price))
 			return false;
@@ -0,0 +1,81 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * <p>Everything a recipe screen shows, fetched with one remote call: the recipe with its ingredients, the components they
+ * use with their categories, and the recipe's cost.</p>
+ * @author rsolano
+ *
+ */
+public class RecipeDetail implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 4180826335871502916L;
+
+	private Recipe recipe;
+
+	private List<Component> components;
+
+	private List<ComponentCategory> categories;
+
+	private Double cost;
+
+	public RecipeDetail() {
+
+	}
+
+	public RecipeDetail(Recipe recipe, List<Component> components, List<ComponentCategory> categories, Double cost) {
+		this.recipe = recipe;
+		this.components = components;
+		this.categories = categories;
+		this.cost = cost;
+	}
+
+	public Recipe getRecipe() {
+		return recipe;
+	}
+
+	public void setRecipe(Recipe recipe) {
+		this.recipe = recipe;
+	}
+
+	/**
+	 *
+	 * @return The components of the recipe's ingredients, in order of first use, each with its category.
+	 */
+	public List<Component> getComponents() {
+		return components;
+	}
+
+	public void setComponents(List<Component> components) {
+		this.components = components;
+	}
+
+	/**
+	 *
+	 * @return The categories of {@link #getComponents()}, without repetitions.
+	 */
+	public List<ComponentCategory> getCategories() {
+		return categories;
+	}
+
+	public void setCategories(List<ComponentCategory> categories) {
+		this.categories = categories;
+	}
+
+	/**
+	 *
+	 * @return The recipe's cost, or <code>null</code> if it can't be computed.
+	 */
+	public Double getCost() {
+		return cost;
+	}
+
+	public void setCost(Double cost) {
+		this.cost = cost;
+	}
+}
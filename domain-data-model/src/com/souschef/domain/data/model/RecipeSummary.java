@@ -0,0 +1,57 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+
+/**
+ * <p>Read-only projection of a {@link Recipe} for list views; it's built by the database through a constructor expression, 
+ * so neither ingredients nor photos are loaded.</p>
+ * @author rsolano
+ *
+ */
+public class RecipeSummary implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2203958012366419135L;
+
+	private String id;
+	
+	private String name;
+	
+	private double price;
+	
+	public RecipeSummary() {
+		
+	}
+	
+	public RecipeSummary(String id, String name, double price) {
+		this.id = id;
+		this.name = name;
+		this.price = price;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public void setPrice(double price) {
+		this.price = price;
+	}
+}
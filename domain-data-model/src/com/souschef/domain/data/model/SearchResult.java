@@ -0,0 +1,98 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * <p>A name search match; results of different entity types can be merged by comparing their scores.</p>
+ * @author rsolano
+ *
+ */
+public class SearchResult implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -6409017312688562340L;
+
+	public static final String COMPONENT = "component";
+	
+	public static final String RECIPE = "recipe";
+	
+	/**
+	 * Orders results by score, then shorter names first, then alphabetically; results of several searches merged with it 
+	 * keep the order each search returned.
+	 */
+	public static final Comparator<SearchResult> BEST_FIRST = new Comparator<SearchResult>() {
+		@Override
+		public int compare(SearchResult left, SearchResult right) {
+			int result = Double.compare(right.getScore(), left.getScore());
+
+			if(result == 0)
+				result = left.getName().length() - right.getName().length();
+			if(result == 0)
+				result = left.getName().compareTo(right.getName());
+			return result;
+		}
+	};
+	
+	private String id;
+	
+	private String name;
+	
+	private String type;
+	
+	private double score;
+	
+	public SearchResult() {
+		
+	}
+	
+	public SearchResult(String id, String name, String type, double score) {
+		this.id = id;
+		this.name = name;
+		this.type = type;
+		this.score = score;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 
+	 * @return Either {@link #COMPONENT} or {@link #RECIPE}.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	/**
+	 * 
+	 * @return 3 for a match at the start of the name, 2 when every query word starts a word of the name and the 
+	 * trigram similarity, between 0 and 1, for fuzzy matches.
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	public void setScore(double score) {
+		this.score = score;
+	}
+}
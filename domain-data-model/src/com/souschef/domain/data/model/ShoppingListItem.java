@@ -0,0 +1,132 @@
+package com.souschef.domain.data.model;
+
+import java.io.Serializable;
+
+/**
+ * <p>How much of a component a batch of recipes needs, and how much of it has to be bought; quantities are expressed in 
+ * the component's package unit.</p>
+ * @author rsolano
+ *
+ */
+public class ShoppingListItem implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -1693283981512120874L;
+
+	private String componentId;
+	
+	private String name;
+	
+	private Unit unit;
+	
+	private double required;
+	
+	private double available;
+	
+	private double shortfall;
+	
+	private int packages;
+	
+	private boolean convertible = true;
+	
+	public ShoppingListItem() {
+		
+	}
+	
+	public ShoppingListItem(String componentId, String name, Unit unit) {
+		this.componentId = componentId;
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public void setComponentId(String componentId) {
+		this.componentId = componentId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 
+	 * @return The component's package unit, or the unit of its first ingredient if the component has none.
+	 */
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public void setUnit(Unit unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * 
+	 * @return Total amount needed by the batch.
+	 */
+	public double getRequired() {
+		return required;
+	}
+
+	public void setRequired(double required) {
+		this.required = required;
+	}
+
+	/**
+	 * 
+	 * @return Amount in stock: packages in stock times the package size.
+	 */
+	public double getAvailable() {
+		return available;
+	}
+
+	public void setAvailable(double available) {
+		this.available = available;
+	}
+
+	/**
+	 * 
+	 * @return Amount missing from stock; zero if there's enough.
+	 */
+	public double getShortfall() {
+		return shortfall;
+	}
+
+	public void setShortfall(double shortfall) {
+		this.shortfall = shortfall;
+	}
+
+	/**
+	 * 
+	 * @return Packages to buy to cover the shortfall.
+	 */
+	public int getPackages() {
+		return packages;
+	}
+
+	public void setPackages(int packages) {
+		this.packages = packages;
+	}
+
+	/**
+	 * 
+	 * @return <code>false</code> if some ingredient's unit can't be converted to {@link #getUnit()}; those amounts are left 
+	 * out of {@link #getRequired()}.
+	 */
+	public boolean isConvertible() {
+		return convertible;
+	}
+
+	public void setConvertible(boolean convertible) {
+		this.convertible = convertible;
+	}
+}
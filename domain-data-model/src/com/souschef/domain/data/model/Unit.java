@@ -1,8 +1,59 @@
 package com.souschef.domain.data.model;
 
 public enum Unit {
-	POUND,
-	GRAM,
-	KILOGRAM,
-	LITRE
+	POUND(Dimension.MASS, 453.59237),
+	GRAM(Dimension.MASS, 1),
+	KILOGRAM(Dimension.MASS, 1000),
+	LITRE(Dimension.VOLUME, 1);
+	
+	/**
+	 * <p>Quantities of units with different dimensions can't be converted into each other.</p>
+	 */
+	public enum Dimension {
+		MASS,
+		VOLUME
+	}
+	
+	private static final double[][] FACTORS;
+	
+	static {
+		Unit[] units = values();
+		
+		FACTORS = new double[units.length][units.length];
+		for(Unit from: units)
+			for(Unit to: units)
+				FACTORS[from.ordinal()][to.ordinal()] = from.dimension == to.dimension ? from.base / to.base : Double.NaN;
+	}
+	
+	private final Dimension dimension;
+	
+	private final double base; // How many of the dimension's base units (grams, litres) make one of this unit.
+	
+	private Unit(Dimension dimension, double base) {
+		this.dimension = dimension;
+		this.base = base;
+	}
+
+	public Dimension getDimension() {
+		return dimension;
+	}
+	
+	/**
+	 * 
+	 * @param to Target unit.
+	 * @return How many <code>to</code> units make one of this unit, or <code>NaN</code> if their dimensions differ.
+	 */
+	public double factor(Unit to) {
+		return FACTORS[ordinal()][to.ordinal()];
+	}
+	
+	/**
+	 * 
+	 * @param amount A quantity expressed in this unit.
+	 * @param to Target unit.
+	 * @return <code>amount</code> expressed in <code>to</code> units, or <code>NaN</code> if their dimensions differ.
+	 */
+	public double convert(double amount, Unit to) {
+		return amount * FACTORS[ordinal()][to.ordinal()];
+	}
 }
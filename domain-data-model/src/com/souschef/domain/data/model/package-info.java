@@ -0,0 +1,11 @@
+/**
+ * <p>Entities of the domain model and the projections read from them.</p>
+ * <p>Entities with generated ids take them from {@link com.souschef.dao.IdGenerator}, declared here once for the whole 
+ * persistence unit.</p>
+ */
+@GenericGenerator(name = IdGenerator.NAME, strategy = IdGenerator.STRATEGY)
+package com.souschef.domain.data.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import com.souschef.dao.IdGenerator;
@@ -0,0 +1,124 @@
+package com.souschef.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.bytecode.enhance.spi.DefaultEnhancementContext;
+import org.hibernate.bytecode.enhance.spi.Enhancer;
+import org.hibernate.bytecode.enhance.spi.UnloadedClass;
+import org.hibernate.cfg.Environment;
+
+/**
+ * <p>Applies Hibernate's bytecode enhancement to the compiled entities of a class directory, rewriting their class files in
+ * place, so the classes that get packaged track their own changes, load <code>@Basic(fetch = LAZY)</code> attributes on
+ * first access and keep both sides of <code>mappedBy</code> associations in sync.</p>
+ * <p>Hibernate 5.2 ships no Ant task for this, so the domain model's <code>enhance.xml</code> compiles and runs this class 
+ * after the Java builder; it's a build tool and is never packaged. Classes already enhanced are left as they are, so 
+ * running it again is harmless.</p>
+ * @author rsolano
+ *
+ */
+public class EntityEnhancer {
+
+	private final Enhancer enhancer;
+
+	/**
+	 *
+	 * @param loader Loader for the entities' classes and everything they reference.
+	 */
+	public EntityEnhancer(final ClassLoader loader) {
+		this.enhancer = Environment.getBytecodeProvider().getEnhancer(new DefaultEnhancementContext() {
+			@Override
+			public ClassLoader getLoadingClassLoader() {
+				return loader;
+			}
+
+			@Override
+			public boolean doDirtyCheckingInline(UnloadedClass classDescriptor) {
+				return true;
+			}
+
+			@Override
+			public boolean hasLazyLoadableAttributes(UnloadedClass classDescriptor) {
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * <p>Enhances every entity class under a directory.</p>
+	 * @param directory Root of a class output directory.
+	 * @return Number of class files rewritten.
+	 * @throws IOException If a class file can't be read or written.
+	 */
+	public int enhance(File directory) throws IOException {
+		List<File> files = new ArrayList<File>();
+		int enhanced = 0;
+
+		collect(directory, files);
+		for(File file: files) {
+			String path = directory.toURI().relativize(file.toURI()).getPath();
+			String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+			byte[] original = Files.readAllBytes(file.toPath());
+			byte[] result = enhancer.enhance(className, original);
+
+			if(result != null && !Arrays.equals(original, result)) {
+				Files.write(file.toPath(), result);
+				enhanced++;
+			}
+		}
+		return enhanced;
+	}
+
+	private static void collect(File directory, List<File> files) {
+		File[] children = directory.listFiles();
+
+		if(children == null)
+			return;
+		for(File child: children) {
+			if(child.isDirectory())
+				collect(child, files);
+			else if(child.getName().endsWith(".class") && !child.getName().equals("package-info.class"))
+				files.add(child);
+		}
+	}
+
+	/**
+	 *
+	 * @param args The class directory to enhance, followed by the directories and jars its classes depend on.
+	 * @throws IOException If a class file can't be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		List<URL> urls = new ArrayList<URL>();
+		File directory;
+		URLClassLoader loader;
+
+		if(args.length == 0)
+			throw new IllegalArgumentException("Usage: EntityEnhancer <class directory> [classpath entry...]");
+		directory = new File(args[0]);
+		for(String entry: args)
+			urls.add(url(new File(entry)));
+
+		loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), EntityEnhancer.class.getClassLoader());
+		try {
+			System.out.println("Enhanced " + new EntityEnhancer(loader).enhance(directory) + " classes in " + directory);
+		}finally {
+			loader.close();
+		}
+	}
+
+	private static URL url(File file) {
+		try {
+			return file.toURI().toURL();
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(file.getPath(), e);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.souschef.domain.catalog;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.souschef.dao.DAO;
+import com.souschef.dao.DAOException;
+import com.souschef.domain.data.dao.ComponentCategoryDAO;
+import com.souschef.domain.data.dao.ComponentDAO;
+
+/**
+ * <p>Holds the current {@link CatalogSnapshot} of this JVM.</p>
+ * <p>Readers grab the snapshot without locking; writers are serialized and swap in a new snapshot derived from the current one.
+ * Until the catalogue is loaded for the first time updates are ignored, since the load will read them from the database anyway.</p>
+ * @author rsolano
+ *
+ */
+public class Catalog {
+
+	/**
+	 * <p>Derives a new snapshot from the current one.</p>
+	 */
+	public interface Update {
+		CatalogSnapshot apply(CatalogSnapshot snapshot);
+	}
+
+	private static final Catalog instance = new Catalog();
+
+	private volatile CatalogSnapshot snapshot;
+
+	private Catalog() {
+
+	}
+
+	public static Catalog getInstance() {
+		return instance;
+	}
+
+	/**
+	 *
+	 * @return The current snapshot or <code>null</code> if the catalogue hasn't been loaded.
+	 */
+	public CatalogSnapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * <p>Returns the current snapshot, reading every category and component on first use.</p>
+	 * @param entityManagerFactory Factory of the persistence unit holding the catalogue.
+	 * @return The current snapshot.
+	 * @throws DAOException If the catalogue can't be read from the database.
+	 */
+	public CatalogSnapshot snapshot(EntityManagerFactory entityManagerFactory) throws DAOException {
+		CatalogSnapshot current = snapshot;
+		EntityManager entityManager;
+		
+		if(current != null)
+			return current;
+		
+		synchronized(this) {
+			if(snapshot == null) {
+				entityManager = DAO.readOnly(entityManagerFactory.createEntityManager());
+				try {
+					snapshot = CatalogSnapshot.build(
+						new ComponentCategoryDAO(entityManagerFactory).allComponentCategories(entityManager), 
+						new ComponentDAO(entityManagerFactory).allComponents(entityManager)
+					);
+				}finally {
+					entityManager.close();
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	public synchronized void update(Update update) {
+		if(snapshot != null)
+			snapshot = update.apply(snapshot);
+	}
+}
@@ -0,0 +1,570 @@
+package com.souschef.domain.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.souschef.dao.DAO;
+import com.souschef.dao.Page;
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.ComponentSummary;
+
+/**
+ * <p>Immutable, in-memory view of the component catalogue that answers lookups by name and by category without touching the database.</p>
+ * <p>Components and categories live in slot arrays; each category owns a sorted <code>int[]</code> of the slots of its components,
+ * ordered by component id, so category listings and keyset pages are array walks. Writes never modify a snapshot:
+ * {@link #withComponent(Component)} and friends copy the few arrays they change and share the rest with their source,
+ * and removed slots are left empty until they outnumber the live ones.</p>
+ * <p>Entities stored here are private copies without category or photo bytes; every accessor hands out fresh copies, so callers
+ * may modify the results freely.</p>
+ * @author rsolano
+ *
+ */
+public class CatalogSnapshot {
+	private static final int[] NO_SLOTS = new int[0];
+
+	private static final int COMPACTION_THRESHOLD = 64;
+
+	private static final Comparator<ComponentSummary> BY_NAME = new Comparator<ComponentSummary>() {
+		@Override
+		public int compare(ComponentSummary left, ComponentSummary right) {
+			if(left.getName() == null)
+				return right.getName() == null ? 0 : -1;
+			if(right.getName() == null)
+				return 1;
+			return left.getName().compareTo(right.getName());
+		}
+	};
+
+	private final ComponentCategory[] categories;
+
+	private final Map<String, Integer> categoryIndex;
+
+	private final int[][] members; // category slot -> component slots ordered by component id
+
+	private final Component[] components;
+
+	private final int[] categoryOf; // component slot -> category slot, -1 when it has none
+
+	private final Map<String, Integer> componentIndex;
+
+	private final Map<String, Integer> nameIndex;
+
+	private final int empty;
+
+	private CatalogSnapshot(ComponentCategory[] categories, Map<String, Integer> categoryIndex, int[][] members, Component[] components,
+			int[] categoryOf, Map<String, Integer> componentIndex, Map<String, Integer> nameIndex, int empty) {
+		this.categories = categories;
+		this.categoryIndex = categoryIndex;
+		this.members = members;
+		this.components = components;
+		this.categoryOf = categoryOf;
+		this.componentIndex = componentIndex;
+		this.nameIndex = nameIndex;
+		this.empty = empty;
+	}
+
+	/**
+	 *
+	 * @param categories Every category in the catalogue.
+	 * @param components Every component in the catalogue; their categories need only carry the id.
+	 * @return A compact snapshot holding both lists.
+	 */
+	public static CatalogSnapshot build(List<ComponentCategory> categories, List<Component> components) {
+		List<Component> sorted = new ArrayList<Component>(components);
+		int size = sorted.size();
+		ComponentCategory[] categorySlots;
+		Component[] componentSlots = new Component[size];
+		int[] categoryOf = new int[size];
+		Map<String, Integer> categoryIndex = new HashMap<String, Integer>(categories.size() * 2);
+		Map<String, Integer> componentIndex = new HashMap<String, Integer>(size * 2);
+		Map<String, Integer> nameIndex = new HashMap<String, Integer>(size * 2);
+		List<ComponentCategory> categoryList = new ArrayList<ComponentCategory>(categories.size());
+		int[] counts;
+		int[][] members;
+
+		for(ComponentCategory category: categories) {
+			if(category == null || category.getId() == null || categoryIndex.containsKey(category.getId()))
+				continue;
+			categoryIndex.put(category.getId(), categoryList.size());
+			categoryList.add(detach(category));
+		}
+
+		Collections.sort(sorted, new Comparator<Component>() {
+			@Override
+			public int compare(Component left, Component right) {
+				return left.getId().compareTo(right.getId());
+			}
+		});
+
+		for(int slot = 0; slot < size; slot++) {
+			Component component = sorted.get(slot);
+			ComponentCategory category = component.getCategory();
+			Integer categorySlot = null;
+
+			if(category != null && category.getId() != null) {
+				categorySlot = categoryIndex.get(category.getId());
+				if(categorySlot == null) {
+					categorySlot = categoryList.size();
+					categoryIndex.put(category.getId(), categorySlot);
+					categoryList.add(detach(category));
+				}
+			}
+			componentSlots[slot] = detach(component);
+			categoryOf[slot] = categorySlot == null ? -1 : categorySlot;
+			componentIndex.put(component.getId(), slot);
+			if(component.getName() != null)
+				nameIndex.put(componentSlots[slot].getName(), slot);
+		}
+
+		categorySlots = categoryList.toArray(new ComponentCategory[categoryList.size()]);
+		counts = new int[categorySlots.length];
+		for(int slot = 0; slot < size; slot++)
+			if(categoryOf[slot] >= 0)
+				counts[categoryOf[slot]]++;
+
+		members = new int[categorySlots.length][];
+		for(int categorySlot = 0; categorySlot < members.length; categorySlot++)
+			members[categorySlot] = counts[categorySlot] == 0 ? NO_SLOTS : new int[counts[categorySlot]];
+
+		Arrays.fill(counts, 0);
+		for(int slot = 0; slot < size; slot++) // Slots are in id order, so every row comes out sorted.
+			if(categoryOf[slot] >= 0)
+				members[categoryOf[slot]][counts[categoryOf[slot]]++] = slot;
+
+		return new CatalogSnapshot(categorySlots, categoryIndex, members, componentSlots, categoryOf, componentIndex, nameIndex, 0);
+	}
+
+	/**
+	 *
+	 * @return Number of live components.
+	 */
+	public int size() {
+		return componentIndex.size();
+	}
+
+	public ComponentCategory findCategoryById(String id) {
+		Integer slot = categoryIndex.get(id);
+		return slot == null ? null : detach(categories[slot]);
+	}
+
+	public List<ComponentCategory> categories() {
+		List<ComponentCategory> list = new ArrayList<ComponentCategory>(categoryIndex.size());
+
+		for(ComponentCategory category: categories)
+			if(category != null)
+				list.add(detach(category));
+		return list;
+	}
+
+	/**
+	 *
+	 * @return Copies of every component, without category.
+	 */
+	public List<Component> components() {
+		List<Component> list = new ArrayList<Component>(componentIndex.size());
+
+		for(Component component: components)
+			if(component != null)
+				list.add(detach(component));
+		return list;
+	}
+
+	/**
+	 *
+	 * @return Names of every component keyed by primary key.
+	 */
+	public Map<String, String> componentNames() {
+		Map<String, String> names = new HashMap<String, String>(componentIndex.size() * 2);
+
+		for(Component component: components)
+			if(component != null)
+				names.put(component.getId(), component.getName());
+		return names;
+	}
+
+	public Component findComponentById(String id) {
+		Integer slot = componentIndex.get(id);
+		return slot == null ? null : copy(slot);
+	}
+
+	public Component findComponentByName(String name) {
+		Integer slot = nameIndex.get(name);
+		return slot == null ? null : copy(slot);
+	}
+
+	/**
+	 *
+	 * @param categoryId A category's primary key.
+	 * @return The category's components ordered by id, or <code>null</code> if there's no such category.
+	 */
+	public List<Component> componentsByCategory(String categoryId) {
+		Integer categorySlot = categoryIndex.get(categoryId);
+		int[] row;
+		List<Component> list;
+
+		if(categorySlot == null)
+			return null;
+
+		row = members[categorySlot];
+		list = new ArrayList<Component>(row.length);
+		for(int slot: row)
+			list.add(copy(slot));
+		return list;
+	}
+
+	/**
+	 * <p>Keyset page over a category's components with the same contract as {@link DAO#page}.</p>
+	 * @param categoryId A category's primary key.
+	 * @param after Continuation token returned by a previous call, or <code>null</code> to get the first slice.
+	 * @param limit Maximum number of components in the slice; it must be between 1 and {@link DAO#MAX_PAGE_LIMIT}.
+	 * @return The slice, or <code>null</code> if there's no such category.
+	 * @throws IllegalArgumentException If <code>limit</code> is out of range.
+	 */
+	public Page<String, Component> componentsByCategory(String categoryId, String after, int limit) {
+		Integer categorySlot = categoryIndex.get(categoryId);
+		int[] row;
+		int start, end;
+		List<Component> list;
+
+		if(limit < 1 || limit > DAO.MAX_PAGE_LIMIT)
+			throw new IllegalArgumentException(String.format("Page limit must be between 1 and %d", DAO.MAX_PAGE_LIMIT));
+		if(categorySlot == null)
+			return null;
+
+		row = members[categorySlot];
+		start = after == null ? 0 : successor(row, after);
+		end = Math.min(row.length, start + limit);
+		list = new ArrayList<Component>(end - start);
+		for(int index = start; index < end; index++)
+			list.add(copy(row[index]));
+
+		return new Page<String, Component>(list, end < row.length ? components[row[end - 1]].getId() : null, limit);
+	}
+
+	/**
+	 *
+	 * @param categoryId A category's primary key.
+	 * @return Summaries of the category's components ordered by name; empty if there's no such category.
+	 */
+	public List<ComponentSummary> componentSummariesByCategory(String categoryId) {
+		Integer categorySlot = categoryIndex.get(categoryId);
+		List<ComponentSummary> list;
+
+		if(categorySlot == null)
+			return new ArrayList<ComponentSummary>(0);
+
+		list = new ArrayList<ComponentSummary>(members[categorySlot].length);
+		for(int slot: members[categorySlot]) {
+			Component component = components[slot];
+			list.add(new ComponentSummary(
+				component.getId(), component.getName(), component.getPackageUnit(),
+				component.getPackageSize(), component.getStock(), component.getPrice()
+			));
+		}
+		Collections.sort(list, BY_NAME);
+		return list;
+	}
+
+	/**
+	 *
+	 * @param category A saved category.
+	 * @return A snapshot where <code>category</code> replaces the one with the same id, or is added to the catalogue.
+	 */
+	public CatalogSnapshot withCategory(ComponentCategory category) {
+		Integer slot = categoryIndex.get(category.getId());
+		ComponentCategory[] categorySlots;
+		Map<String, Integer> index = categoryIndex;
+		int[][] rows = members;
+
+		if(slot == null) {
+			slot = categories.length;
+			categorySlots = Arrays.copyOf(categories, slot + 1);
+			rows = Arrays.copyOf(members, slot + 1);
+			rows[slot] = NO_SLOTS;
+			index = new HashMap<String, Integer>(categoryIndex);
+			index.put(category.getId(), slot);
+		}else {
+			categorySlots = categories.clone();
+		}
+		categorySlots[slot] = detach(category);
+
+		return new CatalogSnapshot(categorySlots, index, rows, components, categoryOf, componentIndex, nameIndex, empty);
+	}
+
+	/**
+	 *
+	 * @param id Primary key of a removed category.
+	 * @return A snapshot without the category and its components.
+	 */
+	public CatalogSnapshot withoutCategory(String id) {
+		Integer slot = categoryIndex.get(id);
+		CatalogSnapshot snapshot = this;
+		ComponentCategory[] categorySlots;
+		Map<String, Integer> index;
+
+		if(slot == null)
+			return this;
+
+		for(int componentSlot: members[slot])
+			snapshot = snapshot.withoutComponent(components[componentSlot].getId());
+
+		slot = snapshot.categoryIndex.get(id); // Compaction may have moved it.
+		categorySlots = snapshot.categories.clone();
+		categorySlots[slot] = null;
+		index = new HashMap<String, Integer>(snapshot.categoryIndex);
+		index.remove(id);
+
+		return new CatalogSnapshot(
+			categorySlots, index, snapshot.members, snapshot.components, snapshot.categoryOf,
+			snapshot.componentIndex, snapshot.nameIndex, snapshot.empty
+		);
+	}
+
+	/**
+	 *
+	 * @param component A saved component; its category only needs to carry the id.
+	 * @return A snapshot where <code>component</code> replaces the one with the same id, or is added to the catalogue.
+	 */
+	public CatalogSnapshot withComponent(Component component) {
+		CatalogSnapshot source = this;
+		ComponentCategory category = component.getCategory();
+		Integer slot = componentIndex.get(component.getId());
+		Integer categorySlot = null;
+		Component[] componentSlots;
+		int[] categories;
+		int[][] rows;
+		Map<String, Integer> index = componentIndex;
+		Map<String, Integer> names = nameIndex;
+		Component stored = detach(component);
+		Component previous = null;
+		int previousCategory = -1;
+
+		if(category != null && category.getId() != null) {
+			categorySlot = categoryIndex.get(category.getId());
+			if(categorySlot == null) {
+				source = withCategory(category);
+				categorySlot = source.categoryIndex.get(category.getId());
+			}
+		}
+
+		if(slot == null) {
+			slot = source.components.length;
+			componentSlots = Arrays.copyOf(source.components, slot + 1);
+			categories = Arrays.copyOf(source.categoryOf, slot + 1);
+			index = new HashMap<String, Integer>(componentIndex);
+			index.put(component.getId(), slot);
+		}else {
+			previous = source.components[slot];
+			previousCategory = source.categoryOf[slot];
+			componentSlots = source.components.clone();
+			categories = source.categoryOf.clone();
+		}
+		componentSlots[slot] = stored;
+		categories[slot] = categorySlot == null ? -1 : categorySlot;
+
+		rows = source.members;
+		if(previousCategory != categories[slot]) {
+			rows = rows.clone();
+			if(previousCategory >= 0)
+				rows[previousCategory] = remove(rows[previousCategory], slot);
+			if(categories[slot] >= 0)
+				rows[categories[slot]] = insert(rows[categories[slot]], slot, componentSlots);
+		}
+
+		if(previous == null || !equal(previous.getName(), stored.getName())) {
+			names = new HashMap<String, Integer>(nameIndex);
+			if(previous != null && previous.getName() != null && slot.equals(names.get(previous.getName())))
+				names.remove(previous.getName());
+			if(stored.getName() != null)
+				names.put(stored.getName(), slot);
+		}
+
+		return new CatalogSnapshot(source.categories, source.categoryIndex, rows, componentSlots, categories, index, names, empty);
+	}
+
+	/**
+	 * <p>Publishes stock adjustments as the absolute levels they left in the database, not as deltas, so a save published 
+	 * out of order can't make an adjustment count twice.</p>
+	 * @param levels Id-only components with the stock and version an adjustment left in the database.
+	 * @return A snapshot carrying those levels; components whose version here is already as recent keep theirs.
+	 */
+	public CatalogSnapshot withStock(Collection<Component> levels) {
+		Component[] componentSlots = null;
+
+		for(Component level: levels) {
+			Integer slot = componentIndex.get(level.getId());
+			Long current;
+			Component component;
+
+			if(slot == null)
+				continue;
+			current = components[slot].getVersion();
+			if(current != null && level.getVersion() != null && current >= level.getVersion())
+				continue; // A later save was published first and already holds this adjustment.
+			if(componentSlots == null)
+				componentSlots = components.clone();
+			component = detach(componentSlots[slot]);
+			component.setStock(level.getStock());
+			component.setVersion(level.getVersion());
+			componentSlots[slot] = component;
+		}
+
+		if(componentSlots == null)
+			return this;
+		return new CatalogSnapshot(categories, categoryIndex, members, componentSlots, categoryOf, componentIndex, nameIndex, empty);
+	}
+
+	/**
+	 *
+	 * @param id Primary key of a component.
+	 * @return <code>true</code> if the catalogue holds it.
+	 */
+	public boolean contains(String id) {
+		return componentIndex.containsKey(id);
+	}
+
+	/**
+	 *
+	 * @param id Primary key of a removed component.
+	 * @return A snapshot without the component.
+	 */
+	public CatalogSnapshot withoutComponent(String id) {
+		Integer slot = componentIndex.get(id);
+		Component previous;
+		Component[] componentSlots;
+		int[] categories;
+		int[][] rows = members;
+		Map<String, Integer> index, names = nameIndex;
+
+		if(slot == null)
+			return this;
+
+		previous = components[slot];
+		componentSlots = components.clone();
+		categories = categoryOf.clone();
+		if(categoryOf[slot] >= 0) {
+			rows = members.clone();
+			rows[categoryOf[slot]] = remove(rows[categoryOf[slot]], slot);
+		}
+		componentSlots[slot] = null;
+		categories[slot] = -1;
+
+		index = new HashMap<String, Integer>(componentIndex);
+		index.remove(id);
+		if(previous.getName() != null && slot.equals(nameIndex.get(previous.getName()))) {
+			names = new HashMap<String, Integer>(nameIndex);
+			names.remove(previous.getName());
+		}
+
+		if(empty + 1 > COMPACTION_THRESHOLD && empty + 1 > index.size())
+			return compact(componentSlots, categories);
+		return new CatalogSnapshot(this.categories, categoryIndex, rows, componentSlots, categories, index, names, empty + 1);
+	}
+
+	private CatalogSnapshot compact(Component[] componentSlots, int[] categories) {
+		List<ComponentCategory> categoryList = new ArrayList<ComponentCategory>(categoryIndex.size());
+		List<Component> componentList = new ArrayList<Component>(componentSlots.length);
+
+		for(ComponentCategory category: this.categories)
+			if(category != null)
+				categoryList.add(category);
+
+		for(int slot = 0; slot < componentSlots.length; slot++) {
+			if(componentSlots[slot] == null)
+				continue;
+			Component component = detach(componentSlots[slot]);
+			component.setCategory(categories[slot] < 0 ? null : this.categories[categories[slot]]);
+			componentList.add(component);
+		}
+		return build(categoryList, componentList);
+	}
+
+	/**
+	 *
+	 * @return Index of the first element in <code>row</code> whose component id is greater than <code>after</code>.
+	 */
+	private int successor(int[] row, String after) {
+		int low = 0, high = row.length;
+
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(components[row[middle]].getId().compareTo(after) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private static int[] insert(int[] row, int slot, Component[] componentSlots) {
+		String id = componentSlots[slot].getId();
+		int low = 0, high = row.length;
+		int[] result = new int[row.length + 1];
+
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(componentSlots[row[middle]].getId().compareTo(id) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		System.arraycopy(row, 0, result, 0, low);
+		result[low] = slot;
+		System.arraycopy(row, low, result, low + 1, row.length - low);
+		return result;
+	}
+
+	private static int[] remove(int[] row, int slot) {
+		int[] result;
+
+		for(int index = 0; index < row.length; index++) {
+			if(row[index] == slot) {
+				if(row.length == 1)
+					return NO_SLOTS;
+				result = new int[row.length - 1];
+				System.arraycopy(row, 0, result, 0, index);
+				System.arraycopy(row, index + 1, result, index, row.length - index - 1);
+				return result;
+			}
+		}
+		return row;
+	}
+
+	private static boolean equal(String left, String right) {
+		return left == null ? right == null : left.equals(right);
+	}
+
+	private Component copy(int slot) {
+		Component component = detach(components[slot]);
+
+		if(categoryOf[slot] >= 0)
+			component.setCategory(detach(categories[categoryOf[slot]]));
+		return component;
+	}
+
+	private static ComponentCategory detach(ComponentCategory category) {
+		ComponentCategory copy = new ComponentCategory(category.getId(), category.getName() == null ? null : category.getName().intern());
+
+		copy.setVersion(category.getVersion());
+		return copy;
+	}
+
+	private static Component detach(Component component) {
+		Component copy = new Component(component.getId(), component.getName() == null ? null : component.getName().intern());
+
+		copy.setPackageUnit(component.getPackageUnit());
+		copy.setPackageSize(component.getPackageSize());
+		copy.setStock(component.getStock());
+		copy.setPrice(component.getPrice());
+		copy.setPhotoId(component.getPhotoId());
+		copy.setVersion(component.getVersion());
+		return copy;
+	}
+}
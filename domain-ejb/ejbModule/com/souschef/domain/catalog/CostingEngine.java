@@ -0,0 +1,253 @@
+package com.souschef.domain.catalog;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.IngredientLine;
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Keeps the cost of every recipe computed from its ingredients and the current component prices.</p>
+ * <p>A component's price is for a package of <code>packageSize</code> <code>packageUnit</code>s, so each ingredient costs its
+ * amount, converted to the package unit through {@link Unit#convert(double, Unit)}, times the price per package unit.
+ * A reverse index from components to the recipes using them limits the work after a price change to the affected
+ * recipes; every other cost stays cached. A recipe whose ingredients can't be costed (unknown component, no package size,
+ * or units of different dimensions) has no cost.</p>
+ * <p>Like {@link Catalog}, the engine ignores updates until it's loaded, and it's kept in sync by the managers once their
+ * transactions commit. Costs are read without locking.</p>
+ * @author rsolano
+ *
+ */
+public class CostingEngine {
+
+	/**
+	 * <p>Price of one package unit of a component.</p>
+	 */
+	private static class Price {
+		final double perUnit;
+		final Unit unit;
+
+		Price(Component component) {
+			this.unit = component.getPackageUnit();
+			this.perUnit = component.getPackageSize() > 0 && unit != null ? component.getPrice() / component.getPackageSize() : Double.NaN;
+		}
+
+		boolean same(Price price) {
+			return unit == price.unit && Double.compare(perUnit, price.perUnit) == 0;
+		}
+	}
+
+	/**
+	 * <p>A recipe's bill of materials in parallel arrays.</p>
+	 */
+	private static class Lines {
+		final String[] components;
+		final double[] amounts;
+		final Unit[] units;
+
+		Lines(int size) {
+			components = new String[size];
+			amounts = new double[size];
+			units = new Unit[size];
+		}
+	}
+
+	private static final CostingEngine instance = new CostingEngine();
+
+	private final Map<String, Price> prices = new HashMap<String, Price>();
+
+	private final Map<String, Lines> recipes = new HashMap<String, Lines>();
+
+	private final Map<String, Set<String>> usages = new HashMap<String, Set<String>>(); // component id -> recipe ids
+
+	private final ConcurrentMap<String, Double> costs = new ConcurrentHashMap<String, Double>();
+
+	private volatile boolean loaded;
+
+	private CostingEngine() {
+
+	}
+
+	public static CostingEngine getInstance() {
+		return instance;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * <p>Replaces the engine's content and costs every recipe. Callers must hold this object's monitor while reading the
+	 * database, so no update committed during the load is lost.</p>
+	 * @param components Every component with its price.
+	 * @param lines Every recipe's ingredients.
+	 */
+	public synchronized void load(List<Component> components, List<IngredientLine> lines) {
+		Map<String, Integer> sizes = new HashMap<String, Integer>();
+		Map<String, Integer> filled = new HashMap<String, Integer>();
+
+		prices.clear();
+		recipes.clear();
+		usages.clear();
+		costs.clear();
+
+		for(Component component: components)
+			prices.put(component.getId(), new Price(component));
+
+		for(IngredientLine line: lines) {
+			Integer size = sizes.get(line.getRecipeId());
+			sizes.put(line.getRecipeId(), size == null ? 1 : size + 1);
+		}
+		for(Entry<String, Integer> entry: sizes.entrySet()) {
+			recipes.put(entry.getKey(), new Lines(entry.getValue()));
+			filled.put(entry.getKey(), 0);
+		}
+		for(IngredientLine line: lines) {
+			Lines recipe = recipes.get(line.getRecipeId());
+			int index = filled.put(line.getRecipeId(), filled.get(line.getRecipeId()) + 1);
+
+			recipe.components[index] = line.getComponentId();
+			recipe.amounts[index] = line.getAmount();
+			recipe.units[index] = line.getUnit();
+		}
+
+		for(Entry<String, Lines> entry: recipes.entrySet()) {
+			link(entry.getKey(), entry.getValue());
+			costs.put(entry.getKey(), cost(entry.getValue()));
+		}
+		loaded = true;
+	}
+
+	/**
+	 * <p>Records a component's price; the recipes using it are costed again only if its price per package unit changed.</p>
+	 * @param component A saved component.
+	 */
+	public synchronized void putComponent(Component component) {
+		Price price = new Price(component);
+		Price previous;
+
+		if(!loaded)
+			return;
+		previous = prices.put(component.getId(), price);
+		if(previous == null || !previous.same(price))
+			recost(component.getId());
+	}
+
+	public synchronized void removeComponent(String id) {
+		if(!loaded)
+			return;
+		if(prices.remove(id) != null)
+			recost(id);
+	}
+
+	/**
+	 * <p>Records a recipe's ingredients and costs it again.</p>
+	 * @param id Recipe's primary key.
+	 * @param ingredients Its ingredients; only their amount, unit and component id are read.
+	 */
+	public synchronized void putRecipe(String id, List<Ingredient> ingredients) {
+		Lines lines = new Lines(ingredients == null ? 0 : ingredients.size());
+
+		if(!loaded)
+			return;
+		for(int index = 0; index < lines.components.length; index++) {
+			Ingredient ingredient = ingredients.get(index);
+
+			lines.components[index] = ingredient.getComponent() == null ? null : ingredient.getComponent().getId();
+			lines.amounts[index] = ingredient.getAmount();
+			lines.units[index] = ingredient.getUnit();
+		}
+
+		unlink(id, recipes.put(id, lines));
+		link(id, lines);
+		costs.put(id, cost(lines));
+	}
+
+	public synchronized void removeRecipe(String id) {
+		if(!loaded)
+			return;
+		unlink(id, recipes.remove(id));
+		costs.remove(id);
+	}
+
+	/**
+	 *
+	 * @param recipeId Recipe's primary key.
+	 * @return The recipe's cost or <code>null</code> if it's unknown or can't be computed.
+	 */
+	public Double cost(String recipeId) {
+		Double cost = costs.get(recipeId);
+		return cost == null || cost.isNaN() ? null : cost;
+	}
+
+	/**
+	 *
+	 * @return The cost of every recipe that can be costed, keyed by recipe id.
+	 */
+	public Map<String, Double> costs() {
+		Map<String, Double> result = new HashMap<String, Double>(costs.size() * 2);
+
+		for(Entry<String, Double> entry: costs.entrySet())
+			if(!entry.getValue().isNaN())
+				result.put(entry.getKey(), entry.getValue());
+		return result;
+	}
+
+	private void recost(String componentId) {
+		Set<String> affected = usages.get(componentId);
+
+		if(affected == null)
+			return;
+		for(String recipeId: affected)
+			costs.put(recipeId, cost(recipes.get(recipeId)));
+	}
+
+	private double cost(Lines lines) {
+		double total = 0;
+
+		for(int index = 0; index < lines.components.length; index++) {
+			Price price = lines.components[index] == null ? null : prices.get(lines.components[index]);
+			Unit unit = lines.units[index];
+
+			if(price == null || price.unit == null)
+				return Double.NaN;
+			total += (unit == null ? lines.amounts[index] : unit.convert(lines.amounts[index], price.unit)) * price.perUnit;
+		}
+		return total;
+	}
+
+	private void link(String recipeId, Lines lines) {
+		for(String componentId: lines.components) {
+			Set<String> users;
+
+			if(componentId == null)
+				continue;
+			users = usages.get(componentId);
+			if(users == null)
+				usages.put(componentId, users = new HashSet<String>());
+			users.add(recipeId);
+		}
+	}
+
+	private void unlink(String recipeId, Lines lines) {
+		if(lines == null)
+			return;
+		for(String componentId: lines.components) {
+			Set<String> users = componentId == null ? null : usages.get(componentId);
+
+			if(users == null)
+				continue;
+			users.remove(recipeId);
+			if(users.isEmpty())
+				usages.remove(componentId);
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package com.souschef.domain.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.IngredientLine;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.Unit;
+
+/**
+ * <p>Tracks which recipes can be cooked with the current stock.</p>
+ * <p>A recipe needs, from each of its components, a number of packages: the sum of its ingredient amounts converted to the
+ * component's package unit, divided by the package size. For every component the engine keeps the (recipe, packages) pairs
+ * sorted by packages, and for every recipe the number of components whose stock falls short. A stock change from
+ * <code>s0</code> to <code>s1</code> only visits the pairs whose requirement lies between both values, found by binary
+ * search; recipes whose shortfall count drops to zero are set in a {@link BitSet}, so listing them is a bit scan.</p>
+ * <p>Like {@link Catalog}, the engine ignores updates until it's loaded, and it's kept in sync by the managers once their
+ * transactions commit.</p>
+ * @author rsolano
+ *
+ */
+public class FeasibilityEngine {
+
+	/**
+	 * <p>Requirements on one component, sorted by packages.</p>
+	 */
+	private static class Usages {
+		double[] packages = new double[4];
+		int[] recipes = new int[4];
+		int size;
+
+		void add(int recipe, double required) {
+			int index = upper(required);
+
+			if(size == recipes.length) {
+				packages = Arrays.copyOf(packages, size * 2);
+				recipes = Arrays.copyOf(recipes, size * 2);
+			}
+			System.arraycopy(packages, index, packages, index + 1, size - index);
+			System.arraycopy(recipes, index, recipes, index + 1, size - index);
+			packages[index] = required;
+			recipes[index] = recipe;
+			size++;
+		}
+
+		void remove(int recipe) {
+			for(int index = 0; index < size; index++) {
+				if(recipes[index] == recipe) {
+					System.arraycopy(packages, index + 1, packages, index, size - index - 1);
+					System.arraycopy(recipes, index + 1, recipes, index, size - index - 1);
+					size--;
+					return;
+				}
+			}
+		}
+
+		/**
+		 *
+		 * @return Index of the first requirement greater than <code>value</code>.
+		 */
+		int upper(double value) {
+			int low = 0, high = size;
+
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(packages[middle] <= value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * <p>A recipe's ingredients; <code>components</code> holds each component slot once.</p>
+	 */
+	private static class Lines {
+		final int[] lineComponents;
+		final double[] amounts;
+		final Unit[] units;
+		final int[] components;
+
+		Lines(int[] lineComponents, double[] amounts, Unit[] units) {
+			int[] distinct = lineComponents.clone();
+			int size = 0;
+
+			Arrays.sort(distinct);
+			for(int index = 0; index < distinct.length; index++)
+				if(index == 0 || distinct[index] != distinct[index - 1])
+					distinct[size++] = distinct[index];
+
+			this.lineComponents = lineComponents;
+			this.amounts = amounts;
+			this.units = units;
+			this.components = Arrays.copyOf(distinct, size);
+		}
+	}
+
+	private static final FeasibilityEngine instance = new FeasibilityEngine();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Integer> componentSlots = new HashMap<String, Integer>();
+
+	private double[] stock = new double[64];
+
+	private double[] packageSizes = new double[64];
+
+	private Unit[] packageUnits = new Unit[64];
+
+	private Usages[] usages = new Usages[64];
+
+	private int componentCount;
+
+	private final Map<String, Integer> recipeSlots = new HashMap<String, Integer>();
+
+	private RecipeSummary[] summaries = new RecipeSummary[64];
+
+	private Lines[] lines = new Lines[64];
+
+	private int[] missing = new int[64];
+
+	private final List<Integer> freeRecipes = new ArrayList<Integer>();
+
+	private int recipeCount;
+
+	private final BitSet feasible = new BitSet();
+
+	private volatile boolean loaded;
+
+	private FeasibilityEngine() {
+
+	}
+
+	public static FeasibilityEngine getInstance() {
+		return instance;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * <p>Replaces the engine's content. Callers must hold this object's monitor while reading the database, so no update
+	 * committed during the load is lost.</p>
+	 * @param components Every component with its stock and package.
+	 * @param recipes Every recipe.
+	 * @param ingredients Every recipe's ingredients.
+	 */
+	public synchronized void load(List<Component> components, List<RecipeSummary> recipes, List<IngredientLine> ingredients) {
+		Map<String, List<IngredientLine>> grouped = new LinkedHashMap<String, List<IngredientLine>>();
+
+		lock.writeLock().lock();
+		try {
+			componentSlots.clear();
+			Arrays.fill(usages, null);
+			componentCount = 0;
+			recipeSlots.clear();
+			Arrays.fill(summaries, null);
+			Arrays.fill(lines, null);
+			freeRecipes.clear();
+			recipeCount = 0;
+			feasible.clear();
+
+			for(Component component: components)
+				setComponent(component.getId(), component.getStock(), component.getPackageUnit(), component.getPackageSize());
+
+			for(RecipeSummary recipe: recipes)
+				grouped.put(recipe.getId(), new ArrayList<IngredientLine>());
+			for(IngredientLine line: ingredients)
+				if(grouped.containsKey(line.getRecipeId()))
+					grouped.get(line.getRecipeId()).add(line);
+
+			for(RecipeSummary recipe: recipes) {
+				List<IngredientLine> list = grouped.get(recipe.getId());
+				int[] lineComponents = new int[list.size()];
+				double[] amounts = new double[list.size()];
+				Unit[] units = new Unit[list.size()];
+
+				for(int index = 0; index < lineComponents.length; index++) {
+					lineComponents[index] = componentSlot(list.get(index).getComponentId());
+					amounts[index] = list.get(index).getAmount();
+					units[index] = list.get(index).getUnit();
+				}
+				addRecipe(recipe, new Lines(lineComponents, amounts, units));
+			}
+			loaded = true;
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Records a saved component's stock and package.</p>
+	 */
+	public synchronized void putComponent(Component component) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			setComponent(component.getId(), component.getStock(), component.getPackageUnit(), component.getPackageSize());
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Treats a removed component as out of stock for good.</p>
+	 */
+	public synchronized void removeComponent(String id) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			if(componentSlots.containsKey(id))
+				setComponent(id, 0, null, 0);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Records stock levels after adjustments; levels rather than deltas, so a level already read by a concurrent
+	 * load isn't counted twice.</p>
+	 * @param levels Current stock keyed by component id.
+	 */
+	public synchronized void putStock(Map<String, Double> levels) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			for(Entry<String, Double> entry: levels.entrySet()) {
+				Integer slot = componentSlots.get(entry.getKey());
+				if(slot != null)
+					setStock(slot, entry.getValue());
+			}
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Records a saved recipe's ingredients.</p>
+	 * @param summary The recipe's id, name and price.
+	 * @param ingredients Its ingredients; only their amount, unit and component id are read.
+	 */
+	public synchronized void putRecipe(RecipeSummary summary, List<Ingredient> ingredients) {
+		int size = ingredients == null ? 0 : ingredients.size();
+		int[] lineComponents = new int[size];
+		double[] amounts = new double[size];
+		Unit[] units = new Unit[size];
+
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			for(int index = 0; index < size; index++) {
+				Ingredient ingredient = ingredients.get(index);
+
+				lineComponents[index] = componentSlot(ingredient.getComponent() == null ? null : ingredient.getComponent().getId());
+				amounts[index] = ingredient.getAmount();
+				units[index] = ingredient.getUnit();
+			}
+			deleteRecipe(summary.getId());
+			addRecipe(summary, new Lines(lineComponents, amounts, units));
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public synchronized void removeRecipe(String id) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			deleteRecipe(id);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 *
+	 * @return Recipes whose every component has enough stock.
+	 */
+	public List<RecipeSummary> feasibleRecipes() {
+		List<RecipeSummary> list;
+
+		lock.readLock().lock();
+		try {
+			list = new ArrayList<RecipeSummary>(feasible.cardinality());
+			for(int slot = feasible.nextSetBit(0); slot >= 0; slot = feasible.nextSetBit(slot + 1))
+				list.add(summaries[slot]);
+			return list;
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 *
+	 * @param id Recipe's primary key.
+	 * @return <code>true</code> if the recipe exists and every component has enough stock.
+	 */
+	public boolean isFeasible(String id) {
+		lock.readLock().lock();
+		try {
+			Integer slot = recipeSlots.get(id);
+			return slot != null && feasible.get(slot);
+		}finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int componentSlot(String id) {
+		Integer slot = componentSlots.get(id);
+
+		if(slot == null)
+			slot = setComponent(id, 0, null, 0); // Unknown components have no stock and can't be converted.
+		return slot;
+	}
+
+	private int setComponent(String id, double value, Unit packageUnit, int packageSize) {
+		Integer slot = componentSlots.get(id);
+
+		if(slot == null) {
+			slot = componentCount++;
+			if(slot == usages.length) {
+				stock = Arrays.copyOf(stock, slot * 2);
+				packageSizes = Arrays.copyOf(packageSizes, slot * 2);
+				packageUnits = Arrays.copyOf(packageUnits, slot * 2);
+				usages = Arrays.copyOf(usages, slot * 2);
+			}
+			componentSlots.put(id, slot);
+			usages[slot] = new Usages();
+			stock[slot] = value;
+			packageUnits[slot] = packageUnit;
+			packageSizes[slot] = packageSize;
+			return slot;
+		}
+
+		if(packageUnits[slot] != packageUnit || packageSizes[slot] != packageSize) {
+			repackage(slot, value, packageUnit, packageSize);
+		}else {
+			setStock(slot, value);
+		}
+		return slot;
+	}
+
+	/**
+	 * <p>Flips the recipes whose requirement on <code>slot</code> lies between its old and new stock.</p>
+	 */
+	private void setStock(int slot, double value) {
+		Usages usage = usages[slot];
+		double previous = stock[slot];
+		int index;
+
+		stock[slot] = value;
+		if(value > previous) {
+			for(index = usage.upper(previous); index < usage.size && usage.packages[index] <= value; index++)
+				if(--missing[usage.recipes[index]] == 0)
+					feasible.set(usage.recipes[index]);
+		}else if(value < previous) {
+			for(index = usage.upper(value); index < usage.size && usage.packages[index] <= previous; index++)
+				if(missing[usage.recipes[index]]++ == 0)
+					feasible.clear(usage.recipes[index]);
+		}
+	}
+
+	/**
+	 * <p>A new package unit or size changes every requirement on the component, so they're computed again.</p>
+	 */
+	private void repackage(int slot, double value, Unit packageUnit, int packageSize) {
+		Usages previous = usages[slot];
+		Usages current = new Usages();
+
+		for(int index = 0; index < previous.size; index++)
+			if(stock[slot] < previous.packages[index] && --missing[previous.recipes[index]] == 0)
+				feasible.set(previous.recipes[index]);
+
+		stock[slot] = value;
+		packageUnits[slot] = packageUnit;
+		packageSizes[slot] = packageSize;
+
+		for(int index = 0; index < previous.size; index++) {
+			int recipe = previous.recipes[index];
+			double required = required(lines[recipe], slot);
+
+			current.add(recipe, required);
+			if(value < required && missing[recipe]++ == 0)
+				feasible.clear(recipe);
+		}
+		usages[slot] = current;
+	}
+
+	/**
+	 *
+	 * @return Packages of <code>slot</code> the recipe needs; infinite when its amounts can't be converted.
+	 */
+	private double required(Lines recipe, int slot) {
+		double amount = 0;
+
+		if(packageUnits[slot] == null || packageSizes[slot] <= 0)
+			return Double.POSITIVE_INFINITY;
+		for(int index = 0; index < recipe.lineComponents.length; index++)
+			if(recipe.lineComponents[index] == slot)
+				amount += recipe.units[index] == null ? recipe.amounts[index] : recipe.units[index].convert(recipe.amounts[index], packageUnits[slot]);
+		return Double.isNaN(amount) ? Double.POSITIVE_INFINITY : amount / packageSizes[slot];
+	}
+
+	private void addRecipe(RecipeSummary summary, Lines recipe) {
+		int slot;
+
+		if(freeRecipes.isEmpty()) {
+			slot = recipeCount++;
+			if(slot == lines.length) {
+				summaries = Arrays.copyOf(summaries, slot * 2);
+				lines = Arrays.copyOf(lines, slot * 2);
+				missing = Arrays.copyOf(missing, slot * 2);
+			}
+		}else {
+			slot = freeRecipes.remove(freeRecipes.size() - 1);
+		}
+		recipeSlots.put(summary.getId(), slot);
+		summaries[slot] = summary;
+		lines[slot] = recipe;
+		missing[slot] = 0;
+
+		for(int component: recipe.components) {
+			double required = required(recipe, component);
+
+			usages[component].add(slot, required);
+			if(stock[component] < required)
+				missing[slot]++;
+		}
+		feasible.set(slot, missing[slot] == 0);
+	}
+
+	private void deleteRecipe(String id) {
+		Integer slot = recipeSlots.remove(id);
+
+		if(slot == null)
+			return;
+		for(int component: lines[slot].components)
+			usages[component].remove(slot);
+		summaries[slot] = null;
+		lines[slot] = null;
+		feasible.clear(slot);
+		freeRecipes.add(slot);
+	}
+}
@@ -0,0 +1,425 @@
+package com.souschef.domain.catalog;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import com.souschef.domain.data.model.SearchResult;
+
+/**
+ * <p>In-memory type-ahead index over entity names.</p>
+ * <p>Names are folded (accents stripped, lower case, punctuation turned into blanks) so "Jalapeño" and "jalapeno" are the same key.
+ * Two inverted indexes map to document numbers: a sorted map of words, whose range scan answers prefix queries, and a map of
+ * trigrams used for fuzzy matches when prefixes alone don't fill the requested number of results.</p>
+ * <p>Like {@link Catalog}, an index ignores updates until it's loaded, and it's kept in sync by the managers once their
+ * transactions commit.</p>
+ * @author rsolano
+ *
+ */
+public class SearchIndex {
+
+	/**
+	 * Minimum share of the query's trigrams a name must contain to be a fuzzy match.
+	 */
+	public static final double FUZZY_THRESHOLD = 0.5;
+
+	/**
+	 * Upper bound on prefix candidates examined per query, so one-letter queries stay cheap on large indexes.
+	 */
+	public static final int CANDIDATE_LIMIT = 1000;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{Alnum}]+");
+
+	private static final String[] NO_WORDS = new String[0];
+
+	private static final SearchIndex components = new SearchIndex(SearchResult.COMPONENT);
+
+	private static final SearchIndex recipes = new SearchIndex(SearchResult.RECIPE);
+
+	private static final Comparator<SearchResult> WORST_FIRST = new Comparator<SearchResult>() {
+		@Override
+		public int compare(SearchResult left, SearchResult right) {
+			return -SearchResult.BEST_FIRST.compare(left, right);
+		}
+	};
+
+	private static class Document {
+		final String id;
+		final String name;
+		final String folded;
+		final String[] words;
+		final String[] grams;
+
+		Document(String id, String name) {
+			this.id = id;
+			this.name = name;
+			this.folded = fold(name);
+			this.words = words(folded);
+			this.grams = grams(folded);
+		}
+	}
+
+	/**
+	 * <p>Sorted set of document numbers.</p>
+	 */
+	private static class Postings {
+		int[] documents = new int[2];
+		int size;
+
+		void add(int document) {
+			int index = Arrays.binarySearch(documents, 0, size, document);
+
+			if(index >= 0)
+				return;
+			index = -index - 1;
+			if(size == documents.length)
+				documents = Arrays.copyOf(documents, size * 2);
+			System.arraycopy(documents, index, documents, index + 1, size - index);
+			documents[index] = document;
+			size++;
+		}
+
+		void remove(int document) {
+			int index = Arrays.binarySearch(documents, 0, size, document);
+
+			if(index < 0)
+				return;
+			System.arraycopy(documents, index + 1, documents, index, size - index - 1);
+			size--;
+		}
+	}
+
+	private final String type;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Integer> numbers = new HashMap<String, Integer>();
+
+	private final List<Document> documents = new ArrayList<Document>();
+
+	private final List<Integer> free = new ArrayList<Integer>();
+
+	private final NavigableMap<String, Postings> words = new TreeMap<String, Postings>();
+
+	private final Map<String, Postings> grams = new HashMap<String, Postings>();
+
+	private volatile boolean loaded;
+
+	private SearchIndex(String type) {
+		this.type = type;
+	}
+
+	/**
+	 *
+	 * @param type Either {@link SearchResult#COMPONENT} or {@link SearchResult#RECIPE}.
+	 * @return The index of the given entity type.
+	 */
+	public static SearchIndex getInstance(String type) {
+		if(SearchResult.COMPONENT.equals(type))
+			return components;
+		if(SearchResult.RECIPE.equals(type))
+			return recipes;
+		throw new IllegalArgumentException(type);
+	}
+
+	/**
+	 *
+	 * @param text Any text; may be <code>null</code>.
+	 * @return <code>text</code> without diacritics, in lower case, with single blanks between words.
+	 */
+	public static String fold(String text) {
+		if(text == null)
+			return "";
+		text = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+		return SEPARATORS.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+	}
+
+	private static String[] words(String folded) {
+		if(folded.isEmpty())
+			return NO_WORDS;
+		return new LinkedHashSet<String>(Arrays.asList(folded.split(" "))).toArray(NO_WORDS);
+	}
+
+	private static String[] grams(String folded) {
+		String padded = " " + folded + " ";
+		Set<String> set = new LinkedHashSet<String>();
+
+		for(int index = 0; index + 3 <= padded.length(); index++)
+			set.add(padded.substring(index, index + 3));
+		return set.toArray(NO_WORDS);
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * <p>Replaces the index's content. Callers must hold this object's monitor while reading the database, so no update
+	 * committed during the load is lost.</p>
+	 * @param names Entity names keyed by primary key.
+	 */
+	public synchronized void load(Map<String, String> names) {
+		lock.writeLock().lock();
+		try {
+			numbers.clear();
+			documents.clear();
+			free.clear();
+			words.clear();
+			grams.clear();
+			for(Entry<String, String> entry: names.entrySet())
+				add(entry.getKey(), entry.getValue());
+			loaded = true;
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Adds an entity or renames it; it's ignored until the index is loaded.</p>
+	 */
+	public synchronized void put(String id, String name) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			remove(id);
+			add(id, name);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Drops an entity; it's ignored until the index is loaded.</p>
+	 */
+	public synchronized void delete(String id) {
+		if(!loaded)
+			return;
+		lock.writeLock().lock();
+		try {
+			remove(id);
+		}finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 *
+	 * @param query Text typed so far.
+	 * @param limit Maximum number of results.
+	 * @return Up to <code>limit</code> matches, best first.
+	 */
+	public List<SearchResult> search(String query, int limit) {
+		String folded = fold(query);
+		String[] tokens = words(folded);
+		PriorityQueue<SearchResult> top = new PriorityQueue<SearchResult>(limit + 1, WORST_FIRST);
+		Set<Integer> matched = new HashSet<Integer>();
+		List<SearchResult> results;
+
+		if(tokens.length == 0 || limit < 1)
+			return new ArrayList<SearchResult>(0);
+
+		lock.readLock().lock();
+		try {
+			prefixMatches(folded, tokens, limit, matched, top);
+			if(top.size() < limit && folded.length() >= 3)
+				fuzzyMatches(folded, limit, matched, top);
+		}finally {
+			lock.readLock().unlock();
+		}
+
+		results = new ArrayList<SearchResult>(top);
+		Collections.sort(results, SearchResult.BEST_FIRST);
+		return results;
+	}
+
+	/**
+	 * <p>Candidates are the documents with a word starting with the query's rarest-looking (longest) token; each one must
+	 * also have words starting with every other token.</p>
+	 */
+	private void prefixMatches(String folded, String[] tokens, int limit, Set<Integer> matched, PriorityQueue<SearchResult> top) {
+		String longest = tokens[0];
+		int examined = 0;
+
+		for(String token: tokens)
+			if(token.length() > longest.length())
+				longest = token;
+
+		for(Entry<String, Postings> entry: words.subMap(longest, true, longest + Character.MAX_VALUE, false).entrySet()) {
+			Postings postings = entry.getValue();
+
+			for(int index = 0; index < postings.size && examined < CANDIDATE_LIMIT; index++) {
+				int number = postings.documents[index];
+				Document document = documents.get(number);
+
+				examined++;
+				if(matched.contains(number))
+					continue;
+				if(document.folded.startsWith(folded)) {
+					offer(document, 3, limit, top);
+				}else if(startsWords(document, tokens)) {
+					offer(document, 2, limit, top);
+				}else {
+					continue;
+				}
+				matched.add(number);
+			}
+			if(examined >= CANDIDATE_LIMIT)
+				break;
+		}
+	}
+
+	/**
+	 * <p>Scores documents sharing trigrams with the query by the fraction of the query's trigrams they contain, so a typo
+	 * in a long name costs as much as in a short one.</p>
+	 * <p>A match must contain <code>required</code> of the query's <code>n</code> trigrams, hence at least one of its
+	 * <code>n - required + 1</code> rarest ones: only those posting lists are scanned to collect candidates, counting hits in an
+	 * array indexed by document number, and the common trigrams are then probed by binary search for each candidate.</p>
+	 */
+	private void fuzzyMatches(String folded, int limit, Set<Integer> matched, PriorityQueue<SearchResult> top) {
+		String[] queryGrams = grams(folded);
+		int required = (int)Math.ceil(FUZZY_THRESHOLD * queryGrams.length);
+		List<Postings> lists = new ArrayList<Postings>(queryGrams.length);
+		int[] counts;
+		int[] touched = new int[64];
+		int size = 0, scanned;
+
+		for(String gram: queryGrams) {
+			Postings postings = grams.get(gram);
+			if(postings != null)
+				lists.add(postings);
+		}
+		if(lists.size() < required)
+			return;
+		Collections.sort(lists, new Comparator<Postings>() {
+			@Override
+			public int compare(Postings left, Postings right) {
+				return left.size - right.size;
+			}
+		});
+		scanned = Math.min(lists.size(), queryGrams.length - required + 1);
+
+		counts = new int[documents.size()]; // Allocated per call: a pooled thread would otherwise pin one per index for good.
+
+		for(int list = 0; list < scanned; list++) {
+			Postings postings = lists.get(list);
+
+			for(int index = 0; index < postings.size; index++) {
+				int number = postings.documents[index];
+
+				if(counts[number]++ == 0) {
+					if(size == touched.length)
+						touched = Arrays.copyOf(touched, size * 2);
+					touched[size++] = number;
+				}
+			}
+		}
+
+		for(int index = 0; index < size; index++) {
+			int number = touched[index];
+			int count = counts[number];
+
+			for(int list = scanned; list < lists.size() && count + lists.size() - list >= required; list++)
+				if(Arrays.binarySearch(lists.get(list).documents, 0, lists.get(list).size, number) >= 0)
+					count++;
+			if(count >= required && !matched.contains(number))
+				offer(documents.get(number), (double)count / queryGrams.length, limit, top);
+		}
+	}
+
+	private static boolean startsWords(Document document, String[] tokens) {
+		for(String token: tokens) {
+			boolean found = false;
+
+			for(String word: document.words) {
+				if(word.startsWith(token)) {
+					found = true;
+					break;
+				}
+			}
+			if(!found)
+				return false;
+		}
+		return true;
+	}
+
+	private void offer(Document document, double score, int limit, PriorityQueue<SearchResult> top) {
+		SearchResult worst = top.size() < limit ? null : top.peek();
+
+		if(worst != null && (score < worst.getScore() || (score == worst.getScore() && document.name.length() > worst.getName().length())))
+			return;
+		top.add(new SearchResult(document.id, document.name, type, score));
+		if(top.size() > limit)
+			top.poll();
+	}
+
+	private void add(String id, String name) {
+		Document document = new Document(id, name == null ? "" : name);
+		int number;
+
+		if(free.isEmpty()) {
+			number = documents.size();
+			documents.add(document);
+		}else {
+			number = free.remove(free.size() - 1);
+			documents.set(number, document);
+		}
+		numbers.put(id, number);
+
+		for(String word: document.words)
+			postings(words, word).add(number);
+		for(String gram: document.grams)
+			postings(grams, gram).add(number);
+	}
+
+	private void remove(String id) {
+		Integer number = numbers.remove(id);
+		Document document;
+
+		if(number == null)
+			return;
+		document = documents.get(number);
+		for(String word: document.words)
+			unlink(words, word, number);
+		for(String gram: document.grams)
+			unlink(grams, gram, number);
+		documents.set(number, null);
+		free.add(number);
+	}
+
+	private static Postings postings(Map<String, Postings> index, String key) {
+		Postings postings = index.get(key);
+
+		if(postings == null)
+			index.put(key, postings = new Postings());
+		return postings;
+	}
+
+	private static void unlink(Map<String, Postings> index, String key, int number) {
+		Postings postings = index.get(key);
+
+		if(postings == null)
+			return;
+		postings.remove(number);
+		if(postings.size == 0)
+			index.remove(key);
+	}
+}
@@ -0,0 +1,103 @@
+package com.souschef.domain.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Accumulates stock adjustments in memory until they're written to the database.</p>
+ * <p>Every component gets a {@link LongAdder}, whose striped cells let terminals add to the same component without 
+ * contending, holding the amounts in fixed point ({@link #SCALE} units per stock unit) so they add up exactly. An adder 
+ * is never reset: {@link #drain()} hands out the difference between its sum and what was already drained, so no 
+ * concurrent adjustment is lost. Accumulators are kept for the JVM's life; there's one per component ever adjusted.</p>
+ * @author rsolano
+ *
+ */
+public class StockLedger {
+	
+	/**
+	 * Fixed-point units per stock unit; adjustments are rounded to six decimals.
+	 */
+	public static final long SCALE = 1000000L;
+
+	private static class Account {
+		final LongAdder added = new LongAdder();
+		long drained; // Guarded by the ledger.
+	}
+	
+	private static final StockLedger instance = new StockLedger();
+	
+	private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+	
+	private StockLedger() {
+		
+	}
+	
+	public static StockLedger getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * <p>Records an adjustment; it's lock-free once the component has an account.</p>
+	 * @param componentId Component's primary key.
+	 * @param delta Amount to add to the stock; negative to consume it.
+	 */
+	public void add(String componentId, double delta) {
+		Account account = accounts.get(componentId);
+		
+		if(account == null) {
+			Account created = new Account();
+			account = accounts.putIfAbsent(componentId, created);
+			if(account == null)
+				account = created;
+		}
+		account.added.add(Math.round(delta * SCALE));
+	}
+	
+	/**
+	 * 
+	 * @return Adjustments recorded since the previous drain, in fixed point, keyed by component id; zero sums are left out.
+	 */
+	public synchronized Map<String, Long> drain() {
+		Map<String, Long> drained = new HashMap<String, Long>();
+		
+		for(Entry<String, Account> entry: accounts.entrySet()) {
+			Account account = entry.getValue();
+			long sum = account.added.sum();
+			
+			if(sum != account.drained) {
+				drained.put(entry.getKey(), sum - account.drained);
+				account.drained = sum;
+			}
+		}
+		return drained;
+	}
+	
+	/**
+	 * <p>Gives back amounts that couldn't be written, so the next drain includes them again.</p>
+	 * @param drained A map returned by {@link #drain()}.
+	 */
+	public synchronized void restore(Map<String, Long> drained) {
+		for(Entry<String, Long> entry: drained.entrySet()) {
+			Account account = accounts.get(entry.getKey());
+			if(account != null)
+				account.drained -= entry.getValue();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param drained A map returned by {@link #drain()}.
+	 * @return The same adjustments in stock units.
+	 */
+	public static Map<String, Double> amounts(Map<String, Long> drained) {
+		Map<String, Double> amounts = new HashMap<String, Double>(drained.size() * 2);
+		
+		for(Entry<String, Long> entry: drained.entrySet())
+			amounts.put(entry.getKey(), (double)entry.getValue() / SCALE);
+		return amounts;
+	}
+}
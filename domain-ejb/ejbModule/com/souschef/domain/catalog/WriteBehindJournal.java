@@ -0,0 +1,488 @@
+package com.souschef.domain.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.souschef.dao.DAO;
+import com.souschef.dao.EntityBean;
+
+/**
+ * <p>Holds saves of one entity class that haven't been written to the database yet, for the managers' write-behind mode.</p>
+ * <p>Every save is appended to a local file and forced to disk before it's acknowledged, then kept in memory coalesced by
+ * id: a save replaces any pending save of the same entity, so a burst of saves costs a single write. A flusher
+ * {@link #drain()}s up to {@link DAO#BATCH_SIZE} entities, writes them as JDBC batches, and either {@link #commit(Collection)}s
+ * or {@link #restore(Collection)}s them. Entities being written stay visible to {@link #find(String)} until they're
+ * committed.</p>
+ * <p>Entities are stored serialized, so callers always get their own copies. After a failed write the batch limit is halved,
+ * down to single entities; an entity that still fails after {@link #MAX_ATTEMPTS} on its own is moved to a
+ * <code>.rejected</code> file next to the journal, so it can't block the ones behind it.</p>
+ * <p>The file is replayed on first use and rewritten once it holds many superseded records; a torn record at its end, left by
+ * a crash during an append, is discarded. Write-behind is enabled with the <code>souschef.writeBehind</code> system property,
+ * and journals go to the directory named by <code>souschef.writeBehind.directory</code>, which must then be set: there's no 
+ * default because temporary directories don't survive reboots.</p>
+ * @author rsolano
+ *
+ * @param <E> Entity class.
+ */
+public class WriteBehindJournal<E extends EntityBean<String>> {
+
+	public static final String ENABLED_PROPERTY = "souschef.writeBehind";
+
+	public static final String DIRECTORY_PROPERTY = "souschef.writeBehind.directory";
+
+	/**
+	 * Failed writes of a single entity before it's rejected.
+	 */
+	public static final int MAX_ATTEMPTS = 3;
+
+	/**
+	 * The file is rewritten when it holds this many records per pending entity.
+	 */
+	private static final int COMPACTION_FACTOR = 4;
+
+	/**
+	 * Id of a record whose bytes are the records of a batch of saves, see {@link #appendAll(Collection)}.
+	 */
+	private static final String BATCH = "";
+
+	private static final Logger logger = LogManager.getLogger(WriteBehindJournal.class);
+
+	private static final Map<Class<?>, WriteBehindJournal<?>> instances = new HashMap<Class<?>, WriteBehindJournal<?>>();
+
+	private final Class<E> type;
+
+	private final boolean enabled;
+
+	private final Path path;
+
+	private final Path rejected;
+
+	private final Map<String, byte[]> pending = new LinkedHashMap<String, byte[]>();
+
+	private final Map<String, byte[]> inFlight = new HashMap<String, byte[]>();
+
+	private final Map<String, Integer> attempts = new HashMap<String, Integer>();
+
+	private FileChannel channel; // Opened, and replayed, on first use.
+
+	private int records;
+
+	private int batchLimit = DAO.BATCH_SIZE;
+
+	private WriteBehindJournal(Class<E> type) {
+		this(type, Boolean.getBoolean(ENABLED_PROPERTY), System.getProperty(DIRECTORY_PROPERTY));
+	}
+
+	/**
+	 *
+	 * @param directory Where the journal is kept; required when <code>enabled</code>.
+	 */
+	WriteBehindJournal(Class<E> type, boolean enabled, String directory) {
+		this.type = type;
+		this.enabled = enabled;
+		if(enabled && (directory == null || directory.trim().isEmpty()))
+			throw new IllegalStateException(String.format("%s requires %s to name a durable directory", ENABLED_PROPERTY, DIRECTORY_PROPERTY));
+		this.path = directory == null ? null : new File(directory, type.getSimpleName() + ".journal").toPath();
+		this.rejected = directory == null ? null : new File(directory, type.getSimpleName() + ".rejected").toPath();
+	}
+
+	/**
+	 *
+	 * @param type Entity class.
+	 * @return The class's journal.
+	 * @throws IllegalStateException If write-behind is enabled without a journal directory.
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized <E extends EntityBean<String>> WriteBehindJournal<E> getInstance(Class<E> type) {
+		WriteBehindJournal<E> instance = (WriteBehindJournal<E>) instances.get(type);
+
+		if(instance == null)
+			instances.put(type, instance = new WriteBehindJournal<E>(type));
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * <p>Records a save; once this method returns it survives a crash.</p>
+	 * @param entity An entity with its id assigned.
+	 * @throws IOException If the journal can't be written; the save isn't recorded.
+	 * @throws IllegalArgumentException If the entity has no id.
+	 */
+	public synchronized void append(E entity) throws IOException {
+		byte[] bytes;
+
+		if(entity.getId() == null)
+			throw new IllegalArgumentException(String.format("%s without id", type.getSimpleName()));
+		bytes = serialize(entity);
+
+		open();
+		write(channel, entity.getId(), bytes);
+		channel.force(false);
+		records++;
+		pending.put(entity.getId(), bytes);
+		attempts.remove(entity.getId());
+	}
+
+	/**
+	 * <p>Records several saves atomically: every entity is checked and serialized before anything is written, and they're 
+	 * appended as a single batch record, so a failure or a crash records either all of them or none.</p>
+	 * @param entities Entities with their ids assigned.
+	 * @throws IOException If the journal can't be written; no save is recorded.
+	 * @throws IllegalArgumentException If an entity has no id.
+	 */
+	public synchronized void appendAll(Collection<? extends E> entities) throws IOException {
+		Map<String, byte[]> batch = new LinkedHashMap<String, byte[]>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		long position;
+
+		for(E entity: entities) {
+			if(entity.getId() == null)
+				throw new IllegalArgumentException(String.format("%s without id", type.getSimpleName()));
+			batch.put(entity.getId(), serialize(entity));
+		}
+		if(batch.isEmpty())
+			return;
+		for(Entry<String, byte[]> entry: batch.entrySet())
+			buffer.write(record(entry.getKey(), entry.getValue()));
+
+		open();
+		position = channel.position();
+		try {
+			write(channel, BATCH, buffer.toByteArray());
+			channel.force(false);
+		}catch(IOException e) {
+			channel.truncate(position); // Drop whatever part of the record made it to the file.
+			channel.position(position);
+			throw e;
+		}
+		records++;
+		for(Entry<String, byte[]> entry: batch.entrySet()) {
+			pending.put(entry.getKey(), entry.getValue());
+			attempts.remove(entry.getKey());
+		}
+	}
+
+	/**
+	 * <p>Drops the pending save of an entity, e.g. because it's being removed.</p>
+	 * @param id Entity's primary key.
+	 * @throws IOException If the journal can't be written.
+	 * @throws IllegalStateException If the entity is being written right now; the caller should retry.
+	 */
+	public synchronized void discard(String id) throws IOException {
+		open();
+		if(inFlight.containsKey(id))
+			throw new IllegalStateException(String.format("A save of %s %s is being written", type.getSimpleName(), id));
+		if(pending.remove(id) != null) {
+			write(channel, id, new byte[0]);
+			channel.force(false);
+			records++;
+		}
+	}
+
+	/**
+	 *
+	 * @param id Entity's primary key.
+	 * @return A copy of the entity's latest unwritten save, or <code>null</code> if there's none.
+	 * @throws IOException If the journal can't be replayed.
+	 */
+	public synchronized E find(String id) throws IOException {
+		byte[] bytes;
+
+		open();
+		bytes = pending.get(id);
+		if(bytes == null)
+			bytes = inFlight.get(id);
+		return bytes == null ? null : deserialize(bytes);
+	}
+
+	/**
+	 *
+	 * @return Number of saves waiting to be written.
+	 * @throws IOException If the journal can't be replayed.
+	 */
+	public synchronized int size() throws IOException {
+		open();
+		return pending.size() + inFlight.size();
+	}
+
+	/**
+	 * <p>Hands out the oldest pending saves; they must be given back through {@link #commit(Collection)} or
+	 * {@link #restore(Collection)}.</p>
+	 * @return Copies of the saves, keyed by id, oldest first.
+	 * @throws IOException If the journal can't be replayed.
+	 */
+	public synchronized Map<String, E> drain() throws IOException {
+		Map<String, E> drained = new LinkedHashMap<String, E>();
+		List<String> ids = new ArrayList<String>();
+
+		open();
+		for(String id: pending.keySet()) {
+			if(ids.size() == batchLimit)
+				break;
+			if(!inFlight.containsKey(id))
+				ids.add(id);
+		}
+		for(String id: ids)
+			drained.put(id, deserialize(pending.get(id)));
+		for(String id: ids)
+			inFlight.put(id, pending.remove(id));
+		return drained;
+	}
+
+	/**
+	 * <p>Forgets saves that were written; saves of the same entities appended meanwhile remain pending.</p>
+	 * @param ids Keys of a map returned by {@link #drain()}.
+	 */
+	public synchronized void commit(Collection<String> ids) {
+		List<String> written = new ArrayList<String>(ids.size());
+
+		for(String id: ids) {
+			if(inFlight.remove(id) != null && !pending.containsKey(id))
+				written.add(id);
+			attempts.remove(id);
+		}
+		batchLimit = Math.min(DAO.BATCH_SIZE, batchLimit * 2);
+		try {
+			if(pending.isEmpty() && inFlight.isEmpty()) {
+				compact();
+				return;
+			}
+			for(String id: written)
+				write(channel, id, new byte[0]); // So a replay doesn't write them again.
+			channel.force(false);
+			records += written.size();
+			compact();
+		}catch(IOException e) {
+			logger.error(String.format( // The saves stay committed; only their replay after a restart is at stake.
+				"Couldn't record that %s saves %s were written; a replay after a restart writes them again, failing if they're stale", 
+				type.getSimpleName(), written
+			), e);
+		}
+	}
+
+	/**
+	 * <p>Gives back saves that couldn't be written, ahead of the other pending ones, unless the entity was saved again
+	 * meanwhile.</p>
+	 * @param ids Keys of a map returned by {@link #drain()}.
+	 * @return Ids of the entities rejected because they failed on their own too many times.
+	 */
+	public synchronized List<String> restore(Collection<String> ids) {
+		Map<String, byte[]> restored = new LinkedHashMap<String, byte[]>();
+		List<String> dropped = new ArrayList<String>();
+
+		for(String id: ids) {
+			byte[] bytes = inFlight.remove(id);
+			Integer failures = attempts.get(id);
+
+			if(bytes == null || pending.containsKey(id))
+				continue;
+			if(ids.size() == 1)
+				failures = failures == null ? 1 : failures + 1; // Only failures on its own count against an entity.
+			if(failures != null && failures >= MAX_ATTEMPTS) {
+				attempts.remove(id);
+				dropped.add(id);
+				try {
+					reject(id, bytes);
+				}catch(IOException e) {
+					logger.error(String.format(
+						"Couldn't move the rejected save of %s %s to %s; it's dropped until a restart replays it from %s", 
+						type.getSimpleName(), id, rejected, path
+					), e);
+				}
+			}else {
+				if(failures != null)
+					attempts.put(id, failures);
+				restored.put(id, bytes);
+			}
+		}
+		restored.putAll(pending);
+		pending.clear();
+		pending.putAll(restored);
+		batchLimit = Math.max(1, batchLimit / 2);
+		return dropped;
+	}
+
+	private void reject(String id, byte[] bytes) throws IOException {
+		FileChannel rejects = FileChannel.open(rejected, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		try {
+			write(rejects, id, bytes);
+			rejects.force(false);
+		}finally {
+			rejects.close();
+		}
+		write(channel, id, new byte[0]);
+		channel.force(false);
+		records++;
+	}
+
+	/**
+	 * <p>Opens the journal and replays it into the pending saves.</p>
+	 */
+	private void open() throws IOException {
+		DataInputStream input;
+		long valid = 0;
+
+		if(channel != null)
+			return;
+
+		Files.createDirectories(path.getParent());
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		try {
+			while(true) {
+				String id = input.readUTF();
+				int length = input.readInt();
+				byte[] bytes;
+
+				if(length < 0 || length > channel.size() - valid)
+					break; // A torn length.
+				bytes = new byte[length];
+				input.readFully(bytes);
+				if(BATCH.equals(id))
+					replay(bytes);
+				else
+					replay(id, bytes);
+				records++;
+				valid += 2 + id.getBytes("UTF-8").length + 4 + bytes.length;
+			}
+		}catch(EOFException e) {
+			// End of the journal, possibly inside a torn record.
+		}
+		channel.truncate(valid);
+		channel.position(valid);
+	}
+
+	private void replay(String id, byte[] bytes) {
+		if(bytes.length == 0)
+			pending.remove(id);
+		else
+			pending.put(id, bytes);
+	}
+
+	/**
+	 * <p>Replays the records of a batch, all of which were written since the batch record is complete.</p>
+	 */
+	private void replay(byte[] batch) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(batch));
+
+		while(input.available() > 0) {
+			String id = input.readUTF();
+			byte[] bytes = new byte[input.readInt()];
+
+			input.readFully(bytes);
+			replay(id, bytes);
+		}
+	}
+
+	/**
+	 * <p>Empties the file when nothing is pending and rewrites it when most of its records are superseded.</p>
+	 */
+	private void compact() throws IOException {
+		Path rewritten;
+		FileChannel replacement;
+
+		if(channel == null)
+			return;
+
+		if(pending.isEmpty() && inFlight.isEmpty()) {
+			channel.truncate(0);
+			channel.force(false);
+			records = 0;
+			return;
+		}
+		if(records < DAO.BATCH_SIZE || records < COMPACTION_FACTOR * (pending.size() + inFlight.size()))
+			return;
+
+		rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+		replacement = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			for(Entry<String, byte[]> entry: inFlight.entrySet())
+				write(replacement, entry.getKey(), entry.getValue());
+			for(Entry<String, byte[]> entry: pending.entrySet())
+				write(replacement, entry.getKey(), entry.getValue());
+			replacement.force(false);
+		}finally {
+			replacement.close();
+		}
+
+		channel.close();
+		try {
+			Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			records = pending.size() + inFlight.size();
+		}finally {
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE); // The old file if the move failed.
+			channel.position(channel.size());
+		}
+	}
+
+	/**
+	 * <p>Appends a record: the id, the length of the serialized entity and its bytes; an empty record cancels the id's save.</p>
+	 */
+	private static void write(FileChannel channel, String id, byte[] bytes) throws IOException {
+		ByteBuffer record = ByteBuffer.wrap(record(id, bytes));
+
+		while(record.hasRemaining())
+			channel.write(record);
+	}
+
+	private static byte[] record(String id, byte[] bytes) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + id.length() + 8);
+		DataOutputStream output = new DataOutputStream(buffer);
+
+		output.writeUTF(id);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+		output.flush();
+		return buffer.toByteArray();
+	}
+
+	private static byte[] serialize(Object entity) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(buffer);
+
+		output.writeObject(entity);
+		output.close();
+		return buffer.toByteArray();
+	}
+
+	private E deserialize(byte[] bytes) throws IOException {
+		ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+
+		try {
+			return type.cast(input.readObject());
+		}catch(ClassNotFoundException e) {
+			throw new IOException(e);
+		}finally {
+			input.close();
+		}
+	}
+}
@@ -1,14 +1,20 @@
 package com.souschef.domain.client;
 
 import java.util.List;
+import java.util.Map;
 
 import com.souschef.client.ClientException;
+import com.souschef.dao.Page;
 import com.souschef.domain.data.model.Component;
 import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.ComponentSummary;
+import com.souschef.domain.data.model.SearchResult;
 
 public interface ComponentManager {
 	List<ComponentCategory> allComponentCategories() throws ClientException;
 	List<Component> componentsByCategoryId(String id) throws ClientException;
+	Page<String, Component> componentsByCategoryId(String id, String after, int limit) throws ClientException;
+	List<ComponentSummary> componentSummariesByCategoryId(String id) throws ClientException;
 	
 	void saveComponentCategory(ComponentCategory componentCategory) throws ClientException;
 	ComponentCategory findComponentCategoryById(String id) throws ClientException;
@@ -18,7 +24,29 @@ public interface ComponentManager {
 	Component findComponentById(String id) throws ClientException;
 	void removeComponent(String id) throws ClientException;
 	
+	/**
+	 * <p>Saves several components with one call and in one transaction.</p>
+	 */
+	void saveComponents(List<Component> components) throws ClientException;
+	/**
+	 * 
+	 * @param ids Primary keys, possibly repeated.
+	 * @return One component per id, in the same order; <code>null</code> for unknown ids.
+	 */
+	List<Component> findComponentsByIds(List<String> ids) throws ClientException;
+	/**
+	 * <p>Removes several components with one call and in one transaction; unknown ids are ignored.</p>
+	 */
+	void removeComponents(List<String> ids) throws ClientException;
+	
 	
 	Component findComponentByName(String name) throws ClientException;
+	List<SearchResult> searchComponents(String query, int limit) throws ClientException;
+	
+	void adjustStock(String componentId, double delta) throws ClientException;
+	int flushStock() throws ClientException;
+	int flushSaves() throws ClientException;
+	
+	Map<String, Map<String, Long>> cacheStatistics() throws ClientException;
 	
 }
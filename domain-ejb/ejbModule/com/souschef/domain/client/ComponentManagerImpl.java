@@ -1,151 +1,580 @@
 package com.souschef.domain.client;
 //http://www.thoughts-on-java.org/use-jpa-next-project/
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 
 import javax.persistence.EntityManager;
 
 import com.souschef.client.ClientException;
+import com.souschef.dao.CacheStatistics;
 import com.souschef.dao.DAOException;
+import com.souschef.dao.Page;
+import com.souschef.domain.catalog.Catalog;
+import com.souschef.domain.catalog.CatalogSnapshot;
+import com.souschef.domain.catalog.CostingEngine;
+import com.souschef.domain.catalog.FeasibilityEngine;
+import com.souschef.domain.catalog.SearchIndex;
+import com.souschef.domain.catalog.StockLedger;
+import com.souschef.domain.catalog.WriteBehindJournal;
 import com.souschef.domain.data.dao.ComponentCategoryDAO;
 import com.souschef.domain.data.dao.ComponentDAO;
+import com.souschef.domain.data.dao.PhotoDAO;
 import com.souschef.domain.data.model.Component;
 import com.souschef.domain.data.model.ComponentCategory;
+import com.souschef.domain.data.model.ComponentSummary;
+import com.souschef.domain.data.model.SearchResult;
 
 
 public class ComponentManagerImpl extends DAOWrapperClient implements ComponentManager{
 	
 	protected ComponentCategoryDAO componentCategoryDAO;		
 	protected ComponentDAO componentDAO;
+	protected PhotoDAO photoDAO;
+	protected Catalog catalog = Catalog.getInstance();
+	protected SearchIndex searchIndex = SearchIndex.getInstance(SearchResult.COMPONENT);
+	protected StockLedger stockLedger = StockLedger.getInstance();
+	protected CostingEngine costingEngine = CostingEngine.getInstance();
+	protected FeasibilityEngine feasibilityEngine = FeasibilityEngine.getInstance();
+	protected WriteBehindJournal<Component> journal = WriteBehindJournal.getInstance(Component.class);
 	
 	public ComponentManagerImpl() {
 		super();
 		try {
 			componentCategoryDAO = new ComponentCategoryDAO(getEntityManagerFactory());
 			componentDAO = new ComponentDAO(getEntityManagerFactory());
+			photoDAO = new PhotoDAO(getEntityManagerFactory());
 		}catch(Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
-
+	/**
+	 * <p>Returns the in-memory catalogue, loading it on first use.</p>
+	 * @return The current catalogue snapshot.
+	 * @throws DAOException If the catalogue can't be read from the database.
+	 */
+	protected CatalogSnapshot catalog() throws DAOException {
+		return catalog.snapshot(getEntityManagerFactory());
+	}
+	
+	/**
+	 * <p>Returns the component name index, loading it from the catalogue on first use.</p>
+	 * @return A loaded index.
+	 * @throws DAOException If the catalogue can't be read from the database.
+	 */
+	protected SearchIndex searchIndex() throws DAOException {
+		if(!searchIndex.isLoaded()) {
+			synchronized(searchIndex) {
+				if(!searchIndex.isLoaded())
+					searchIndex.load(catalog().componentNames());
+			}
+		}
+		return searchIndex;
+	}
 	
 	@Override
 	public List<ComponentCategory> allComponentCategories()  throws ClientException{
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try {
 			return componentCategoryDAO.allComponentCategories(entityManager);
 		}catch(DAOException e) {
 			throw new ClientException(e);
+		}finally {
+			close(entityManager);
 		}
 	}
+	/**
+	 * <p>In write-behind mode the component is only journaled, coalesced with earlier unwritten saves of it; 
+	 * {@link #findComponentById(String)} returns it right away, the other queries once {@link #flushSaves()} writes it. 
+	 * Stale versions are then detected by the flush instead of here.</p>
+	 */
 	@Override
-	public void saveComponent(Component component)  throws ClientException{
+	public void saveComponent(final Component component)  throws ClientException{
+		EntityManager entityManager = createEntityManager();
 		try {
-			componentDAO.persist(component);			
+			if(component.getPhoto() != null) {
+				component.setPhotoId(photoDAO.store(entityManager, component.getPhoto()).getId());
+				component.setPhoto(null);
+			}
+			if(journal.isEnabled()) {
+				journal.append(component); // Written by flushSaves.
+				return;
+			}
+			componentDAO.persist(entityManager, component);
+			afterCommit(published(component));
 		}catch(DAOException e) {
 			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
+		}catch(IllegalArgumentException e){
+			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
 		}finally {
-			
+			close(entityManager);
 		}
 		
 	}
+	
+	/**
+	 * 
+	 * @param saved A component whose save is committed.
+	 * @return A task bringing the in-memory catalogue and engines up to date with it.
+	 */
+	private Runnable published(final Component saved) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				catalog.update(new Catalog.Update() {
+					@Override
+					public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+						return snapshot.withComponent(saved);
+					}
+				});
+				searchIndex.put(saved.getId(), saved.getName());
+				costingEngine.putComponent(saved);
+				feasibilityEngine.putComponent(saved);
+			}
+		};
+	}
 	@Override
 	public Component findComponentById(String id)  throws ClientException{
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try{
-			return componentDAO.findById(entityManager, id);
+			Component pending = journal.isEnabled() ? journal.find(id) : null;
+			return pending != null ? pending : componentDAO.findById(entityManager, id);
 		}catch(DAOException e){
 			throw new ClientException(e);
+		}catch(IOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
 		}
 	}
 	@Override
-	public void removeComponent(String id)  throws ClientException{
+	public void removeComponent(final String id)  throws ClientException{
 		Component component;
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createEntityManager();
 		try {
+			if(journal.isEnabled())
+				journal.discard(id);
 			component = componentDAO.findById(entityManager, id);
-			if(component != null)
+			if(component != null) {
 				componentDAO.remove(entityManager, component);
-			
+				afterCommit(new Runnable() {
+					@Override
+					public void run() {
+						catalog.update(new Catalog.Update() {
+							@Override
+							public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+								return snapshot.withoutComponent(id);
+							}
+						});
+						searchIndex.delete(id);
+						costingEngine.removeComponent(id);
+						feasibilityEngine.removeComponent(id);
+					}
+				});
+			}
+
 		}catch(DAOException e) {
 			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
+		}finally {
+			close(entityManager);
 		}
 	}
 	
+	/**
+	 * <p>Unwritten saves are discarded and the rows deleted as JDBC batches by 
+	 * {@link ComponentDAO#removeAll(EntityManager, java.util.Collection)}.</p>
+	 */
+	@Override
+	public void removeComponents(final List<String> ids) throws ClientException {
+		List<Component> components = new ArrayList<Component>(ids.size());
+		EntityManager entityManager = createEntityManager();
+		try {
+			for(String id: new LinkedHashSet<String>(ids)) {
+				if(journal.isEnabled())
+					journal.discard(id);
+				components.add(new Component(id, null));
+			}
+			componentDAO.removeAll(entityManager, components);
+			afterCommit(new Runnable() {
+				@Override
+				public void run() {
+					catalog.update(new Catalog.Update() {
+						@Override
+						public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+							for(String id: ids)
+								snapshot = snapshot.withoutComponent(id);
+							return snapshot;
+						}
+					});
+					for(String id: ids) {
+						searchIndex.delete(id);
+						costingEngine.removeComponent(id);
+						feasibilityEngine.removeComponent(id);
+					}
+				}
+			});
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
+		}catch(IllegalStateException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
 	
+	/**
+	 * <p>Photos are stored first; the components are then journaled like {@link #saveComponent(Component)} does, or written 
+	 * together as JDBC batches by {@link ComponentDAO#persistAll(EntityManager, java.util.Collection)}. Each component 
+	 * should appear once.</p>
+	 */
+	@Override
+	public void saveComponents(final List<Component> components) throws ClientException {
+		EntityManager entityManager = createEntityManager();
+		try {
+			for(Component component: components)
+				if(component.getPhoto() != null) {
+					component.setPhotoId(photoDAO.store(entityManager, component.getPhoto()).getId());
+					component.setPhoto(null);
+				}
+			if(journal.isEnabled()) {
+				journal.appendAll(components); // All or none; written by flushSaves.
+				return;
+			}
+			componentDAO.persistAll(entityManager, components);
+			for(Component component: components)
+				afterCommit(published(component));
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
+		}catch(IllegalArgumentException e){
+			throw new ClientException(e);
+		}catch(IllegalStateException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
 	
+	/**
+	 * <p>Unwritten saves come from the write-behind journal and the other components from one query per 
+	 * {@link ComponentDAO#IN_LIST_LIMIT} distinct ids.</p>
+	 */
 	@Override
-	public void saveComponentCategory(ComponentCategory componentCategory) throws ClientException {
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+	public List<Component> findComponentsByIds(List<String> ids) throws ClientException {
+		Map<String, Component> found = new HashMap<String, Component>();
+		List<String> missing = new ArrayList<String>();
+		List<Component> components = new ArrayList<Component>(ids.size());
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			for(String id: new LinkedHashSet<String>(ids)) {
+				Component pending = journal.isEnabled() && id != null ? journal.find(id) : null;
+				
+				if(pending != null)
+					found.put(id, pending);
+				else if(id != null)
+					missing.add(id);
+			}
+			if(!missing.isEmpty())
+				for(Component component: componentDAO.findByIds(entityManager, missing))
+					found.put(component.getId(), component);
+			
+			for(String id: ids)
+				components.add(found.get(id));
+			return components;
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}catch(IOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+	
+	@Override
+	public void saveComponentCategory(final ComponentCategory componentCategory) throws ClientException {
+		EntityManager entityManager = createEntityManager();
 		try {
-			componentCategoryDAO.persist(entityManager, componentCategory);						
+			componentCategoryDAO.persist(entityManager, componentCategory);
+			afterCommit(new Runnable() {
+				@Override
+				public void run() {
+					catalog.update(new Catalog.Update() {
+						@Override
+						public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+							return snapshot.withCategory(componentCategory);
+						}
+					});
+				}
+			});
 		}catch(DAOException e) {
 			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
-		}		
+		}finally {
+			close(entityManager);
+		}
 	}
 	
 	@Override
 	public ComponentCategory findComponentCategoryById(String id) throws ClientException {
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try{
 			return componentCategoryDAO.findById(entityManager, id);
 		}catch(DAOException e){
 			throw new ClientException(e);
+		}finally {
+			close(entityManager);
 		}
 	}
 	
 	@Override
-	public void removeComponentCategory(String id) throws ClientException {
+	public void removeComponentCategory(final String id) throws ClientException {
 		ComponentCategory category;
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createEntityManager();
 		try {
 			category = componentCategoryDAO.findById(entityManager, id);
 			
 			
-			if(category != null)
+			if(category != null) {
 				componentCategoryDAO.remove(entityManager, category);
+				afterCommit(new Runnable() {
+					@Override
+					public void run() {
+						CatalogSnapshot snapshot = catalog.snapshot();
+						List<Component> components = snapshot == null ? null : snapshot.componentsByCategory(id);
+						
+						if(components != null)
+							for(Component component: components) {
+								searchIndex.delete(component.getId());
+								costingEngine.removeComponent(component.getId());
+								feasibilityEngine.removeComponent(component.getId());
+							}
+						catalog.update(new Catalog.Update() {
+							@Override
+							public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+								return snapshot.withoutCategory(id);
+							}
+						});
+					}
+				});
+			}
 		}catch(DAOException e) {
 			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
-		}			
+		}finally {
+			close(entityManager);
+		}
 	}
 
 	@Override
 	public List<Component> componentsByCategoryId(String id) throws ClientException {
-		ComponentCategory category;
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
 		try{
-			category = componentCategoryDAO.findById(entityManager, id);
-			if(category == null)
-				return null;
-			return componentDAO.componentsByCategory(entityManager, category);
+			return catalog().componentsByCategory(id);
 		}catch(DAOException e){
 			throw new ClientException(e);
-		}		
+		}
 	}
 
 
+	@Override
+	public Page<String, Component> componentsByCategoryId(String id, String after, int limit) throws ClientException {
+		try{
+			return catalog().componentsByCategory(id, after, limit);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}catch(IllegalArgumentException e){
+			throw new ClientException(e);
+		}
+	}
+
+	@Override
+	public List<ComponentSummary> componentSummariesByCategoryId(String id) throws ClientException {
+		try{
+			return catalog().componentSummariesByCategory(id);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
 
 	@Override
 	public Component findComponentByName(String name) throws ClientException {
-		Component component;
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
 		try{
-			component = componentDAO.findComponentByName(entityManager, name);
-			return component;
+			return catalog().findComponentByName(name);
 		}catch(DAOException e){
 			throw new ClientException(e);
-		}	
+		}
 	}
 
-	
-	
+	@Override
+	public List<SearchResult> searchComponents(String query, int limit) throws ClientException {
+		try{
+			return searchIndex().search(query, limit);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
+
+	/**
+	 * <p>Records a stock adjustment in memory; it reaches the database, and the values returned by this manager, on the next 
+	 * {@link #flushStock()}.</p>
+	 */
+	@Override
+	public void adjustStock(String componentId, double delta) throws ClientException {
+		try{
+			if(!catalog().contains(componentId))
+				throw new ClientException(new IllegalArgumentException(String.format("Unknown component %s", componentId)));
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+		stockLedger.add(componentId, delta);
+	}
+
+	/**
+	 * <p>Writes every pending stock adjustment with one batch of relative updates.</p>
+	 * <p>If the transaction rolls back the drained amounts go back to the ledger, so they're retried by the next flush.</p>
+	 * @return Number of components whose stock changed.
+	 */
+	@Override
+	public int flushStock() throws ClientException {
+		final Map<String, Long> drained = stockLedger.drain();
+		final List<Component> applied = new ArrayList<Component>();
+		Runnable committed, rolledBack;
+		boolean transactional;
+		EntityManager entityManager;
+		
+		if(drained.isEmpty())
+			return 0;
+		
+		committed = new Runnable() {
+			@Override
+			public void run() {
+				catalog.update(new Catalog.Update() {
+					@Override
+					public CatalogSnapshot apply(CatalogSnapshot snapshot) {
+						CatalogSnapshot next = snapshot.withStock(applied);
+						Map<String, Double> levels = new HashMap<String, Double>();
+						
+						for(Component level: applied) {
+							Component component = next.findComponentById(level.getId());
+							if(component != null)
+								levels.put(level.getId(), component.getStock());
+						}
+						feasibilityEngine.putStock(levels); // Under the catalogue's monitor, so levels arrive in commit order.
+						return next;
+					}
+				});
+			}
+		};
+		rolledBack = new Runnable() {
+			@Override
+			public void run() {
+				stockLedger.restore(drained);
+			}
+		};
+		transactional = afterCompletion(committed, rolledBack);
+		
+		entityManager = createEntityManager();
+		try{
+			applied.addAll(componentDAO.adjustStock(entityManager, StockLedger.amounts(drained)));
+		}catch(DAOException e){
+			if(!transactional)
+				rolledBack.run();
+			throw new ClientException(e); // A system exception; the container rolls back and the synchronization restores the ledger.
+		}catch(RuntimeException e){
+			if(!transactional)
+				rolledBack.run();
+			throw e;
+		}finally {
+			close(entityManager);
+		}
+		
+		if(!transactional)
+			committed.run();
+		return applied.size();
+	}
+
+	/**
+	 * <p>Writes the oldest saves waiting in the write-behind journal as JDBC batches, and publishes them to the catalogue once 
+	 * they commit.</p>
+	 * <p>If the transaction rolls back the saves go back to the journal, so they're retried by the next flush.</p>
+	 * @return Number of components written; zero when write-behind is disabled.
+	 */
+	@Override
+	public int flushSaves() throws ClientException {
+		final Map<String, Component> drained;
+		Runnable committed, rolledBack;
+		boolean transactional;
+		EntityManager entityManager;
+		
+		if(!journal.isEnabled())
+			return 0;
+		try{
+			drained = journal.drain();
+		}catch(IOException e){
+			throw new ClientException(e);
+		}
+		if(drained.isEmpty())
+			return 0;
+		
+		committed = new Runnable() {
+			@Override
+			public void run() {
+				journal.commit(drained.keySet());
+				for(Component saved: drained.values())
+					published(saved).run();
+			}
+		};
+		rolledBack = new Runnable() {
+			@Override
+			public void run() {
+				journal.restore(drained.keySet());
+			}
+		};
+		transactional = afterCompletion(committed, rolledBack);
+		
+		entityManager = createEntityManager();
+		try{
+			componentDAO.persistAll(entityManager, drained.values());
+		}catch(DAOException e){
+			if(!transactional)
+				rolledBack.run();
+			throw new ClientException(e); // A system exception; the container rolls back and the synchronization restores the journal.
+		}catch(RuntimeException e){
+			if(!transactional)
+				rolledBack.run();
+			throw e;
+		}finally {
+			close(entityManager);
+		}
+		
+		if(!transactional)
+			committed.run();
+		return drained.size();
+	}
+
+	@Override
+	public Map<String, Map<String, Long>> cacheStatistics() throws ClientException {
+		try{
+			return CacheStatistics.of(getEntityManagerFactory());
+		}catch(RuntimeException e){
+			throw new ClientException(e);
+		}
+	}
 }
@@ -1,17 +1,141 @@
 package com.souschef.domain.client;
 
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
+import com.souschef.dao.DAO;
+
+/**
+ * <p>Base class of the domain managers.</p>
+ * <p>Building an entity manager factory means building Hibernate's metamodel, so a single factory is shared by every 
+ * manager instance in the application instead of creating one per pooled bean; {@link EntityManagerFactoryBean} closes it 
+ * when the application stops. Entity managers are cheap and must be released by the method that creates them through 
+ * {@link #close(EntityManager)}.</p>
+ */
 public class DAOWrapperClient {
-	private EntityManagerFactory entityManagerFactory;
+	public static final String PERSISTENCE_UNIT = "domain-model-test";
+	public static final String TRANSACTION_SYNCHRONIZATION_REGISTRY = "java:comp/TransactionSynchronizationRegistry";
+	
+	private static volatile EntityManagerFactory entityManagerFactory;
 	
 	public DAOWrapperClient() {
 		getEntityManagerFactory();
 	}
+	
+	/**
+	 * <p>Only the first calls synchronize; every entity manager created afterwards reads the volatile field alone.</p>
+	 */
 	protected EntityManagerFactory getEntityManagerFactory() {
-		if(entityManagerFactory == null)
-			entityManagerFactory = Persistence.createEntityManagerFactory("domain-model-test");
-		return entityManagerFactory;
-	}	
+		EntityManagerFactory factory = entityManagerFactory;
+		
+		if(factory == null) {
+			synchronized(DAOWrapperClient.class) {
+				factory = entityManagerFactory;
+				if(factory == null)
+					entityManagerFactory = factory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+			}
+		}
+		return factory;
+	}
+	
+	/**
+	 * <p>Closes the shared entity manager factory, if it was ever created, releasing its connection pool and caches.</p>
+	 */
+	static void closeEntityManagerFactory() {
+		synchronized(DAOWrapperClient.class) {
+			if(entityManagerFactory != null && entityManagerFactory.isOpen())
+				entityManagerFactory.close();
+			entityManagerFactory = null;
+		}
+	}
+	
+	/**
+	 * <p>Creates an entity manager; it joins the current JTA transaction when one is active.</p>
+	 * @return A new entity manager that the caller must release with {@link #close(EntityManager)}.
+	 */
+	protected EntityManager createEntityManager() {
+		return getEntityManagerFactory().createEntityManager();
+	}
+	
+	/**
+	 * <p>Creates an entity manager for methods that only read: the entities it loads aren't snapshotted for dirty checking 
+	 * and are never written back.</p>
+	 * @return A new entity manager that the caller must release with {@link #close(EntityManager)}.
+	 * @see DAO#readOnly(EntityManager)
+	 */
+	protected EntityManager createReadOnlyEntityManager() {
+		return DAO.readOnly(createEntityManager());
+	}
+	
+	/**
+	 * <p>Releases an entity manager; when a transaction is active the persistence context stays open until it completes.</p>
+	 * @param entityManager May be <code>null</code>.
+	 */
+	protected void close(EntityManager entityManager) {
+		if(entityManager != null && entityManager.isOpen())
+			try {
+				entityManager.close();
+			}catch(Throwable t){
+				
+			}
+	}
+	
+	/**
+	 * 
+	 * @return The container's registry or <code>null</code> outside a Java EE container.
+	 */
+	protected TransactionSynchronizationRegistry transactionSynchronizationRegistry() {
+		try {
+			return (TransactionSynchronizationRegistry)new InitialContext().lookup(TRANSACTION_SYNCHRONIZATION_REGISTRY);
+		}catch(NamingException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * <p>Runs <code>committed</code> or <code>rolledBack</code> once the current JTA transaction completes.</p>
+	 * @param committed May be <code>null</code>; it must not throw.
+	 * @param rolledBack May be <code>null</code>; it must not throw.
+	 * @return <code>false</code>, without registering anything, when there's no active transaction.
+	 */
+	protected boolean afterCompletion(final Runnable committed, final Runnable rolledBack) {
+		TransactionSynchronizationRegistry registry = transactionSynchronizationRegistry();
+		
+		if(registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE)
+			return false;
+		
+		registry.registerInterposedSynchronization(new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+				
+			}
+			
+			@Override
+			public void afterCompletion(int status) {
+				if(status == Status.STATUS_COMMITTED) {
+					if(committed != null)
+						committed.run();
+				}else if(rolledBack != null) {
+					rolledBack.run();
+				}
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * <p>Runs <code>action</code> once the current JTA transaction commits, or right away when there's no active transaction.</p>
+	 * <p>In-memory views of the database use it so a rolled back write never shows up in them.</p>
+	 * @param action Must not throw; it runs on the thread that completes the transaction.
+	 */
+	protected void afterCommit(Runnable action) {
+		if(!afterCompletion(action, null))
+			action.run();
+	}
 }
@@ -0,0 +1,21 @@
+package com.souschef.domain.client;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+/**
+ * <p>Closes the entity manager factory shared by the domain managers when the application stops, so a redeployment 
+ * doesn't leave the previous factory's connections and caches behind.</p>
+ * <p>The beans with timers that use the managers depend on this one, so the container destroys them first.</p>
+ * @see DAOWrapperClient
+ */
+@Singleton(name = "EntityManagerFactoryBean")
+@Startup
+public class EntityManagerFactoryBean {
+	
+	@PreDestroy
+	void close() {
+		DAOWrapperClient.closeEntityManagerFactory();
+	}
+}
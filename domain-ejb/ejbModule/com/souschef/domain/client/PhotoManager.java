@@ -0,0 +1,22 @@
+package com.souschef.domain.client;
+
+import com.souschef.client.ClientException;
+import com.souschef.domain.data.model.Photo;
+
+public interface PhotoManager {
+	/**
+	 * <p>Stores an image, or finds the identical one already stored.</p>
+	 * @param content Image bytes.
+	 * @return The photo's description; its id is the digest of <code>content</code>.
+	 * @throws ClientException
+	 */
+	Photo savePhoto(byte[] content) throws ClientException;
+	
+	/**
+	 * 
+	 * @param id Photo id.
+	 * @return The photo's description, without content, or <code>null</code> if there is no such photo.
+	 * @throws ClientException
+	 */
+	Photo findPhotoById(String id) throws ClientException;
+}
@@ -0,0 +1,59 @@
+package com.souschef.domain.client;
+
+import java.io.OutputStream;
+
+import javax.persistence.EntityManager;
+
+import com.souschef.client.ClientException;
+import com.souschef.dao.DAOException;
+import com.souschef.domain.data.dao.PhotoDAO;
+import com.souschef.domain.data.model.Photo;
+
+public class PhotoManagerImpl extends DAOWrapperClient implements PhotoManager{
+	protected PhotoDAO photoDAO;
+	
+	public PhotoManagerImpl() {
+		super();
+		try {
+			photoDAO = new PhotoDAO(getEntityManagerFactory());
+		}catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public Photo savePhoto(byte[] content) throws ClientException {
+		EntityManager entityManager = createEntityManager();
+		try {
+			return photoDAO.store(entityManager, content).describe();
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+
+	@Override
+	public Photo findPhotoById(String id) throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try {
+			Photo photo = photoDAO.findById(entityManager, id);
+			return photo == null ? null : photo.describe();
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+	
+	public long writePhoto(String id, long offset, long length, OutputStream output) throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try {
+			return photoDAO.copy(entityManager, id, offset, length, output);
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+}
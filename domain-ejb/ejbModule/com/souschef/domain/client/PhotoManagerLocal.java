@@ -0,0 +1,22 @@
+package com.souschef.domain.client;
+
+import java.io.OutputStream;
+
+import javax.ejb.Local;
+
+import com.souschef.client.ClientException;
+
+@Local
+public interface PhotoManagerLocal extends PhotoManager {
+	/**
+	 * <p>Copies a range of a photo's bytes from the database to <code>output</code> as they are read.</p>
+	 * <p>This method is local only because <code>output</code> is written by reference.</p>
+	 * @param id Photo id.
+	 * @param offset Zero based position of the first byte to copy.
+	 * @param length Number of bytes to copy.
+	 * @param output Destination of the bytes; it's not closed.
+	 * @return Number of bytes copied, or <code>-1</code> if there is no such photo.
+	 * @throws ClientException
+	 */
+	long writePhoto(String id, long offset, long length, OutputStream output) throws ClientException;
+}
@@ -0,0 +1,10 @@
+package com.souschef.domain.client;
+
+import javax.ejb.Local;
+import javax.ejb.Stateless;
+
+@Stateless(name = "PhotoManagerLocalBean", mappedName = "PhotoManagerLocalBean")
+@Local(PhotoManagerLocal.class)
+public class PhotoManagerLocalBean extends PhotoManagerImpl implements PhotoManagerLocal{
+
+}
@@ -0,0 +1,8 @@
+package com.souschef.domain.client;
+
+import javax.ejb.Remote;
+
+@Remote
+public interface PhotoManagerRemote extends PhotoManager{
+
+}
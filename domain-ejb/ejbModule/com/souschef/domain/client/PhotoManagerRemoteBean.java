@@ -0,0 +1,10 @@
+package com.souschef.domain.client;
+
+import javax.ejb.Remote;
+import javax.ejb.Stateless;
+
+@Stateless(name = "PhotoManagerRemoteBean", mappedName = "PhotoManagerRemoteBean")
+@Remote(PhotoManagerRemote.class)
+public class PhotoManagerRemoteBean extends PhotoManagerImpl{
+
+}
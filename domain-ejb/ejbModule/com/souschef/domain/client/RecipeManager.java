@@ -1,10 +1,16 @@
 package com.souschef.domain.client;
 
 import java.util.List;
+import java.util.Map;
 
 import com.souschef.client.ClientException;
+import com.souschef.dao.Page;
 import com.souschef.domain.data.model.Ingredient;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeDetail;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.SearchResult;
+import com.souschef.domain.data.model.ShoppingListItem;
 
 public interface RecipeManager {
 	void saveRecipe(Recipe recipe) throws ClientException;
@@ -12,6 +18,31 @@ public interface RecipeManager {
 	void updateRecipe(Recipe recipe) throws ClientException;
 	Recipe findRecipeById(String recypeId) throws ClientException;
 	Recipe removeRecipe(String recypeId) throws ClientException;	
+	/**
+	 * <p>Saves several recipes with one call and in one transaction.</p>
+	 */
+	void saveRecipes(List<Recipe> recipes) throws ClientException;
+	/**
+	 * 
+	 * @param recypeIds Primary keys, possibly repeated.
+	 * @return One recipe with its ingredients per id, in the same order; <code>null</code> for unknown ids.
+	 */
+	List<Recipe> findRecipesByIds(List<String> recypeIds) throws ClientException;
+	/**
+	 * 
+	 * @param recypeIds Primary keys, possibly repeated.
+	 * @return One recipe with its components, their categories and its cost per id, in the same order; <code>null</code> 
+	 * for unknown ids.
+	 */
+	List<RecipeDetail> findRecipeDetailsByIds(List<String> recypeIds) throws ClientException;
 	List<Recipe> allRecipes() throws ClientException;
+	List<RecipeSummary> recipeSummaries() throws ClientException;
+	Page<String, Recipe> recipes(String after, int limit) throws ClientException;
 	List<Ingredient> findIngredientsForRecype(String recypeId) throws ClientException;
+	List<SearchResult> searchRecipes(String query, int limit) throws ClientException;
+	Double recipeCost(String recypeId) throws ClientException;
+	Map<String, Double> recipeCosts() throws ClientException;
+	List<RecipeSummary> feasibleRecipes() throws ClientException;
+	List<ShoppingListItem> shoppingList(Map<String, Double> servings) throws ClientException;
+	int flushSaves() throws ClientException;
 }
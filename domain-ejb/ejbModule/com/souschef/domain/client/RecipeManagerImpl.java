@@ -1,41 +1,175 @@
 package com.souschef.domain.client;
 
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 
 import com.souschef.client.ClientException;
 import com.souschef.dao.DAOException;
+import com.souschef.dao.Page;
+import com.souschef.dao.ResultHandler;
+import com.souschef.domain.catalog.Catalog;
+import com.souschef.domain.catalog.CatalogSnapshot;
+import com.souschef.domain.catalog.CostingEngine;
+import com.souschef.domain.catalog.FeasibilityEngine;
+import com.souschef.domain.catalog.SearchIndex;
+import com.souschef.domain.catalog.WriteBehindJournal;
+import com.souschef.domain.data.dao.PhotoDAO;
 import com.souschef.domain.data.dao.RecipeDAO;
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentCategory;
 import com.souschef.domain.data.model.Ingredient;
+import com.souschef.domain.data.model.IngredientLine;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeDetail;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.SearchResult;
+import com.souschef.domain.data.model.ShoppingListItem;
+import com.souschef.domain.data.model.Unit;
 
 public class RecipeManagerImpl extends DAOWrapperClient implements RecipeManager{
+	/**
+	 * Rows fetched per cursor round trip when streaming; the persistence context is also cleared at this interval.
+	 */
+	public static final int STREAM_FETCH_SIZE = 100;
+	
 	protected RecipeDAO recipeDAO;		
+	protected PhotoDAO photoDAO;
+	protected SearchIndex searchIndex = SearchIndex.getInstance(SearchResult.RECIPE);
+	protected CostingEngine costingEngine = CostingEngine.getInstance();
+	protected WriteBehindJournal<Recipe> journal = WriteBehindJournal.getInstance(Recipe.class);
+	protected FeasibilityEngine feasibilityEngine = FeasibilityEngine.getInstance();
 	
 	
 	public RecipeManagerImpl() {
 		super(); //Superfluous
 		try {
 			recipeDAO = new RecipeDAO(getEntityManagerFactory());
+			photoDAO = new PhotoDAO(getEntityManagerFactory());
 		}catch(Exception e) {
 			e.printStackTrace();
 		}
 	}	
 	
+	/**
+	 * <p>In write-behind mode the recipe is only journaled, coalesced with earlier unwritten saves of it; 
+	 * {@link #findRecipeById(String)} returns it right away, the other queries once {@link #flushSaves()} writes it. 
+	 * Stale versions are then detected by the flush instead of here.</p>
+	 */
 	@Override
-	public void saveRecipe(Recipe recipe) throws ClientException {
+	public void saveRecipe(final Recipe recipe) throws ClientException {
+		EntityManager entityManager = createEntityManager();
 		try {
-			recipeDAO.persist(recipe);			
+			if(recipe.getPhoto() != null) {
+				recipe.setPhotoId(photoDAO.store(entityManager, recipe.getPhoto()).getId());
+				recipe.setPhoto(null);
+			}
+			if(journal.isEnabled()) {
+				journal.append(recipe); // Written by flushSaves.
+				return;
+			}
+			recipeDAO.persist(entityManager, recipe);
+			afterCommit(published(recipe));
 		}catch(DAOException e) {
 			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
+		}catch(IllegalArgumentException e){
+			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
 		}finally {
-			
+			close(entityManager);
 		}		
 	}
+	
+	/**
+	 * 
+	 * @param recipe A recipe whose save is committed.
+	 * @return A task bringing the in-memory indexes and engines up to date with it.
+	 */
+	private Runnable published(final Recipe recipe) {
+		return new Runnable() {
+			final String id = recipe.getId(), name = recipe.getName();
+			final double price = recipe.getPrice();
+			final List<Ingredient> ingredients = recipe.getIngredients() == null ? null : new ArrayList<Ingredient>(recipe.getIngredients());
+			@Override
+			public void run() {
+				searchIndex.put(id, name);
+				costingEngine.putRecipe(id, ingredients);
+				feasibilityEngine.putRecipe(new RecipeSummary(id, name, price), ingredients);
+			}
+		};
+	}
+	
+	/**
+	 * <p>Writes the oldest saves waiting in the write-behind journal as JDBC batches, and publishes them to the indexes once 
+	 * they commit.</p>
+	 * <p>If the transaction rolls back the saves go back to the journal, so they're retried by the next flush.</p>
+	 * @return Number of recipes written; zero when write-behind is disabled.
+	 */
+	@Override
+	public int flushSaves() throws ClientException {
+		final Map<String, Recipe> drained;
+		final List<Runnable> publications = new ArrayList<Runnable>();
+		Runnable committed, rolledBack;
+		boolean transactional;
+		EntityManager entityManager;
+		
+		if(!journal.isEnabled())
+			return 0;
+		try{
+			drained = journal.drain();
+		}catch(IOException e){
+			throw new ClientException(e);
+		}
+		if(drained.isEmpty())
+			return 0;
+		
+		committed = new Runnable() {
+			@Override
+			public void run() {
+				journal.commit(drained.keySet());
+				for(Runnable publication: publications)
+					publication.run();
+			}
+		};
+		rolledBack = new Runnable() {
+			@Override
+			public void run() {
+				journal.restore(drained.keySet());
+			}
+		};
+		transactional = afterCompletion(committed, rolledBack);
+		
+		entityManager = createEntityManager();
+		try{
+			for(Recipe recipe: drained.values())
+				publications.add(published(recipe)); // Copies the ingredient lists before persistAll wraps them in Hibernate collections.
+			recipeDAO.persistAll(entityManager, drained.values());
+		}catch(DAOException e){
+			if(!transactional)
+				rolledBack.run();
+			throw new ClientException(e); // A system exception; the container rolls back and the synchronization restores the journal.
+		}catch(RuntimeException e){
+			if(!transactional)
+				rolledBack.run();
+			throw e;
+		}finally {
+			close(entityManager);
+		}
+		
+		if(!transactional)
+			committed.run();
+		return drained.size();
+	}
 
 	public void insertRecipe(Recipe recipe) throws ClientException {
 		saveRecipe(recipe);
@@ -47,53 +181,414 @@ public class RecipeManagerImpl extends DAOWrapperClient implements RecipeManager
 	
 	@Override
 	public Recipe findRecipeById(String id) throws ClientException {
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try{
-			Recipe recipe = recipeDAO.findById(entityManager, id);
-			return recipe;
+			Recipe recipe = journal.isEnabled() ? journal.find(id) : null;
+			return recipe != null ? recipe : recipeDAO.findById(entityManager, id);
 		}catch(DAOException e){
 			throw new ClientException(e);
-		}		
+		}catch(IOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
 	}
 
+	/**
+	 * <p>Photos are stored first; the recipes are then journaled like {@link #saveRecipe(Recipe)} does, or written one 
+	 * after another in the caller's transaction, each one only writing its changed ingredients.</p>
+	 */
 	@Override
-	public Recipe removeRecipe(String id) throws ClientException {
+	public void saveRecipes(List<Recipe> recipes) throws ClientException {
+		EntityManager entityManager = createEntityManager();
+		try {
+			for(Recipe recipe: recipes)
+				if(recipe.getPhoto() != null) {
+					recipe.setPhotoId(photoDAO.store(entityManager, recipe.getPhoto()).getId());
+					recipe.setPhoto(null);
+				}
+			if(journal.isEnabled()) {
+				journal.appendAll(recipes); // All or none; written by flushSaves.
+				return;
+			}
+			for(Recipe recipe: recipes) {
+				recipeDAO.persist(entityManager, recipe);
+				afterCommit(published(recipe));
+			}
+		}catch(DAOException e) {
+			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
+		}catch(IllegalArgumentException e){
+			throw new ClientException(e);
+		}catch(IllegalStateException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+	
+	/**
+	 * <p>Unwritten saves come from the write-behind journal; the other recipes are read with 
+	 * {@link RecipeDAO#recipesByIds(EntityManager, java.util.Collection)}, so the whole list costs two statements per 
+	 * {@link RecipeDAO#IN_LIST_LIMIT} distinct ids.</p>
+	 */
+	@Override
+	public List<Recipe> findRecipesByIds(List<String> ids) throws ClientException {
+		Map<String, Recipe> found = new HashMap<String, Recipe>();
+		List<String> missing = new ArrayList<String>();
+		List<Recipe> recipes = new ArrayList<Recipe>(ids.size());
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			for(String id: new LinkedHashSet<String>(ids)) {
+				Recipe pending = journal.isEnabled() && id != null ? journal.find(id) : null;
+				
+				if(pending != null)
+					found.put(id, pending);
+				else if(id != null)
+					missing.add(id);
+			}
+			if(!missing.isEmpty())
+				for(Recipe recipe: recipeDAO.recipesByIds(entityManager, missing))
+					found.put(recipe.getId(), recipe);
+			
+			for(String id: ids)
+				recipes.add(found.get(id));
+			return recipes;
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}catch(IOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+	
+	/**
+	 * <p>Recipes are read like {@link #findRecipesByIds(List)} does, while their components, categories and costs come from 
+	 * the catalogue and the costing engine, so a screen's worth of recipes costs one remote call and two statements. Costs 
+	 * reflect committed saves only.</p>
+	 */
+	@Override
+	public List<RecipeDetail> findRecipeDetailsByIds(List<String> ids) throws ClientException {
+		List<Recipe> recipes = findRecipesByIds(ids);
+		List<RecipeDetail> details = new ArrayList<RecipeDetail>(recipes.size());
+		try{
+			CatalogSnapshot snapshot = Catalog.getInstance().snapshot(getEntityManagerFactory());
+			CostingEngine costs = costingEngine();
+			
+			for(Recipe recipe: recipes)
+				details.add(recipe == null ? null : detail(recipe, snapshot, costs));
+			return details;
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
+	
+	private RecipeDetail detail(Recipe recipe, CatalogSnapshot snapshot, CostingEngine costs) {
+		Map<String, Component> components = new LinkedHashMap<String, Component>();
+		Map<String, ComponentCategory> categories = new LinkedHashMap<String, ComponentCategory>();
+		
+		if(recipe.getIngredients() != null)
+			for(Ingredient ingredient: recipe.getIngredients()) {
+				String id = ingredient.getComponent() == null ? null : ingredient.getComponent().getId();
+				Component component = id == null || components.containsKey(id) ? null : snapshot.findComponentById(id);
+				
+				if(component == null)
+					continue;
+				components.put(id, component);
+				if(component.getCategory() != null && !categories.containsKey(component.getCategory().getId()))
+					categories.put(component.getCategory().getId(), component.getCategory());
+			}
+		return new RecipeDetail(
+			recipe, 
+			new ArrayList<Component>(components.values()), 
+			new ArrayList<ComponentCategory>(categories.values()), 
+			costs.cost(recipe.getId())
+		);
+	}
+
+	@Override
+	public Recipe removeRecipe(final String id) throws ClientException {
 		Recipe recipe;
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createEntityManager();
 		try {
+			if(journal.isEnabled())
+				journal.discard(id);
 			recipe = recipeDAO.findById(entityManager, id);
-			if(recipe != null)
+			if(recipe != null) {
 				recipeDAO.remove(entityManager, recipe);
+				afterCommit(new Runnable() {
+					@Override
+					public void run() {
+						searchIndex.delete(id);
+						costingEngine.removeRecipe(id);
+						feasibilityEngine.removeRecipe(id);
+					}
+				});
+			}
 			return recipe;
 		}catch(DAOException e) {
 			throw new ClientException(e);
+		}catch(IOException e) {
+			throw new ClientException(e);
 		}catch(IllegalStateException e){
 			throw new ClientException(e);
+		}finally {
+			close(entityManager);
 		}
 		
 	}
 
 	@Override
 	public List<Recipe> allRecipes() throws ClientException {
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try{
 			List<Recipe> recipes =  recipeDAO.allRecipes(entityManager);		
 			return recipes;
 		}catch(DAOException e){
 			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+
+	@Override
+	public List<RecipeSummary> recipeSummaries() throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			return recipeDAO.recipeSummaries(entityManager);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+
+	public int streamRecipes(ResultHandler<? super Recipe> handler) throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			return recipeDAO.scrollRecipes(entityManager, STREAM_FETCH_SIZE, handler);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+
+	@Override
+	public Page<String, Recipe> recipes(String after, int limit) throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			return recipeDAO.recipes(entityManager, after, limit);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+
+	/**
+	 * <p>Returns the recipe name index, loading it on first use.</p>
+	 * @return A loaded index.
+	 * @throws DAOException If recipe names can't be read from the database.
+	 */
+	protected SearchIndex searchIndex() throws DAOException {
+		EntityManager entityManager;
+		Map<String, String> names;
+		
+		if(!searchIndex.isLoaded()) {
+			synchronized(searchIndex) {
+				if(!searchIndex.isLoaded()) {
+					entityManager = createReadOnlyEntityManager();
+					try {
+						names = new HashMap<String, String>();
+						for(RecipeSummary summary: recipeDAO.recipeSummaries(entityManager))
+							names.put(summary.getId(), summary.getName());
+						searchIndex.load(names);
+					}finally {
+						close(entityManager);
+					}
+				}
+			}
+		}
+		return searchIndex;
+	}
+	
+	/**
+	 * <p>Returns the costing engine, loading it on first use from the catalogue and every recipe's ingredient lines.</p>
+	 * @return A loaded engine.
+	 * @throws DAOException If recipes or components can't be read from the database.
+	 */
+	protected CostingEngine costingEngine() throws DAOException {
+		EntityManager entityManager;
+		
+		if(!costingEngine.isLoaded()) {
+			synchronized(costingEngine) {
+				if(!costingEngine.isLoaded()) {
+					entityManager = createReadOnlyEntityManager();
+					try {
+						costingEngine.load(
+							Catalog.getInstance().snapshot(getEntityManagerFactory()).components(), 
+							recipeDAO.ingredientLines(entityManager)
+						);
+					}finally {
+						close(entityManager);
+					}
+				}
+			}
+		}
+		return costingEngine;
+	}
+	
+	/**
+	 * <p>Returns the feasibility engine, loading it on first use from the catalogue, the recipe summaries and every recipe's 
+	 * ingredient lines.</p>
+	 * @return A loaded engine.
+	 * @throws DAOException If recipes or components can't be read from the database.
+	 */
+	protected FeasibilityEngine feasibilityEngine() throws DAOException {
+		EntityManager entityManager;
+		
+		if(!feasibilityEngine.isLoaded()) {
+			synchronized(feasibilityEngine) {
+				if(!feasibilityEngine.isLoaded()) {
+					entityManager = createReadOnlyEntityManager();
+					try {
+						feasibilityEngine.load(
+							Catalog.getInstance().snapshot(getEntityManagerFactory()).components(), 
+							recipeDAO.recipeSummaries(entityManager),
+							recipeDAO.ingredientLines(entityManager)
+						);
+					}finally {
+						close(entityManager);
+					}
+				}
+			}
+		}
+		return feasibilityEngine;
+	}
+	
+	/**
+	 * <p>Stock adjustments count once they're flushed.</p>
+	 */
+	@Override
+	public List<RecipeSummary> feasibleRecipes() throws ClientException {
+		try{
+			return feasibilityEngine().feasibleRecipes();
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
+	
+	/**
+	 * <p>Ingredients are read with one statement per {@link RecipeDAO#IN_LIST_LIMIT} recipes and components come from the 
+	 * catalogue, so the list costs no per-recipe or per-component round trips. Totals are accumulated in a 
+	 * <code>double[]</code> indexed through a single component id map. Stock adjustments count once they're flushed.</p>
+	 * <p>Amounts are added up in the component's package unit or, for components without one, in the unit of the component's 
+	 * first ingredient line; amounts that can't be converted to it are left out and the item is flagged as not convertible.</p>
+	 * @param servings Multiplier of every recipe, keyed by recipe id; recipes without ingredients are ignored.
+	 * @return One item per component used, in order of first use.
+	 */
+	@Override
+	public List<ShoppingListItem> shoppingList(Map<String, Double> servings) throws ClientException {
+		EntityManager entityManager = createReadOnlyEntityManager();
+		try{
+			CatalogSnapshot snapshot = Catalog.getInstance().snapshot(getEntityManagerFactory());
+			List<IngredientLine> lines = servings.isEmpty() ? new ArrayList<IngredientLine>() : recipeDAO.ingredientLines(entityManager, servings.keySet());
+			Map<String, Integer> indexes = new HashMap<String, Integer>();
+			List<ShoppingListItem> items = new ArrayList<ShoppingListItem>();
+			double[] required = new double[lines.size()];
+			double[] packageSizes = new double[lines.size()];
+			
+			for(IngredientLine line: lines) {
+				Integer index = indexes.get(line.getComponentId());
+				Double multiplier = servings.get(line.getRecipeId());
+				ShoppingListItem item;
+				double amount;
+				
+				if(index == null) {
+					Component component = snapshot.findComponentById(line.getComponentId());
+					
+					indexes.put(line.getComponentId(), index = items.size());
+					items.add(component == null || component.getPackageUnit() == null ? 
+						new ShoppingListItem(line.getComponentId(), component == null ? null : component.getName(), line.getUnit()) : 
+						new ShoppingListItem(component.getId(), component.getName(), component.getPackageUnit())
+					);
+					if(component != null && component.getPackageSize() > 0) {
+						packageSizes[index] = component.getPackageSize();
+						items.get(index).setAvailable(component.getStock() * component.getPackageSize());
+					}
+				}
+				
+				item = items.get(index);
+				amount = line.getAmount() * (multiplier == null ? 1 : multiplier);
+				if(line.getUnit() != null && item.getUnit() == null)
+					amount = Double.NaN; // Earlier amounts of the item had no unit to convert to.
+				else if(line.getUnit() != null && line.getUnit() != item.getUnit())
+					amount = line.getUnit().convert(amount, item.getUnit());
+				
+				if(Double.isNaN(amount))
+					item.setConvertible(false);
+				else
+					required[index] += amount;
+			}
+			
+			for(int index = 0; index < items.size(); index++) {
+				ShoppingListItem item = items.get(index);
+				
+				item.setRequired(required[index]);
+				item.setShortfall(Math.max(0, required[index] - item.getAvailable()));
+				if(item.getShortfall() > 0 && packageSizes[index] > 0)
+					item.setPackages((int)Math.ceil(item.getShortfall() / packageSizes[index]));
+			}
+			return items;
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}finally {
+			close(entityManager);
+		}
+	}
+	
+	@Override
+	public Double recipeCost(String recypeId) throws ClientException {
+		try{
+			return costingEngine().cost(recypeId);
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
+	
+	@Override
+	public Map<String, Double> recipeCosts() throws ClientException {
+		try{
+			return costingEngine().costs();
+		}catch(DAOException e){
+			throw new ClientException(e);
+		}
+	}
+	
+	@Override
+	public List<SearchResult> searchRecipes(String query, int limit) throws ClientException {
+		try{
+			return searchIndex().search(query, limit);
+		}catch(DAOException e){
+			throw new ClientException(e);
 		}
 	}
 
 	@Override
 	public List<Ingredient> findIngredientsForRecype(String recypeId) throws ClientException {
-		EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+		EntityManager entityManager = createReadOnlyEntityManager();
 		try{
 			Recipe recipe = recipeDAO.findById(entityManager, recypeId);
 			List<Ingredient> ingredients = recipe.getIngredients() ;			
 			return ingredients;			
 		}catch(DAOException e){
 			throw new ClientException(e);
-		}		
+		}finally {
+			close(entityManager);
+		}
 	}
 	
 	
@@ -2,7 +2,18 @@ package com.souschef.domain.client;
 
 import javax.ejb.Local;
 
+import com.souschef.client.ClientException;
+import com.souschef.dao.ResultHandler;
+import com.souschef.domain.data.model.Recipe;
+
 @Local
 public interface RecipeManagerLocal  extends RecipeManager{
-
+	/**
+	 * <p>Feeds every recipe to <code>handler</code> straight from a database cursor, without building a list first.</p>
+	 * <p>This method is local only because <code>handler</code> is invoked by reference.</p>
+	 * @param handler A non null object that receives each recipe.
+	 * @return Number of recipes read.
+	 * @throws ClientException
+	 */
+	int streamRecipes(ResultHandler<? super Recipe> handler) throws ClientException;
 }
@@ -0,0 +1,57 @@
+package com.souschef.domain.client;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.souschef.domain.catalog.WriteBehindJournal;
+import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.Recipe;
+
+/**
+ * <p>Writes the saves queued in the write-behind journals every second, when write-behind is enabled.</p>
+ * <p>Components go first, so recipes saved in the same burst find the components their ingredients reference. Saves 
+ * pending when the server stops stay in the journals and are written after the restart.</p>
+ * @see WriteBehindJournal
+ */
+@Singleton(name = "SaveFlushBean")
+@DependsOn("EntityManagerFactoryBean")
+@Startup
+public class SaveFlushBean {
+	private static final Logger logger = LogManager.getLogger(SaveFlushBean.class);
+	
+	@EJB(beanName="ComponentManagerLocalBean")
+	ComponentManagerLocal componentManager;
+	
+	@EJB(beanName="RecipeManagerLocalBean")
+	RecipeManagerLocal recipeManager;
+	
+	/**
+	 * <p>Opens the journals while the application starts, so a write-behind configuration without a journal directory fails 
+	 * the deployment instead of the first save.</p>
+	 */
+	@PostConstruct
+	void checkJournals() {
+		WriteBehindJournal.getInstance(Component.class);
+		WriteBehindJournal.getInstance(Recipe.class);
+	}
+	
+	@Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED) // The managers commit each batch on their own.
+	public void flush() {
+		try {
+			while(componentManager.flushSaves() > 0);
+			while(recipeManager.flushSaves() > 0);
+		}catch(RuntimeException e) {
+			logger.error("Couldn't write the journaled saves; the next flush retries them", e);
+		}
+	}
+}
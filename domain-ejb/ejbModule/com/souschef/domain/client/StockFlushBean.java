@@ -0,0 +1,48 @@
+package com.souschef.domain.client;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.DependsOn;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>Writes the stock adjustments accumulated by {@link ComponentManager#adjustStock(String, double)} every few seconds.</p>
+ * <p>The timer isn't persistent; the adjustments still pending when the application stops are written by {@link #drain()}, 
+ * before the entity manager factory closes.</p>
+ */
+@Singleton(name = "StockFlushBean")
+@Startup
+@DependsOn("EntityManagerFactoryBean")
+public class StockFlushBean {
+	private static final Logger logger = LogManager.getLogger(StockFlushBean.class);
+	
+	@EJB(beanName="ComponentManagerLocalBean")
+	ComponentManagerLocal componentManager;
+	
+	@Schedule(hour = "*", minute = "*", second = "*/5", persistent = false)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED) // The manager commits each flush on its own.
+	public void flush() {
+		try {
+			componentManager.flushStock();
+		}catch(RuntimeException e) {
+			logger.error("Stock adjustments couldn't be written; they stay queued for the next flush", e);
+		}
+	}
+	
+	@PreDestroy
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	void drain() {
+		try {
+			while(componentManager.flushStock() > 0);
+		}catch(RuntimeException e) {
+			logger.error("Stock adjustments pending at shutdown couldn't be written", e);
+		}
+	}
+}
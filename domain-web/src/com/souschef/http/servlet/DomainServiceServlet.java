@@ -1,16 +1,25 @@
 package com.souschef.http.servlet;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 
 
 import com.souschef.client.ClientException;
+import com.souschef.dao.Page;
+import com.souschef.dao.ResultHandler;
 import com.souschef.domain.client.ComponentManager;
-import com.souschef.domain.client.RecipeManager;
+import com.souschef.domain.client.RecipeManagerLocal;
 import com.souschef.domain.data.model.ComponentCategory;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeSummary;
+import com.souschef.domain.data.model.SearchResult;
+import com.souschef.domain.data.model.ShoppingListItem;
 import com.souschef.domain.data.model.Component;
+import com.souschef.domain.data.model.ComponentSummary;
 
 /**
  * Servlet implementation class DomainServiceServlet
@@ -21,7 +30,7 @@ public class DomainServiceServlet extends ServiceServlet {
 	ComponentManager componentManager;
    
 	@EJB(beanName="RecipeManagerLocalBean")
-	RecipeManager recipeManager;	
+	RecipeManagerLocal recipeManager;	
 
     @EndPoint(path="/component-category/all")
     public List<ComponentCategory> allCategories(RequestContext request) throws ClientException{
@@ -36,15 +45,97 @@ public class DomainServiceServlet extends ServiceServlet {
     	return categories;
     }    
     
+    @EndPoint(path="/component/summaries-by-category/\\S+")
+    public List<ComponentSummary> componentSummariesByCategory(RequestContext request) throws ClientException{    	
+    	String id  = request.getUriParts()[2]; //0->component, 1->summaries-by-category, 2->\\S+
+    	return componentManager.componentSummariesByCategoryId(id);
+    }    
+    
+    @EndPoint(path="/component/page-by-category/\\S+")
+    public Page<String, Component> componentsByCategoryPage(PageRequestContext request) throws ClientException{    	
+    	String id  = request.getUriParts()[2]; //0->component, 1->page-by-category, 2->\\S+
+    	return componentManager.componentsByCategoryId(id, request.getAfter(), request.getLimit());
+    }    
+    
     @EndPoint(path="/component/")
     public Component component(ComponentRequestContext request) throws ClientException{
     	componentManager.saveComponent(request.getBean());
     	return request.getBean();
     } 
     
-    @EndPoint(path="/recype/all")
+    /**
+     * Type-ahead over component and recipe names: <code>/search?q=jalap&amp;limit=10</code>.
+     */
+    @EndPoint(path="/search")
+    public List<SearchResult> search(SearchRequestContext request) throws ClientException{
+    	List<SearchResult> results = new ArrayList<SearchResult>(componentManager.searchComponents(request.getQuery(), request.getLimit()));
+    	
+    	results.addAll(recipeManager.searchRecipes(request.getQuery(), request.getLimit()));
+    	Collections.sort(results, SearchResult.BEST_FIRST);
+    	return results.size() > request.getLimit() ? new ArrayList<SearchResult>(results.subList(0, request.getLimit())) : results;
+    }
+    
+    @EndPoint(path="/cache/statistics")
+    public Map<String, Map<String, Long>> cacheStatistics(RequestContext request) throws ClientException{
+    	return componentManager.cacheStatistics();
+    }
+    
+    /**
+     * Adds <code>delta</code> to a component's stock; with <code>sync=true</code> every pending adjustment is written before 
+     * answering, and the answer is the number of components written.
+     */
+    @EndPoint(path="/component/stock/\\S+")
+    public Integer adjustStock(StockRequestContext request) throws ClientException{
+    	String id  = request.getUriParts()[2]; //0->component, 1->stock, 2->\\S+
+    	
+    	componentManager.adjustStock(id, request.getDelta());
+    	return request.getSync() ? componentManager.flushStock() : 0;
+    }
+    
+    @EndPoint(path="/recype/all", timeout=10000)
     public List<Recipe> allRecipes(RequestContext request) throws ClientException{    	
     	List<Recipe> recipes = recipeManager.allRecipes();
     	return recipes;
     }    
+    
+    @EndPoint(path="/recype/feasible")
+    public List<RecipeSummary> feasibleRecipes(RequestContext request) throws ClientException{    	
+    	return recipeManager.feasibleRecipes();
+    }    
+    
+    @EndPoint(path="/recype/shopping-list")
+    public List<ShoppingListItem> shoppingList(ShoppingListRequestContext request) throws ClientException{    	
+    	return recipeManager.shoppingList(request.getServings());
+    }    
+    
+    @EndPoint(path="/recype/costs")
+    public Map<String, Double> recipeCosts(RequestContext request) throws ClientException{    	
+    	return recipeManager.recipeCosts();
+    }    
+    
+    @EndPoint(path="/recype/cost/\\S+")
+    public Double recipeCost(RequestContext request) throws ClientException{    	
+    	String id  = request.getUriParts()[2]; //0->recype, 1->cost, 2->\\S+
+    	return recipeManager.recipeCost(id);
+    }    
+    
+    @EndPoint(path="/recype/summaries")
+    public List<RecipeSummary> recipeSummaries(RequestContext request) throws ClientException{    	
+    	return recipeManager.recipeSummaries();
+    }    
+    
+    @EndPoint(path="/recype/stream", timeout=120000)
+    public StreamingResult streamRecipes(RequestContext request) throws ClientException{    	
+    	return new StreamingResult() {
+			@Override
+			public int stream(ResultHandler<Object> handler) throws ClientException {
+				return recipeManager.streamRecipes(handler);
+			}
+		};
+    }    
+    
+    @EndPoint(path="/recype/page")
+    public Page<String, Recipe> recipesPage(PageRequestContext request) throws ClientException{    	
+    	return recipeManager.recipes(request.getAfter(), request.getLimit());
+    }    
 }
@@ -0,0 +1,291 @@
+package com.souschef.http.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.ejb.EJB;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.souschef.client.ClientException;
+import com.souschef.domain.client.PhotoManagerLocal;
+import com.souschef.domain.data.model.Photo;
+import com.souschef.http.servlet.photo.ThumbnailCache;
+import com.souschef.http.servlet.photo.Thumbnailer;
+
+/**
+ * <p>Serves photos as binary content at <code>/photo/{id}</code>.</p>
+ * <p>Bytes are copied from the database to the response as they are read. Photos are immutable because their id is the 
+ * digest of their content, so the id is the entity tag and responses may be cached forever. Single byte ranges are honored 
+ * so clients can resume downloads; multiple ranges get the whole photo.</p>
+ * <p>List views ask for <code>/photo/{id}?size=N</code>, where N is one of the sizes configured in the <code>thumbnail.sizes</code> 
+ * init parameter, and get a thumbnail that fits in an N by N box. Thumbnails are generated on first request and kept in a 
+ * {@link ThumbnailCache}; photos outside {@link #INLINE_TYPES}, and formats <code>javax.imageio</code> can't read, are served 
+ * as they are.</p>
+ * <p>Only the raster types in {@link #INLINE_TYPES} are served inline. Anything else, SVG included since it may carry 
+ * scripts, goes out as <code>application/octet-stream</code> attachment in a sandbox, so an upload can't run in the 
+ * application's origin. Browsers are told not to sniff either way.</p>
+ */
+public class PhotoServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	
+	public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+	
+	/**
+	 * Init parameter with the comma separated thumbnail sizes, in pixels, clients may ask for.
+	 */
+	public static final String SIZES_PARAMETER = "thumbnail.sizes";
+	
+	/**
+	 * Init parameter with the bytes of thumbnails kept in memory.
+	 */
+	public static final String CACHE_BYTES_PARAMETER = "thumbnail.cache.bytes";
+	
+	/**
+	 * Init parameter with the directory where thumbnails are kept; without it they are only kept in memory.
+	 */
+	public static final String CACHE_DIRECTORY_PARAMETER = "thumbnail.cache.dir";
+	
+	/**
+	 * Init parameter with the JPEG quality of thumbnails, between 0 and 1.
+	 */
+	public static final String QUALITY_PARAMETER = "thumbnail.quality";
+	
+	/**
+	 * Content types served inline; every other photo is downloaded as an attachment.
+	 */
+	public static final Set<String> INLINE_TYPES = new HashSet<String>(Arrays.asList("image/jpeg", "image/png", "image/gif", "image/webp"));
+	
+	public static final String ATTACHMENT_TYPE = "application/octet-stream";
+	
+	public static final String DEFAULT_SIZES = "96,160,320";
+	public static final long DEFAULT_CACHE_BYTES = 16L * 1024 * 1024;
+	public static final float DEFAULT_QUALITY = 0.8f;
+	
+	private static final String BYTES_UNIT = "bytes";
+	
+	@EJB(beanName="PhotoManagerLocalBean")
+	PhotoManagerLocal photoManager;
+	
+	private Set<Integer> sizes = new HashSet<Integer>();
+	private ThumbnailCache thumbnails;
+	private Thumbnailer thumbnailer;
+	
+	@Override
+	public void init(ServletConfig config) throws ServletException {
+		String directory = config.getInitParameter(CACHE_DIRECTORY_PARAMETER);
+		String capacity = config.getInitParameter(CACHE_BYTES_PARAMETER);
+		String quality = config.getInitParameter(QUALITY_PARAMETER);
+		String sizes = config.getInitParameter(SIZES_PARAMETER);
+		
+		super.init(config);
+		if(System.getProperty("java.awt.headless") == null)
+			System.setProperty("java.awt.headless", "true");
+		try {
+			for(String size: (sizes != null ? sizes : DEFAULT_SIZES).split(","))
+				this.sizes.add(Integer.valueOf(size.trim()));
+			thumbnails = new ThumbnailCache(
+				capacity != null ? Long.parseLong(capacity.trim()) : DEFAULT_CACHE_BYTES, 
+				directory != null && !directory.trim().isEmpty() ? new File(directory.trim()) : null
+			);
+			thumbnailer = new Thumbnailer(quality != null ? Float.parseFloat(quality.trim()) : DEFAULT_QUALITY);
+		}catch(NumberFormatException e) {
+			throw new ServletException(e);
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		serve(req, resp, true);
+	}
+
+	@Override
+	protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		serve(req, resp, false);
+	}
+	
+	protected void serve(HttpServletRequest req, HttpServletResponse resp, boolean body) throws ServletException, IOException {
+		String id = req.getPathInfo() == null ? "" : req.getPathInfo().substring(1);
+		Photo photo;
+		String etag;
+		long[] range;
+		long offset = 0;
+		long count;
+		
+		if(id.isEmpty() || id.indexOf('/') >= 0) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		try {
+			photo = photoManager.findPhotoById(id);
+			if(photo == null) {
+				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			
+			if(req.getParameter("size") != null && INLINE_TYPES.contains(photo.getContentType()) && serveThumbnail(req, resp, photo, body))
+				return;
+			
+			etag = '"' + photo.getId() + '"';
+			resp.setHeader("X-Content-Type-Options", "nosniff");
+			resp.setHeader("ETag", etag);
+			resp.setHeader("Cache-Control", CACHE_CONTROL);
+			resp.setHeader("Accept-Ranges", BYTES_UNIT);
+			if(matches(req.getHeader("If-None-Match"), etag)) {
+				resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			
+			count = photo.getLength();
+			range = getRange(req, etag, photo.getLength());
+			if(range != null) {
+				if(range.length == 0) {
+					resp.setHeader("Content-Range", String.format("%s */%d", BYTES_UNIT, photo.getLength()));
+					resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				offset = range[0];
+				count = range[1] - range[0] + 1;
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setHeader("Content-Range", String.format("%s %d-%d/%d", BYTES_UNIT, range[0], range[1], photo.getLength()));
+			}
+			
+			if(INLINE_TYPES.contains(photo.getContentType())) {
+				resp.setContentType(photo.getContentType());
+			}else {
+				resp.setContentType(ATTACHMENT_TYPE);
+				resp.setHeader("Content-Disposition", "attachment");
+				resp.setHeader("Content-Security-Policy", "sandbox");
+			}
+			resp.setHeader("Content-Length", String.valueOf(count));
+			if(body && count > 0) {
+				photoManager.writePhoto(id, offset, count, resp.getOutputStream());
+				resp.getOutputStream().flush();
+			}
+		}catch(ClientException e) {
+			throw new ServletException(e);
+		}
+	}
+	
+	/**
+	 * <p>Answers with the thumbnail of <code>photo</code> at the size requested by the client.</p>
+	 * @return <code>false</code> if <code>photo</code> can't be scaled and must be served as it is.
+	 */
+	protected boolean serveThumbnail(HttpServletRequest req, HttpServletResponse resp, final Photo photo, boolean body) throws ServletException, IOException {
+		final int size;
+		String etag;
+		byte[] thumbnail;
+		
+		try {
+			size = Integer.parseInt(req.getParameter("size"));
+		}catch(NumberFormatException e) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return true;
+		}
+		if(!sizes.contains(size)) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return true;
+		}
+		
+		etag = '"' + photo.getId() + "-" + size + '"';
+		if(matches(req.getHeader("If-None-Match"), etag)) {
+			resp.setHeader("ETag", etag);
+			resp.setHeader("Cache-Control", CACHE_CONTROL);
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		
+		thumbnail = thumbnails.get(photo.getId() + "-" + size, new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				ByteArrayOutputStream original = new ByteArrayOutputStream((int) photo.getLength());
+				
+				photoManager.writePhoto(photo.getId(), 0, photo.getLength(), original);
+				return thumbnailer.scale(original.toByteArray(), size);
+			}
+		});
+		if(thumbnail == null)
+			return false;
+		
+		resp.setHeader("X-Content-Type-Options", "nosniff");
+		resp.setHeader("ETag", etag);
+		resp.setHeader("Cache-Control", CACHE_CONTROL);
+		resp.setContentType(Thumbnailer.contentType(thumbnail));
+		resp.setContentLength(thumbnail.length);
+		if(body) {
+			resp.getOutputStream().write(thumbnail);
+			resp.getOutputStream().flush();
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param header Value of <code>If-None-Match</code>; it may be <code>null</code>.
+	 * @param etag Current entity tag.
+	 * @return <code>true</code> if any of the tags in <code>header</code> weakly matches <code>etag</code>.
+	 */
+	protected boolean matches(String header, String etag) {
+		if(header == null)
+			return false;
+		
+		for(String tag: header.split(",")) {
+			tag = tag.trim();
+			if(tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if(tag.equals("*") || tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * <p>Parses a single <code>Range</code> request.</p>
+	 * @param req Current request.
+	 * @param etag Current entity tag, compared against <code>If-Range</code>.
+	 * @param length Size of the photo.
+	 * @return First and last positions of the range, an empty array if it can't be satisfied, or <code>null</code> if the 
+	 * whole photo must be sent.
+	 */
+	protected long[] getRange(HttpServletRequest req, String etag, long length) {
+		String header = req.getHeader("Range");
+		String ifRange = req.getHeader("If-Range");
+		String spec;
+		int dash;
+		long first;
+		long last;
+		
+		if(header == null || !header.startsWith(BYTES_UNIT + "=") || (ifRange != null && !ifRange.trim().equals(etag)))
+			return null;
+		
+		spec = header.substring(BYTES_UNIT.length() + 1).trim();
+		dash = spec.indexOf('-');
+		if(dash < 0 || spec.indexOf(',') >= 0)
+			return null;
+		
+		try {
+			if(dash == 0) { // Suffix range: the last N bytes.
+				first = Math.max(0, length - Long.parseLong(spec.substring(1)));
+				last = length - 1;
+			}else {
+				first = Long.parseLong(spec.substring(0, dash));
+				last = dash == spec.length() - 1 ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+			}
+		}catch(NumberFormatException e) {
+			return null;
+		}
+		
+		if(first >= length || first > last)
+			return new long[0];
+		return new long[]{first, last};
+	}
+}
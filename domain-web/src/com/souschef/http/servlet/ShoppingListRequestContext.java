@@ -0,0 +1,43 @@
+package com.souschef.http.servlet;
+
+import java.util.HashMap;
+
+/**
+ * <p>Request context for shopping lists; the JSON body carries a <code>servings</code> object mapping recipe ids to 
+ * multipliers, e.g. <code>{"servings":{"r1":2, "r2":0.5}}</code>.</p>
+ * @author rsolano
+ *
+ */
+public class ShoppingListRequestContext extends RequestContext {
+
+	/**
+	 * <p>Typed map the JSON parser can populate.</p>
+	 */
+	public static class Servings extends HashMap<String, Double> {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 4907353213960542512L;
+		
+	}
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 6357823094124874710L;
+
+	private Servings servings = new Servings();
+
+	/**
+	 * 
+	 * @return Multiplier of every recipe in the list, keyed by recipe id.
+	 */
+	public Servings getServings() {
+		return servings;
+	}
+
+	public void setServings(Servings servings) {
+		this.servings = servings;
+	}
+}
@@ -0,0 +1,57 @@
+package com.souschef.http.servlet;
+
+import com.souschef.client.ClientException;
+
+/**
+ * <p>Request context for stock adjustments; <code>delta</code> and <code>sync</code> can be sent either in the JSON body or 
+ * in the query string, body values take precedence.</p>
+ * @author rsolano
+ *
+ */
+public class StockRequestContext extends RequestContext {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -2290725160262542271L;
+
+	private Double delta;
+	
+	private Boolean sync;
+
+	/**
+	 * 
+	 * @return Amount to add to the stock; negative to consume it.
+	 * @throws ClientException If it's missing or malformed.
+	 */
+	public Double getDelta() throws ClientException {
+		String value;
+		
+		if(delta != null)
+			return delta;
+		value = getParameter("delta");
+		if(value == null)
+			throw new ClientException(new IllegalArgumentException("Missing delta"));
+		try {
+			return Double.valueOf(value);
+		}catch(NumberFormatException e) {
+			throw new ClientException(e);
+		}
+	}
+
+	public void setDelta(Double delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * 
+	 * @return <code>true</code> if the adjustment must be written before answering.
+	 */
+	public Boolean getSync() {
+		return sync != null ? sync : Boolean.valueOf(getParameter("sync"));
+	}
+
+	public void setSync(Boolean sync) {
+		this.sync = sync;
+	}
+}
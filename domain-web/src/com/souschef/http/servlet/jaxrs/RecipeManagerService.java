@@ -2,31 +2,41 @@ package com.souschef.http.servlet.jaxrs;
 
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
+import javax.servlet.ServletConfig;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import com.souschef.client.ClientException;
+import com.souschef.dao.DAO;
+import com.souschef.dao.Page;
 import com.souschef.domain.client.RecipeManagerLocal;
 import com.souschef.domain.data.model.Ingredient;
 import com.souschef.domain.data.model.Recipe;
+import com.souschef.domain.data.model.RecipeSummary;
 import com.souschef.json.parser.JSONParserException;
 
 @Path("/recipe")
 public class RecipeManagerService {
 	
-	
 	@javax.ws.rs.core.Context
 	UriInfo uriInfo;
+	@javax.ws.rs.core.Context
+	ServletConfig servletConfig;
 	InitialContext context;
 	
 	public RecipeManagerService() throws JSONParserException, NamingException {
 		context = new InitialContext();
 	}
 	
+	private <T> T guarded(String path, String method, Callable<T> body) throws ClientException {
+		return ResourceGuard.of("/recipe/" + path, method, servletConfig).invoke(body);
+	}
+	
 	private RecipeManagerLocal getRecipeManager() throws NamingException {
 		RecipeManagerLocal recipeManager = (RecipeManagerLocal) context.lookup(
 				"ejblocal:sous-chef/domain-ejb.jar/RecipeManagerLocalBean#com.souschef.domain.client.RecipeManagerLocal"
@@ -38,73 +48,85 @@ public class RecipeManagerService {
 	@Path("{recipeId}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)	
-	public Recipe findRecipeById(@PathParam("recipeId") String recipeId) throws ClientException {
-		RecipeManagerLocal recipeManagerLocal;
-		try {
-			recipeManagerLocal = getRecipeManager();
-			Recipe recipe = recipeManagerLocal.findRecipeById(recipeId);
-			return recipe;			
-		} catch (NamingException e) {
-			throw new ClientException(e);
-		}
-
+	public Recipe findRecipeById(@PathParam("recipeId") final String recipeId) throws ClientException {
+		return guarded("{recipeId}", "findRecipeById", new Callable<Recipe>() {
+			@Override
+			public Recipe call() throws NamingException {
+				return getRecipeManager().findRecipeById(recipeId);
+			}
+		});
 	}
 	
 	@Path("all")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)	
 	public List<Recipe> allRecipes() throws ClientException {
-		RecipeManagerLocal recipeManagerLocal;
-		try {
-			recipeManagerLocal = getRecipeManager();
-			List<Recipe> recipes = recipeManagerLocal.allRecipes();
-			return recipes;			
-		} catch (NamingException e) {
-			throw new ClientException(e);
-		}		
+		return guarded("all", "allRecipes", new Callable<List<Recipe>>() {
+			@Override
+			public List<Recipe> call() throws NamingException {
+				return getRecipeManager().allRecipes();
+			}
+		});
+	}
+	
+	@Path("summaries")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)	
+	public List<RecipeSummary> recipeSummaries() throws ClientException {
+		return guarded("summaries", "recipeSummaries", new Callable<List<RecipeSummary>>() {
+			@Override
+			public List<RecipeSummary> call() throws NamingException {
+				return getRecipeManager().recipeSummaries();
+			}
+		});
+	}
+	
+	@Path("page")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)	
+	public Page<String, Recipe> recipes(@QueryParam("after") final String after, @QueryParam("limit") @DefaultValue("50") final int limit) throws ClientException {
+		return guarded("page", "recipes", new Callable<Page<String, Recipe>>() {
+			@Override
+			public Page<String, Recipe> call() throws NamingException {
+				return getRecipeManager().recipes(after, Math.max(1, Math.min(limit, DAO.MAX_PAGE_LIMIT)));
+			}
+		});
 	}
 	
 	@Path("{recipeId}/ingredients")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)	
-	public List<Ingredient> findIngredientsForRecype(@PathParam("recipeId") String recipeId) throws ClientException {
-		RecipeManagerLocal recipeManagerLocal;
-		try {
-			recipeManagerLocal = getRecipeManager();
-			List<Ingredient> ingredients = recipeManagerLocal.findIngredientsForRecype(recipeId);
-			return ingredients;
-		} catch (NamingException e) {
-			throw new ClientException(e);
-		}		
+	public List<Ingredient> findIngredientsForRecype(@PathParam("recipeId") final String recipeId) throws ClientException {
+		return guarded("{recipeId}/ingredients", "findIngredientsForRecype", new Callable<List<Ingredient>>() {
+			@Override
+			public List<Ingredient> call() throws NamingException {
+				return getRecipeManager().findIngredientsForRecype(recipeId);
+			}
+		});
 	}
 	
 	@Path("{recipeId}/remove")
 	@DELETE
 	@Produces(MediaType.APPLICATION_JSON)	
-	public Recipe removeRecipe(@PathParam("recipeId") String recipeId) throws ClientException {
-		RecipeManagerLocal recipeManagerLocal;
-		Recipe recipe;
-		try {
-			recipeManagerLocal = getRecipeManager();
-			recipe = recipeManagerLocal.removeRecipe(recipeId);
-			return recipe;
-		} catch (NamingException e) {
-			throw new ClientException(e);
-		}
-		
+	public Recipe removeRecipe(@PathParam("recipeId") final String recipeId) throws ClientException {
+		return guarded("{recipeId}/remove", "removeRecipe", new Callable<Recipe>() {
+			@Override
+			public Recipe call() throws NamingException {
+				return getRecipeManager().removeRecipe(recipeId);
+			}
+		});
 	}
 	
 	@Path("insert")
 	@PUT
 	@Produces(MediaType.APPLICATION_JSON)	
-	public void insertRecipe(Recipe recipe) throws ClientException {
-		RecipeManagerLocal recipeManagerLocal;
-		try {
-			recipeManagerLocal = getRecipeManager();
-			recipeManagerLocal.insertRecipe(recipe);
-		} catch (NamingException e) {
-			throw new ClientException(e);
-		}
-		
+	public void insertRecipe(final Recipe recipe) throws ClientException {
+		guarded("insert", "insertRecipe", new Callable<Void>() {
+			@Override
+			public Void call() throws NamingException {
+				getRecipeManager().insertRecipe(recipe);
+				return null;
+			}
+		});
 	}
 }
@@ -0,0 +1,109 @@
+package com.souschef.http.servlet.jaxrs;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.ServletConfig;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import com.souschef.client.ClientException;
+import com.souschef.http.servlet.limit.AdaptiveLimiter;
+import com.souschef.http.servlet.limit.LimiterRegistry;
+import com.souschef.http.servlet.metrics.EndPointMetrics;
+import com.souschef.http.servlet.metrics.MetricsRegistry;
+import com.souschef.http.servlet.metrics.Phase;
+
+/**
+ * <p>Bulkhead and metrics for a single JAX-RS resource method; JAX-RS 1.1 has no request filters, so resource methods 
+ * run their bodies through {@link #invoke(Callable)}.</p>
+ * @author rsolano
+ *
+ */
+public class ResourceGuard {
+	public static final String SOURCE = "jax-rs";
+	
+	private final EndPointMetrics metrics;
+	private final AdaptiveLimiter limiter;
+	
+	ResourceGuard(String path, String spec) {
+		metrics = MetricsRegistry.getInstance().endPoint(SOURCE, path);
+		limiter = LimiterRegistry.getInstance().limiter(SOURCE, path, spec);
+		metrics.setLimiter(limiter);
+	}
+	
+	/**
+	 * 
+	 * @param path Resource method's path.
+	 * @param method Resource method's name; <code>concurrency.&lt;method&gt;</code> in <code>config</code> overrides the default limit.
+	 * @param config The JAX-RS servlet's configuration. May be <code>null</code>.
+	 * @return A guard sharing its state with every other guard created for <code>path</code>.
+	 */
+	public static ResourceGuard of(String path, String method, ServletConfig config) {
+		String spec = null;
+		
+		if(config != null) {
+			spec = config.getInitParameter(LimiterRegistry.PARAMETER_PREFIX + method);
+			if(spec == null)
+				spec = config.getInitParameter(LimiterRegistry.DEFAULT_PARAMETER);
+		}
+		
+		return new ResourceGuard(path, spec);
+	}
+	
+	/**
+	 * 
+	 * @return The request's start time.
+	 * @throws WebApplicationException With status 503 and a <code>Retry-After</code> header if no permit is available.
+	 */
+	public long enter() throws WebApplicationException {
+		long start = System.nanoTime();
+		
+		if(!limiter.tryAcquire()) {
+			metrics.record(Phase.TOTAL, start);
+			throw new WebApplicationException(
+				Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", String.valueOf(limiter.getRetryAfter())).build()
+			);
+		}
+		
+		return start;
+	}
+	
+	/**
+	 * 
+	 * @param start Value returned by {@link #enter()}.
+	 * @param failed <code>true</code> if the resource method threw an exception.
+	 */
+	public void exit(long start, boolean failed) {
+		long elapsed = System.nanoTime() - start;
+		
+		limiter.release(elapsed);
+		if(failed)
+			metrics.error();
+		metrics.record(Phase.INVOKE, start);
+		metrics.record(Phase.TOTAL, start);
+	}
+	
+	/**
+	 * 
+	 * @param body The resource method's body.
+	 * @return What <code>body</code> returns.
+	 * @throws WebApplicationException With status 503 if no permit is available, see {@link #enter()}.
+	 * @throws ClientException Wrapping any checked exception thrown by <code>body</code>; runtime exceptions are rethrown as they are.
+	 */
+	public <T> T invoke(Callable<T> body) throws WebApplicationException, ClientException {
+		long start = enter();
+		boolean failed = true;
+		
+		try {
+			T result = body.call();
+			failed = false;
+			return result;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ClientException(e);
+		}finally {
+			exit(start, failed);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.souschef.http.servlet.photo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>Two-tier cache of photo derivatives keyed by photo hash and size.</p>
+ * <p>The memory tier is a least recently used map bounded by the total size of its values. The optional disk tier keeps every 
+ * derivative ever generated, so restarts don't pay for regeneration; since photos are immutable, entries never go stale. 
+ * Concurrent requests for a missing derivative share one generation.</p>
+ * <p>Derivatives that can't be generated are cached too, as empty values in both tiers, so a photo that isn't an image is 
+ * read and parsed once, not on every request.</p>
+ */
+public class ThumbnailCache {
+	/**
+	 * Marks a derivative the generator couldn't produce; its memory entry is charged the length of its key.
+	 */
+	private static final byte[] NONE = new byte[0];
+	
+	private final long capacity;
+	private final File directory;
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+	private final ConcurrentHashMap<String, FutureTask<byte[]>> pending = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+	private long size;
+	
+	/**
+	 * 
+	 * @param capacity Bytes the memory tier may hold.
+	 * @param directory Directory of the disk tier, or <code>null</code> to keep derivatives in memory only.
+	 */
+	public ThumbnailCache(long capacity, File directory) {
+		this.capacity = capacity;
+		this.directory = directory;
+		if(directory != null)
+			directory.mkdirs();
+	}
+	
+	/**
+	 * 
+	 * @param key Derivative key; it's used as file name, so it must only contain file name safe characters.
+	 * @param generator Produces the derivative when no tier holds it; it may return <code>null</code>, which is cached as well.
+	 * @return The derivative, or <code>null</code> if <code>generator</code> couldn't produce it.
+	 * @throws IOException If the generation fails.
+	 */
+	public byte[] get(final String key, final Callable<byte[]> generator) throws IOException {
+		byte[] value = fromMemory(key);
+		FutureTask<byte[]> task;
+		FutureTask<byte[]> running;
+		
+		if(value != null)
+			return value == NONE ? null : value;
+		
+		task = new FutureTask<byte[]>(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				byte[] value = fromDisk(key);
+				
+				if(value == null) {
+					value = generator.call();
+					if(value == null || value.length == 0)
+						value = NONE;
+					toDisk(key, value);
+				}
+				toMemory(key, value);
+				return value;
+			}
+		});
+		
+		running = pending.putIfAbsent(key, task);
+		if(running == null) {
+			running = task;
+			task.run();
+		}
+		
+		try {
+			value = running.get();
+			return value == NONE ? null : value;
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}finally {
+			pending.remove(key, running);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return Bytes held by the memory tier, counting the keys of derivatives that couldn't be generated.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	private synchronized byte[] fromMemory(String key) {
+		return memory.get(key);
+	}
+	
+	private synchronized void toMemory(String key, byte[] value) {
+		byte[] previous;
+		Iterator<Map.Entry<String, byte[]>> eldest;
+		
+		if(weight(key, value) > capacity)
+			return;
+		
+		previous = memory.put(key, value);
+		size += weight(key, value) - (previous == null ? 0 : weight(key, previous));
+		eldest = memory.entrySet().iterator();
+		while(size > capacity && eldest.hasNext()) {
+			Map.Entry<String, byte[]> entry = eldest.next();
+			
+			size -= weight(entry.getKey(), entry.getValue());
+			eldest.remove();
+		}
+	}
+	
+	private static long weight(String key, byte[] value) {
+		return value == NONE ? key.length() : value.length;
+	}
+	
+	private byte[] fromDisk(String key) throws IOException {
+		File file;
+		
+		if(directory == null)
+			return null;
+		
+		file = new File(directory, key);
+		if(!file.isFile())
+			return null;
+		return file.length() == 0 ? NONE : Files.readAllBytes(file.toPath());
+	}
+	
+	private void toDisk(String key, byte[] value) throws IOException {
+		File temporary;
+		
+		if(directory == null)
+			return;
+		
+		temporary = File.createTempFile(key, ".tmp", directory);
+		try {
+			Files.write(temporary.toPath(), value);
+			Files.move(temporary.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}finally {
+			temporary.delete();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.souschef.http.servlet.photo;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * <p>Scales images down with <code>javax.imageio</code>; it needs no display, so the JVM must run with <code>java.awt.headless=true</code>.</p>
+ * <p>Opaque images are encoded as JPEG and translucent ones as PNG. Large reductions are done by successive halvings, 
+ * which keeps bilinear interpolation from dropping detail.</p>
+ */
+public class Thumbnailer {
+	public static final String JPEG_CONTENT_TYPE = "image/jpeg";
+	public static final String PNG_CONTENT_TYPE = "image/png";
+	
+	private final float quality;
+	
+	/**
+	 * 
+	 * @param quality JPEG compression quality, between 0 and 1.
+	 */
+	public Thumbnailer(float quality) {
+		this.quality = quality;
+	}
+	
+	/**
+	 * 
+	 * @param original Encoded image.
+	 * @param size Length, in pixels, of the box the thumbnail must fit in; images smaller than the box are re-encoded, not enlarged.
+	 * @return The encoded thumbnail, or <code>null</code> if <code>original</code> isn't a raster format <code>javax.imageio</code> can read.
+	 * @throws IOException
+	 */
+	public byte[] scale(byte[] original, int size) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+		boolean translucent;
+		int width;
+		int height;
+		double ratio;
+		
+		if(image == null)
+			return null;
+		
+		translucent = image.getColorModel().hasAlpha();
+		ratio = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+		width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+		height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+		
+		do {
+			int stepWidth = Math.max(width, image.getWidth() / 2);
+			int stepHeight = Math.max(height, image.getHeight() / 2);
+			
+			image = resize(image, stepWidth, stepHeight, translucent);
+		}while(image.getWidth() > width || image.getHeight() > height);
+		
+		return translucent ? encodePNG(image) : encodeJPEG(image);
+	}
+	
+	/**
+	 * 
+	 * @param thumbnail Bytes returned by {@link #scale(byte[], int)}.
+	 * @return The thumbnail's MIME type.
+	 */
+	public static String contentType(byte[] thumbnail) {
+		return thumbnail.length > 0 && (thumbnail[0] & 0xff) == 0x89 ? PNG_CONTENT_TYPE : JPEG_CONTENT_TYPE;
+	}
+	
+	private BufferedImage resize(BufferedImage image, int width, int height, boolean translucent) {
+		BufferedImage target = new BufferedImage(width, height, translucent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = target.createGraphics();
+		
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		}finally {
+			graphics.dispose();
+		}
+		return target;
+	}
+	
+	private byte[] encodePNG(BufferedImage image) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		ImageIO.write(image, "png", output);
+		return output.toByteArray();
+	}
+	
+	private byte[] encodeJPEG(BufferedImage image) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		ImageWriter writer = writers.next();
+		ImageWriteParam parameters = writer.getDefaultWriteParam();
+		ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+		
+		try {
+			parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			parameters.setCompressionQuality(quality);
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(image, null, null), parameters);
+		}finally {
+			writer.dispose();
+			stream.close();
+		}
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,49 @@
+package com.souschef.hibernate;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+
+/**
+ * JCache region factory that also accepts <code>classpath:</code> configuration URIs.
+ * <p/>
+ * Hibernate hands <code>hibernate.javax.cache.uri</code> to the caching provider as it is, and providers like Ehcache 
+ * open it as a URL, so a configuration packaged inside an EJB module couldn't be referenced without knowing where 
+ * WebSphere expanded the application. This factory resolves <code>classpath:resource</code> with the thread context 
+ * class loader, which is the application's while the persistence unit is being deployed.
+ */
+public class ClasspathJCacheRegionFactory extends JCacheRegionFactory {
+	private static final long serialVersionUID = 1L;
+	
+	public static final String CLASSPATH_PREFIX = "classpath:";
+
+	@Override
+	protected CacheManager getCacheManager(Properties properties) {
+		String uri = getProp(properties, CONFIG_URI);
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		CachingProvider cachingProvider;
+		URL resource;
+		
+		if(uri == null || !uri.startsWith(CLASSPATH_PREFIX))
+			return super.getCacheManager(properties);
+		
+		if(classLoader == null)
+			classLoader = getClass().getClassLoader();
+		resource = classLoader.getResource(uri.substring(CLASSPATH_PREFIX.length()));
+		if(resource == null)
+			throw new CacheException("Couldn't find cache configuration " + uri);
+		
+		cachingProvider = getCachingProvider(properties);
+		try {
+			return cachingProvider.getCacheManager(resource.toURI(), classLoader);
+		}catch(URISyntaxException e) {
+			throw new CacheException("Couldn't create URI from " + resource, e);
+		}
+	}
+}
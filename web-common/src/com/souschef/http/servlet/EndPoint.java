@@ -6,4 +6,9 @@ import java.lang.annotation.*;
 @Target(ElementType.METHOD)
 @interface EndPoint {
 	String path();
+	
+	/**
+	 * Milliseconds the end point may spend serving a request; <code>0</code> means the servlet's default.
+	 */
+	long timeout() default 0;
 }
@@ -0,0 +1,66 @@
+package com.souschef.http.servlet;
+
+import java.io.PrintWriter;
+
+import com.souschef.dao.DAOException;
+import com.souschef.dao.ResultHandler;
+import com.souschef.json.encoder.Bean2JSONEncoder;
+import com.souschef.json.encoder.JSONEncodingException;
+
+/**
+ * <p>Encodes each entity it receives directly into the response writer, so a streamed result is never held in memory as a whole.</p>
+ * <p>The writer is flushed every <code>flushInterval</code> entities; when the client has gone away the next flush aborts the database cursor.</p>
+ * @author rsolano
+ *
+ */
+public class EntityStreamWriter implements ResultHandler<Object> {
+	private Bean2JSONEncoder encoder;
+	private PrintWriter writer;
+	private StreamFormat format;
+	private int flushInterval;
+	private int count;
+	
+	public EntityStreamWriter(Bean2JSONEncoder encoder, PrintWriter writer, StreamFormat format, int flushInterval) {
+		this.encoder = encoder;
+		this.writer = writer;
+		this.format = format;
+		this.flushInterval = flushInterval;
+	}
+
+	public void begin() {
+		if(format == StreamFormat.JSON_ARRAY)
+			writer.write('[');
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void handle(Object entity) throws DAOException {
+		try {
+			if(format == StreamFormat.JSON_ARRAY && count > 0)
+				writer.write(',');
+			encoder.encode(entity, writer);
+			if(format == StreamFormat.NDJSON)
+				writer.write('\n');
+		}catch(JSONEncodingException e) {
+			throw new DAOException(e);
+		}
+		
+		if(++count % flushInterval == 0) {
+			writer.flush();
+			if(writer.checkError())
+				throw new DAOException("Client closed the connection while streaming", null);
+		}
+	}
+	
+	public void end() {
+		if(format == StreamFormat.JSON_ARRAY)
+			writer.write(']');
+		writer.flush();
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,64 @@
+package com.souschef.http.servlet;
+
+import com.souschef.dao.DAO;
+
+/**
+ * <p>Request context for list end points that return keyset-paginated results.</p>
+ * <p><code>limit</code> and <code>after</code> can be sent either in the JSON body or in the query string; body values take precedence.</p>
+ * @author rsolano
+ *
+ */
+public class PageRequestContext extends RequestContext {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -1750419245470813396L;
+
+	/**
+	 * Page size used when the client does not send one.
+	 */
+	public static final int DEFAULT_LIMIT = 50;
+	
+	private Integer limit;
+	
+	private String after;
+
+	/**
+	 * 
+	 * @return The requested page size, clamped to <code>[1, DAO.MAX_PAGE_LIMIT]</code>.
+	 */
+	public int getLimit() {
+		int value = DEFAULT_LIMIT;
+		String parameter;
+		
+		if(limit != null) {
+			value = limit;
+		}else if((parameter = getParameter("limit")) != null) {
+			try {
+				value = Integer.parseInt(parameter);
+			}catch(NumberFormatException e) {
+				value = DEFAULT_LIMIT;
+			}
+		}
+		
+		return Math.max(1, Math.min(value, DAO.MAX_PAGE_LIMIT));
+	}
+
+	public void setLimit(Integer limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * 
+	 * @return The continuation token returned by the previous page or <code>null</code> for the first one.
+	 */
+	public String getAfter() {
+		return after != null ? after : getParameter("after");
+	}
+
+	public void setAfter(String after) {
+		this.after = after;
+	}
+	
+}
@@ -1,6 +1,8 @@
 package com.souschef.http.servlet;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 public class RequestContext implements Serializable{
 
@@ -17,6 +19,8 @@ public class RequestContext implements Serializable{
 	
 	String uriParts[];
 	
+	Map<String, String[]> parameters = new HashMap<String, String[]>();
+	
 	public RequestContext() {
 		
 	}
@@ -58,6 +62,25 @@ public class RequestContext implements Serializable{
 		return uriParts;
 	}
 
+	/**
+	 * 
+	 * @param name Query string parameter's name.
+	 * @return The first value of the query string parameter or <code>null</code> if it's absent.
+	 */
+	public String getParameter(String name) {
+		String values[] = parameters.get(name);
+		
+		if(values == null || values.length == 0)
+			return null;
+		return values[0];
+	}
+
+	void setParameters(Map<String, String[]> parameters) {
+		this.parameters.clear();
+		if(parameters != null)
+			this.parameters.putAll(parameters);
+	}
+
 	
 	
 }
@@ -0,0 +1,48 @@
+package com.souschef.http.servlet;
+
+/**
+ * <p>Request context for type-ahead end points; <code>q</code> and <code>limit</code> are read from the query string.</p>
+ * @author rsolano
+ *
+ */
+public class SearchRequestContext extends RequestContext {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4115385212957305744L;
+
+	/**
+	 * Number of matches returned when the client does not ask for a specific amount.
+	 */
+	public static final int DEFAULT_LIMIT = 10;
+	
+	public static final int MAX_LIMIT = 100;
+
+	/**
+	 * 
+	 * @return The text typed so far; never <code>null</code>.
+	 */
+	public String getQuery() {
+		String query = getParameter("q");
+		return query == null ? "" : query;
+	}
+
+	/**
+	 * 
+	 * @return The requested number of matches, clamped to <code>[1, MAX_LIMIT]</code>.
+	 */
+	public int getLimit() {
+		int value = DEFAULT_LIMIT;
+		String parameter = getParameter("limit");
+		
+		if(parameter != null) {
+			try {
+				value = Integer.parseInt(parameter);
+			}catch(NumberFormatException e) {
+				value = DEFAULT_LIMIT;
+			}
+		}
+		return Math.max(1, Math.min(value, MAX_LIMIT));
+	}
+}
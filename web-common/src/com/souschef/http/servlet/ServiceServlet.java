@@ -10,7 +10,14 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.souschef.dao.Deadline;
+import com.souschef.http.servlet.limit.AdaptiveLimiter;
+import com.souschef.http.servlet.limit.LimiterRegistry;
+import com.souschef.http.servlet.metrics.EndPointMetrics;
+import com.souschef.http.servlet.metrics.MetricsRegistry;
+import com.souschef.http.servlet.metrics.Phase;
 import com.souschef.json.encoder.Bean2JSONEncoder;
+import com.souschef.json.encoder.JSONEncodingException;
 import com.souschef.json.parser.JSONParserException;
 import com.souschef.json.parser.bean.JSON2BeanParser;
 import com.souschef.json.parser.bean.JSON2BeanParserContext;
@@ -26,7 +33,31 @@ public class ServiceServlet extends HttpServlet {
 	 * 
 	 */
 	private static final long serialVersionUID = -6018053448380111248L;
+	
+	/**
+	 * Entities written between flushes of streamed responses.
+	 */
+	public static final int STREAM_FLUSH_INTERVAL = 50;
+	
+	/**
+	 * Path, relative to the servlet, where end point metrics are published.
+	 */
+	public static final String METRICS_PATH = "/metrics";
+	
+	/**
+	 * Request header through which clients state, in milliseconds, how long they are willing to wait.
+	 */
+	public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+	
+	/**
+	 * Init parameter holding the time budget, in milliseconds, of end points that don't declare one.
+	 */
+	public static final String DEFAULT_TIMEOUT_PARAMETER = "timeout.default";
+	
 	private Map<String, Method> methods = new HashMap<String, Method>();	
+	private Map<Method, EndPointMetrics> metrics = new HashMap<Method, EndPointMetrics>();
+	private Map<Method, AdaptiveLimiter> limiters = new HashMap<Method, AdaptiveLimiter>();
+	private Map<Method, Long> timeouts = new HashMap<Method, Long>();
 	protected JSON2BeanParser parser;
 	protected Bean2JSONEncoder encoder;
 	
@@ -34,6 +65,11 @@ public class ServiceServlet extends HttpServlet {
 	public void init(ServletConfig config) throws ServletException {
 		super.init(config);
 		Method[] methods = this.getClass().getMethods();
+		String defaultLimit = config.getInitParameter(LimiterRegistry.DEFAULT_PARAMETER);
+		String defaultTimeout = config.getInitParameter(DEFAULT_TIMEOUT_PARAMETER);
+		String limit;
+		AdaptiveLimiter limiter;
+		EndPointMetrics endPointMetrics;
 		try {
 			for(Method method : methods) {
 				if(method.getParameterCount() == 1 &&
@@ -42,7 +78,14 @@ public class ServiceServlet extends HttpServlet {
 					EndPoint endPoint = method.getAnnotation(EndPoint.class);
 					
 					if(endPoint != null){
+						limit = config.getInitParameter(LimiterRegistry.PARAMETER_PREFIX + method.getName());
+						limiter = LimiterRegistry.getInstance().limiter(getServletName(), endPoint.path(), limit != null ? limit : defaultLimit);
+						endPointMetrics = MetricsRegistry.getInstance().endPoint(getServletName(), endPoint.path());
+						endPointMetrics.setLimiter(limiter);
 						this.methods.put(endPoint.path(), method);
+						this.metrics.put(method, endPointMetrics);
+						this.limiters.put(method, limiter);
+						this.timeouts.put(method, endPoint.timeout() > 0 ? endPoint.timeout() : defaultTimeout != null ? Long.parseLong(defaultTimeout.trim()) : 0L);
 					}
 				}
 			}
@@ -50,6 +93,8 @@ public class ServiceServlet extends HttpServlet {
 			encoder = new Bean2JSONEncoder();
 		}catch(JSONParserException e) {
 			throw new ServletException(e);
+		}catch(IllegalArgumentException e) {
+			throw new ServletException(e);
 		}
 	}
 
@@ -75,34 +120,157 @@ public class ServiceServlet extends HttpServlet {
 		return method;
 	}
 	
-
+	/**
+	 * <p>Computes the time budget of a request: the shortest of the one sent by the client and the end point's.</p>
+	 * @param req Current request.
+	 * @param method The end point serving it.
+	 * @return Milliseconds available to serve the request, or <code>0</code> if it's unbounded.
+	 */
+	protected long getTimeout(HttpServletRequest req, Method method) {
+		long timeout = timeouts.get(method);
+		String header = req.getHeader(TIMEOUT_HEADER);
+		long requested;
+		
+		if(header != null) {
+			try {
+				requested = Long.parseLong(header.trim());
+				if(requested > 0 && (timeout == 0 || requested < timeout))
+					timeout = requested;
+			}catch(NumberFormatException e) {
+				// Ignored, the end point's budget applies.
+			}
+		}
+		return timeout;
+	}
 	
 	protected void doRequest(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		long start = System.nanoTime();
+		long mark;
 		String path = getPath(req);
-		Method method = getMethod(path);
+		Method method;
+		EndPointMetrics endPointMetrics = null;
+		AdaptiveLimiter limiter = null;
+		long acquired = 0;
 		Object result;
 		RequestContext request;
 		JSON2BeanParserContext context;
+		long timeout;
+		
+		if(METRICS_PATH.equals(path)) {
+			writeMetrics(req, resp);
+			return;
+		}
+		
+		method = getMethod(path);
 		try{
 			if(method != null) {				
+				endPointMetrics = metrics.get(method);
+				mark = endPointMetrics.record(Phase.ROUTING, start);
+				if(!limiters.get(method).tryAcquire()) {
+					reject(resp, limiters.get(method));
+					return;
+				}
+				limiter = limiters.get(method);
+				acquired = mark;
+				timeout = getTimeout(req, method);
+				if(timeout > 0)
+					Deadline.set(timeout - (mark - start) / 1000000L);
 				request = (RequestContext) method.getParameters()[0].getType().getConstructor().newInstance();
 				context = new JSON2BeanParserContext(request);
 				parser.parse(context, new BufferedReader(new InputStreamReader(req.getInputStream())));
 				request.setPath(req.getServletPath());
 				request.setUri(req.getRequestURI());				
+				request.setParameters(req.getParameterMap());
+				mark = endPointMetrics.record(Phase.PARSE, mark);
 				result = method.invoke(this, request);
-				encoder.encode(result, resp.getWriter());
-				resp.getWriter().flush();
+				mark = endPointMetrics.record(Phase.INVOKE, mark);
+				if(result instanceof StreamingResult) {
+					stream(req, resp, (StreamingResult) result);
+				}else {
+					encoder.encode(result, resp.getWriter());
+					resp.getWriter().flush();
+				}
+				endPointMetrics.record(Phase.ENCODE, mark);
 			}else
 				resp.sendError(HttpServletResponse.SC_NOT_FOUND);
 		}catch(IOException e) {
+			if(endPointMetrics != null)
+				endPointMetrics.error();
 			throw e;
 		}
 		catch(Exception e) {
-			throw new ServletException(e);
+			if(endPointMetrics != null)
+				endPointMetrics.error();
+			if(Deadline.isSet() && Deadline.isExpired() && !resp.isCommitted())
+				resp.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+			else
+				throw new ServletException(e);
+		}finally {
+			Deadline.clear();
+			if(limiter != null)
+				limiter.release(System.nanoTime() - acquired);
+			if(endPointMetrics != null)
+				endPointMetrics.record(Phase.TOTAL, start);
 		}
 	}
 	
+	/**
+	 * <p>Sheds a request whose end point has no permits left, telling the client when to retry.</p>
+	 * @param resp Current response.
+	 * @param limiter The exhausted bulkhead.
+	 * @throws IOException
+	 */
+	protected void reject(HttpServletResponse resp, AdaptiveLimiter limiter) throws IOException {
+		resp.setHeader("Retry-After", String.valueOf(limiter.getRetryAfter()));
+		resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+	
+	/**
+	 * <p>Publishes the metrics of every end point in the application, in Prometheus text format when the client asks for 
+	 * <code>text/plain</code> or sends <code>format=prometheus</code>, and as JSON otherwise.</p>
+	 * @param req Current request.
+	 * @param resp Current response.
+	 * @throws ServletException
+	 * @throws IOException
+	 */
+	protected void writeMetrics(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		String accept = req.getHeader("Accept");
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		
+		resp.setCharacterEncoding("UTF-8");
+		if("prometheus".equalsIgnoreCase(req.getParameter("format")) || (accept != null && accept.startsWith("text/plain"))) {
+			resp.setContentType(MetricsRegistry.PROMETHEUS_CONTENT_TYPE);
+			registry.writePrometheus(resp.getWriter());
+		}else {
+			resp.setContentType("application/json");
+			try {
+				registry.writeJSON(resp.getWriter());
+			} catch (JSONEncodingException e) {
+				throw new ServletException(e);
+			}
+		}
+		resp.getWriter().flush();
+	}
+	
+	/**
+	 * <p>Writes a streamed result as NDJSON or as a chunked JSON array, depending on what the client asked for.</p>
+	 * @param req Current request.
+	 * @param resp Current response; it's committed by the first flush.
+	 * @param result Object returned by the end point.
+	 * @throws Exception
+	 */
+	protected void stream(HttpServletRequest req, HttpServletResponse resp, StreamingResult result) throws Exception {
+		StreamFormat format = StreamFormat.of(req);
+		EntityStreamWriter writer;
+		
+		resp.setContentType(format.getContentType());
+		resp.setCharacterEncoding("UTF-8");
+		writer = new EntityStreamWriter(encoder, resp.getWriter(), format, STREAM_FLUSH_INTERVAL);
+		writer.begin();
+		result.stream(writer);
+		writer.end();
+	}
+	
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		doRequest(req, resp);
@@ -0,0 +1,43 @@
+package com.souschef.http.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * <p>Wire formats supported for streamed responses.</p>
+ * @author rsolano
+ *
+ */
+public enum StreamFormat {
+	/**
+	 * One JSON document per line (http://ndjson.org).
+	 */
+	NDJSON("application/x-ndjson"),
+	
+	/**
+	 * A regular JSON array sent with chunked transfer encoding.
+	 */
+	JSON_ARRAY("application/json");
+	
+	private String contentType;
+	
+	private StreamFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+	
+	/**
+	 * 
+	 * @param request Current request.
+	 * @return <code>NDJSON</code> if the client asked for it through the <code>Accept</code> header or the <code>format=ndjson</code> parameter, <code>JSON_ARRAY</code> otherwise.
+	 */
+	public static StreamFormat of(HttpServletRequest request) {
+		String accept = request.getHeader("Accept");
+		
+		if("ndjson".equalsIgnoreCase(request.getParameter("format")) || (accept != null && accept.contains(NDJSON.contentType)))
+			return NDJSON;
+		return JSON_ARRAY;
+	}
+}
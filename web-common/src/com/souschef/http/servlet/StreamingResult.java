@@ -0,0 +1,20 @@
+package com.souschef.http.servlet;
+
+import com.souschef.dao.ResultHandler;
+
+/**
+ * <p>End points return instances of this interface instead of a collection when results must be written as they are read from the database.</p>
+ * <p><code>ServiceServlet</code> calls {@link #stream(ResultHandler)} with a handler that encodes each entity straight into the response.</p>
+ * @author rsolano
+ *
+ */
+public interface StreamingResult {
+	
+	/**
+	 * 
+	 * @param handler Encodes every object it receives into the response.
+	 * @return Number of objects passed to <code>handler</code>.
+	 * @throws Exception
+	 */
+	int stream(ResultHandler<Object> handler) throws Exception;
+}
@@ -0,0 +1,100 @@
+package com.souschef.http.servlet.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Per end point bulkhead whose concurrency limit adapts to observed latency (AIMD).</p>
+ * <p>While requests complete within the latency target and the current limit is actually being used, the limit grows by about one
+ * permit per limit's worth of completions. As soon as a request exceeds the target the limit is multiplied by {@value #BACKOFF}.
+ * Requests arriving when every permit is taken are rejected at once instead of queueing, so one expensive end point can't 
+ * exhaust the container's thread pool.</p>
+ * @author rsolano
+ *
+ */
+public class AdaptiveLimiter {
+	/**
+	 * Multiplicative decrease factor applied when a request is slower than the latency target.
+	 */
+	public static final double BACKOFF = 0.9;
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyTarget;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong limit;
+	private final AtomicLong rejected = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param initialLimit Concurrency limit before any adaptation.
+	 * @param minLimit The limit never drops below this value.
+	 * @param maxLimit The limit never grows beyond this value.
+	 * @param latencyTargetMillis Requests slower than this shrink the limit.
+	 */
+	public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetMillis) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.latencyTarget = latencyTargetMillis * 1000000L;
+		this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit))));
+	}
+	
+	/**
+	 * 
+	 * @return <code>true</code> if a permit was granted; the caller must then call {@link #release(long)} exactly once.
+	 */
+	public boolean tryAcquire() {
+		int current;
+		
+		do {
+			current = inFlight.get();
+			if(current >= getLimit()) {
+				rejected.incrementAndGet();
+				return false;
+			}
+		}while(!inFlight.compareAndSet(current, current + 1));
+		
+		return true;
+	}
+	
+	/**
+	 * <p>Returns a permit and adapts the limit to the request's latency.</p>
+	 * @param nanos How long the request held the permit.
+	 */
+	public void release(long nanos) {
+		int used = inFlight.getAndDecrement();
+		long bits;
+		double current, update;
+		
+		do {
+			bits = limit.get();
+			current = Double.longBitsToDouble(bits);
+			if(nanos > latencyTarget)
+				update = Math.max(minLimit, current * BACKOFF);
+			else if(used * 2 >= current)
+				update = Math.min(maxLimit, current + 1 / current);
+			else
+				return;
+		}while(!limit.compareAndSet(bits, Double.doubleToLongBits(update)));
+	}
+	
+	public int getLimit() {
+		return (int) Double.longBitsToDouble(limit.get());
+	}
+	
+	public int getInFlight() {
+		return inFlight.get();
+	}
+	
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+	/**
+	 * 
+	 * @return Seconds a rejected client should wait before retrying.
+	 */
+	public int getRetryAfter() {
+		return (int) Math.max(1, latencyTarget / 1000000000L);
+	}
+}
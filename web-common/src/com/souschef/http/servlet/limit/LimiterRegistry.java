@@ -0,0 +1,78 @@
+package com.souschef.http.servlet.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Application wide registry of end point bulkheads.</p>
+ * <p>Limits are configured with strings of the form <code>initial[,max[,latencyTargetMillis]]</code>, usually taken from
+ * <code>concurrency.&lt;method name&gt;</code> servlet init parameters, falling back to <code>concurrency.default</code> and
+ * then to {@link #DEFAULT_SPEC}.</p>
+ * @author rsolano
+ *
+ */
+public class LimiterRegistry {
+	/**
+	 * <p>Singleton instance</p>
+	 */
+	private static LimiterRegistry instance = new LimiterRegistry();
+	
+	public static final String DEFAULT_SPEC = "16,128,1000";
+	
+	public static final String PARAMETER_PREFIX = "concurrency.";
+	
+	public static final String DEFAULT_PARAMETER = PARAMETER_PREFIX + "default";
+	
+	private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<String, AdaptiveLimiter>();
+	
+	/**
+	 * 
+	 * @param source Either a servlet name or <code>jax-rs</code>.
+	 * @param path End point's path pattern.
+	 * @param spec Limit configuration; <code>null</code> means {@link #DEFAULT_SPEC}. Only the first call for a given end point uses it.
+	 * @return The bulkhead bound to the end point.
+	 */
+	public AdaptiveLimiter limiter(String source, String path, String spec) {
+		String key = source + ' ' + path;
+		AdaptiveLimiter limiter = limiters.get(key);
+		
+		if(limiter == null) {
+			AdaptiveLimiter existing = limiters.putIfAbsent(key, limiter = parse(spec == null ? DEFAULT_SPEC : spec));
+			if(existing != null)
+				limiter = existing;
+		}
+		
+		return limiter;
+	}
+	
+	/**
+	 * 
+	 * @param spec <code>initial[,max[,latencyTargetMillis]]</code>
+	 * @return A new limiter.
+	 * @throws IllegalArgumentException If <code>spec</code> is malformed.
+	 */
+	static AdaptiveLimiter parse(String spec) {
+		String parts[] = spec.split(",");
+		String defaults[] = DEFAULT_SPEC.split(",");
+		int initial, max;
+		long latencyTarget;
+		
+		try {
+			initial = Integer.parseInt(parts[0].trim());
+			max = Integer.parseInt((parts.length > 1 ? parts[1] : defaults[1]).trim());
+			latencyTarget = Long.parseLong((parts.length > 2 ? parts[2] : defaults[2]).trim());
+		}catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid concurrency limit: " + spec, e);
+		}
+		
+		return new AdaptiveLimiter(initial, 1, Math.max(initial, max), latencyTarget);
+	}
+	
+	/**
+	 * 
+	 * @return Singleton instance
+	 */
+	public static LimiterRegistry getInstance() {
+		return instance;
+	}
+}
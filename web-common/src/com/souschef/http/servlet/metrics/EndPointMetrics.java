@@ -0,0 +1,84 @@
+package com.souschef.http.servlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.souschef.http.servlet.limit.AdaptiveLimiter;
+
+/**
+ * <p>Latency histograms and counters for a single end point.</p>
+ * @author rsolano
+ *
+ */
+public class EndPointMetrics {
+	private final String source;
+	private final String path;
+	private final LatencyHistogram histograms[];
+	private final AtomicLong errors = new AtomicLong();
+	private volatile AdaptiveLimiter limiter;
+	
+	EndPointMetrics(String source, String path) {
+		Phase phases[] = Phase.values();
+		
+		this.source = source;
+		this.path = path;
+		this.histograms = new LatencyHistogram[phases.length];
+		for(int i = 0; i < phases.length; i++)
+			histograms[i] = new LatencyHistogram();
+	}
+	
+	/**
+	 * 
+	 * @param phase Timed phase.
+	 * @param start Value returned by <code>System.nanoTime()</code> when the phase began.
+	 * @return Current <code>System.nanoTime()</code>, so consecutive phases can be chained.
+	 */
+	public long record(Phase phase, long start) {
+		long now = System.nanoTime();
+		histograms[phase.ordinal()].record(now - start);
+		return now;
+	}
+	
+	public void error() {
+		errors.incrementAndGet();
+	}
+	
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+	
+	/**
+	 * 
+	 * @return Number of completed requests, including failed ones.
+	 */
+	public long getRequests() {
+		return histograms[Phase.TOTAL.ordinal()].getCount();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * 
+	 * @return Either the servlet name or <code>jax-rs</code>.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * 
+	 * @return The bulkhead guarding this end point, or <code>null</code> if it has none.
+	 */
+	public AdaptiveLimiter getLimiter() {
+		return limiter;
+	}
+
+	public void setLimiter(AdaptiveLimiter limiter) {
+		this.limiter = limiter;
+	}
+}
@@ -0,0 +1,134 @@
+package com.souschef.http.servlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Lock-free latency histogram with log-linear buckets in the style of HdrHistogram.</p>
+ * <p>Values are recorded in microseconds. Each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so any percentile is
+ * reported with a relative error below 1/{@value #SUB_BUCKETS}. Recording is a couple of shifts and one atomic increment, 
+ * which keeps it cheap enough to leave on in production.</p>
+ * @author rsolano
+ *
+ */
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * Values above 2^MAX_EXPONENT microseconds (about 12 days) are clamped into the last bucket.
+	 */
+	static final int MAX_EXPONENT = 40;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param micros A non negative value.
+	 * @return Index of the bucket that holds <code>micros</code>.
+	 */
+	static int bucketOf(long micros) {
+		int exponent;
+		
+		if(micros < SUB_BUCKETS)
+			return (int) micros;
+		
+		exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if(exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int)((micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS);
+	}
+	
+	/**
+	 * 
+	 * @param bucket Bucket index.
+	 * @return The largest value, in microseconds, that falls into <code>bucket</code>.
+	 */
+	static long upperBoundOf(int bucket) {
+		int exponent;
+		long top;
+		
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		
+		exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	/**
+	 * <p>Records an elapsed time.</p>
+	 * @param nanos Elapsed time in nanoseconds; negative values are recorded as zero.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		long current;
+		
+		counts.incrementAndGet(bucketOf(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		
+		while(micros > (current = max.get()) && !max.compareAndSet(current, micros));
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * 
+	 * @return Sum of all recorded values, in microseconds.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+	
+	/**
+	 * 
+	 * @return Largest recorded value, in microseconds.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * 
+	 * @return Average of the recorded values, in microseconds.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double)sum.get() / n;
+	}
+	
+	/**
+	 * <p>Estimates a percentile from the bucket counts. Concurrent recordings may or may not be seen by this method.</p>
+	 * @param percentile A value in <code>[0, 100]</code>.
+	 * @return Upper bound, in microseconds, of the bucket holding the requested percentile.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long target;
+		long seen = 0;
+		int length = counts.length();
+		
+		for(int i = 0; i < length; i++)
+			total += counts.get(i);
+		
+		if(total == 0)
+			return 0;
+		
+		target = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+		for(int i = 0; i < length; i++) {
+			seen += counts.get(i);
+			if(seen >= target)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		
+		return max.get();
+	}
+}
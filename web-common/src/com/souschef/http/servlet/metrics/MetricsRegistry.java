@@ -0,0 +1,179 @@
+package com.souschef.http.servlet.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.souschef.json.encoder.Bean2JSONEncoder;
+import com.souschef.json.encoder.JSONEncodingException;
+
+/**
+ * <p>Application wide registry of end point metrics. It renders them either as JSON or in the Prometheus text exposition format.</p>
+ * @author rsolano
+ *
+ */
+public class MetricsRegistry {
+	/**
+	 * <p>Singleton instance</p>
+	 */
+	private static MetricsRegistry instance = new MetricsRegistry();
+	
+	/**
+	 * Percentiles reported for every phase.
+	 */
+	static final double PERCENTILES[] = {50, 90, 99, 99.9};
+	static final String PERCENTILE_LABELS[] = {"p50", "p90", "p99", "p999"};
+	static final String QUANTILE_LABELS[] = {"0.5", "0.9", "0.99", "0.999"};
+	
+	public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
+	
+	private final ConcurrentMap<String, EndPointMetrics> endPoints = new ConcurrentHashMap<String, EndPointMetrics>();
+	
+	private final long started = System.currentTimeMillis();
+	
+	/**
+	 * 
+	 * @param source Either a servlet name or <code>jax-rs</code>.
+	 * @param path End point's path pattern.
+	 * @return The metrics bound to the end point; they are created on first use.
+	 */
+	public EndPointMetrics endPoint(String source, String path) {
+		String key = source + ' ' + path;
+		EndPointMetrics metrics = endPoints.get(key);
+		
+		if(metrics == null) {
+			EndPointMetrics existing = endPoints.putIfAbsent(key, metrics = new EndPointMetrics(source, path));
+			if(existing != null)
+				metrics = existing;
+		}
+		
+		return metrics;
+	}
+	
+	public Collection<EndPointMetrics> getEndPoints() {
+		return endPoints.values();
+	}
+	
+	/**
+	 * 
+	 * @param writer A non null writer.
+	 * @throws JSONEncodingException
+	 */
+	public void writeJSON(PrintWriter writer) throws JSONEncodingException {
+		double uptime = Math.max(1, System.currentTimeMillis() - started) / 1000.0;
+		Map<String, Object> root = new LinkedHashMap<String, Object>();
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		
+		for(EndPointMetrics metrics: endPoints.values()) {
+			Map<String, Object> endPoint = new LinkedHashMap<String, Object>();
+			Map<String, Object> phases = new LinkedHashMap<String, Object>();
+			
+			endPoint.put("source", metrics.getSource());
+			endPoint.put("path", metrics.getPath());
+			endPoint.put("requests", metrics.getRequests());
+			endPoint.put("errors", metrics.getErrors());
+			endPoint.put("throughput", metrics.getRequests() / uptime);
+			if(metrics.getLimiter() != null) {
+				endPoint.put("concurrencyLimit", metrics.getLimiter().getLimit());
+				endPoint.put("inFlight", metrics.getLimiter().getInFlight());
+				endPoint.put("rejected", metrics.getLimiter().getRejected());
+			}
+			
+			for(Phase phase: Phase.values()) {
+				LatencyHistogram histogram = metrics.getHistogram(phase);
+				Map<String, Object> values;
+				
+				if(histogram.getCount() == 0)
+					continue;
+				
+				values = new LinkedHashMap<String, Object>();
+				values.put("count", histogram.getCount());
+				values.put("meanMicros", histogram.getMean());
+				for(int i = 0; i < PERCENTILES.length; i++)
+					values.put(PERCENTILE_LABELS[i] + "Micros", histogram.getPercentile(PERCENTILES[i]));
+				values.put("maxMicros", histogram.getMax());
+				phases.put(phase.getLabel(), values);
+			}
+			
+			endPoint.put("phases", phases);
+			list.add(endPoint);
+		}
+		
+		root.put("uptimeSeconds", uptime);
+		root.put("endPoints", list);
+		Bean2JSONEncoder.getInstance().encode(root, writer);
+	}
+	
+	/**
+	 * <p>Writes every end point as a Prometheus summary (<code>souschef_request_duration_seconds</code>) plus an error counter.</p>
+	 * @param writer A non null writer.
+	 */
+	public void writePrometheus(PrintWriter writer) {
+		writer.println("# HELP souschef_request_duration_seconds Time spent per request processing phase.");
+		writer.println("# TYPE souschef_request_duration_seconds summary");
+		
+		for(EndPointMetrics metrics: endPoints.values()) {
+			for(Phase phase: Phase.values()) {
+				LatencyHistogram histogram = metrics.getHistogram(phase);
+				String labels;
+				
+				if(histogram.getCount() == 0)
+					continue;
+				
+				labels = labels(metrics) + ",phase=\"" + phase.getLabel() + '"';
+				for(int i = 0; i < PERCENTILES.length; i++)
+					writer.printf("souschef_request_duration_seconds{%s,quantile=\"%s\"} %s%n", labels, QUANTILE_LABELS[i], seconds(histogram.getPercentile(PERCENTILES[i])));
+				writer.printf("souschef_request_duration_seconds_sum{%s} %s%n", labels, seconds(histogram.getSum()));
+				writer.printf("souschef_request_duration_seconds_count{%s} %d%n", labels, histogram.getCount());
+			}
+		}
+		
+		writer.println("# HELP souschef_request_errors_total Requests that ended with an exception.");
+		writer.println("# TYPE souschef_request_errors_total counter");
+		for(EndPointMetrics metrics: endPoints.values())
+			writer.printf("souschef_request_errors_total{%s} %d%n", labels(metrics), metrics.getErrors());
+		
+		writer.println("# HELP souschef_requests_rejected_total Requests shed because the end point's concurrency limit was reached.");
+		writer.println("# TYPE souschef_requests_rejected_total counter");
+		for(EndPointMetrics metrics: endPoints.values())
+			if(metrics.getLimiter() != null)
+				writer.printf("souschef_requests_rejected_total{%s} %d%n", labels(metrics), metrics.getLimiter().getRejected());
+		
+		writer.println("# HELP souschef_concurrency_limit Current adaptive concurrency limit.");
+		writer.println("# TYPE souschef_concurrency_limit gauge");
+		for(EndPointMetrics metrics: endPoints.values())
+			if(metrics.getLimiter() != null)
+				writer.printf("souschef_concurrency_limit{%s} %d%n", labels(metrics), metrics.getLimiter().getLimit());
+		
+		writer.println("# HELP souschef_requests_in_flight Requests currently holding a permit.");
+		writer.println("# TYPE souschef_requests_in_flight gauge");
+		for(EndPointMetrics metrics: endPoints.values())
+			if(metrics.getLimiter() != null)
+				writer.printf("souschef_requests_in_flight{%s} %d%n", labels(metrics), metrics.getLimiter().getInFlight());
+	}
+	
+	static String labels(EndPointMetrics metrics) {
+		return "source=\"" + escape(metrics.getSource()) + "\",path=\"" + escape(metrics.getPath()) + '"';
+	}
+	
+	static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+	static String seconds(long micros) {
+		return String.valueOf(micros / 1e6);
+	}
+	
+	/**
+	 * 
+	 * @return Singleton instance
+	 */
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+}
@@ -0,0 +1,20 @@
+package com.souschef.http.servlet.metrics;
+
+/**
+ * <p>Request processing phases timed by <code>ServiceServlet</code>.</p>
+ * @author rsolano
+ *
+ */
+public enum Phase {
+	ROUTING,
+	PARSE,
+	INVOKE,
+	ENCODE,
+	TOTAL;
+	
+	private String label = name().toLowerCase();
+	
+	public String getLabel() {
+		return label;
+	}
+}